@@ -0,0 +1,160 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Converts synthetic barcodes: plain product codes, URLs and contact cards.
+ *
+ * <p>The value type payloads are built the way the ML Kit reader of {@link GMLKBarcodeDetector}
+ * builds them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BarcodeMarshallerBenchmark {
+  // Barcode.TYPE_* values.
+  private static final int TYPE_CONTACT_INFO = 1;
+  private static final int TYPE_PRODUCT = 5;
+  private static final int TYPE_URL = 8;
+
+  static final class Barcode {
+    final Rect boundingBox;
+    final Point[] cornerPoints;
+    final String rawValue;
+    final int valueType;
+
+    Barcode(int index, String rawValue, int valueType) {
+      final int left = 40 + index * 120;
+      boundingBox = new Rect(left, 300, left + 100, 400);
+      cornerPoints =
+          new Point[] {
+            new Point(left, 300), new Point(left + 100, 300),
+            new Point(left + 100, 400), new Point(left, 400),
+          };
+      this.rawValue = rawValue;
+      this.valueType = valueType;
+    }
+  }
+
+  private static final BarcodeMarshaller.Reader<Barcode> READER =
+      new BarcodeMarshaller.Reader<Barcode>() {
+        @Override
+        public Rect boundingBox(Barcode barcode) {
+          return barcode.boundingBox;
+        }
+
+        @Override
+        public Point[] cornerPoints(Barcode barcode) {
+          return barcode.cornerPoints;
+        }
+
+        @Override
+        public String rawValue(Barcode barcode) {
+          return barcode.rawValue;
+        }
+
+        @Override
+        public String displayValue(Barcode barcode) {
+          return barcode.rawValue;
+        }
+
+        @Override
+        public int format(Barcode barcode) {
+          return barcode.valueType == TYPE_PRODUCT ? 32 : 256;
+        }
+
+        @Override
+        public int valueType(Barcode barcode) {
+          return barcode.valueType;
+        }
+
+        @Override
+        public void addTypeValue(Barcode barcode, Map<String, Object> addTo) {
+          final Map<String, Object> typeValue = new HashMap<>();
+          switch (barcode.valueType) {
+            case TYPE_URL:
+              typeValue.put("title", "Example");
+              typeValue.put("url", barcode.rawValue);
+              addTo.put("url", typeValue);
+              break;
+            case TYPE_CONTACT_INFO:
+              final Map<String, Object> address = new HashMap<>();
+              address.put("addressLines", Arrays.asList("1 Main St", "Springfield"));
+              address.put("type", 2);
+              typeValue.put("addresses", Arrays.asList(address));
+
+              final Map<String, Object> email = new HashMap<>();
+              email.put("address", "jane@example.com");
+              email.put("type", 1);
+              email.put("body", null);
+              email.put("subject", null);
+              typeValue.put("emails", Arrays.asList(email));
+
+              final Map<String, Object> name = new HashMap<>();
+              name.put("formattedName", "Jane Doe");
+              name.put("first", "Jane");
+              name.put("last", "Doe");
+              typeValue.put("name", name);
+
+              final Map<String, Object> phone = new HashMap<>();
+              phone.put("number", "555-0100");
+              phone.put("type", 4);
+              typeValue.put("phones", Arrays.asList(phone));
+
+              typeValue.put("urls", Arrays.asList("https://example.com"));
+              typeValue.put("jobTitle", "Engineer");
+              typeValue.put("organization", "Example");
+              addTo.put("contactInfo", typeValue);
+              break;
+            default:
+              break;
+          }
+        }
+      };
+
+  private List<Barcode> barcodes;
+  private BarcodeMarshaller<Barcode> marshaller;
+
+  @Setup
+  public void setUp() {
+    barcodes = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      barcodes.add(new Barcode(barcodes.size(), "0123456789" + i, TYPE_PRODUCT));
+    }
+    for (int i = 0; i < 2; i++) {
+      barcodes.add(new Barcode(barcodes.size(), "https://example.com/" + i, TYPE_URL));
+    }
+    for (int i = 0; i < 2; i++) {
+      barcodes.add(new Barcode(barcodes.size(), "BEGIN:VCARD" + i, TYPE_CONTACT_INFO));
+    }
+    marshaller = new BarcodeMarshaller<>(READER);
+  }
+
+  @Benchmark
+  public List<Map<String, Object>> toMaps() {
+    return marshaller.toMaps(barcodes, CoordinateMapping.IDENTITY);
+  }
+
+  @Benchmark
+  public byte[] encodeCompact() {
+    return marshaller.encodeCompact(barcodes, CoordinateMapping.IDENTITY);
+  }
+}
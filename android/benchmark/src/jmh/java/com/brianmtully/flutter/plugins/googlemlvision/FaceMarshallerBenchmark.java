@@ -0,0 +1,155 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.graphics.PointF;
+import android.graphics.Rect;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Converts synthetic faces with every landmark and contour, as in a small group photo. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FaceMarshallerBenchmark {
+  private static final int FACES = 5;
+  // Points per contour in FaceMarshaller.CONTOUR_NAMES order, as detected by ML Kit.
+  private static final int[] CONTOUR_SIZES = {36, 16, 5, 5, 9, 9, 3, 2, 16, 5, 5, 11, 11};
+
+  static final class Face {
+    final Rect boundingBox;
+    final int trackingId;
+    final PointF[] landmarks = new PointF[FaceMarshaller.LANDMARK_NAMES.length];
+    final List<List<PointF>> contours = new ArrayList<>(CONTOUR_SIZES.length);
+
+    Face(int index) {
+      final int left = 100 + index * 220;
+      boundingBox = new Rect(left, 200, left + 200, 440);
+      trackingId = index;
+      for (int i = 0; i < landmarks.length; i++) {
+        landmarks[i] = new PointF(left + 10 + i * 18, 260 + i * 15);
+      }
+      for (int i = 0; i < CONTOUR_SIZES.length; i++) {
+        final List<PointF> points = new ArrayList<>(CONTOUR_SIZES[i]);
+        for (int j = 0; j < CONTOUR_SIZES[i]; j++) {
+          points.add(new PointF(left + j * 5.5f, 210 + i * 17 + j * 0.5f));
+        }
+        contours.add(Collections.unmodifiableList(points));
+      }
+    }
+  }
+
+  private static final FaceMarshaller.Reader<Face> READER =
+      new FaceMarshaller.Reader<Face>() {
+        @Override
+        public Rect boundingBox(Face face) {
+          return face.boundingBox;
+        }
+
+        @Override
+        public float headEulerAngleY(Face face) {
+          return 12.5f;
+        }
+
+        @Override
+        public float headEulerAngleZ(Face face) {
+          return -3.25f;
+        }
+
+        @Override
+        public Float smilingProbability(Face face) {
+          return 0.8f;
+        }
+
+        @Override
+        public Float leftEyeOpenProbability(Face face) {
+          return 0.95f;
+        }
+
+        @Override
+        public Float rightEyeOpenProbability(Face face) {
+          return 0.9f;
+        }
+
+        @Override
+        public Integer trackingId(Face face) {
+          return face.trackingId;
+        }
+
+        @Override
+        public PointF landmark(Face face, int index) {
+          return face.landmarks[index];
+        }
+
+        @Override
+        public List<PointF> contour(Face face, int index) {
+          return face.contours.get(index);
+        }
+
+        @Override
+        public List<List<PointF>> allContours(Face face) {
+          return face.contours;
+        }
+      };
+
+  private List<Face> faces;
+  private FaceMarshaller<Face> marshaller;
+  private FaceMarshaller<Face> boxesMarshaller;
+  private FaceMarshaller<Face> contoursMarshaller;
+
+  @Setup
+  public void setUp() {
+    faces = new ArrayList<>(FACES);
+    for (int i = 0; i < FACES; i++) {
+      faces.add(new Face(i));
+    }
+
+    marshaller = new FaceMarshaller<>(READER, new FaceMarshaller.FieldMask(null));
+
+    final Map<String, Object> boxesOnly = new HashMap<>();
+    boxesOnly.put("landmarks", Collections.emptyList());
+    boxesOnly.put("contours", Collections.emptyList());
+    boxesOnly.put("classification", false);
+    boxesOnly.put("headAngles", false);
+    boxesMarshaller = new FaceMarshaller<>(READER, new FaceMarshaller.FieldMask(boxesOnly));
+
+    final Map<String, Object> contoursOnly = new HashMap<>();
+    contoursOnly.put("contours", Arrays.asList(FaceMarshaller.CONTOUR_NAMES));
+    contoursMarshaller =
+        new FaceMarshaller<>(READER, new FaceMarshaller.FieldMask(contoursOnly));
+  }
+
+  @Benchmark
+  public List<Map<String, Object>> toMaps() {
+    return marshaller.toMaps(faces, CoordinateMapping.IDENTITY);
+  }
+
+  @Benchmark
+  public byte[] encodeCompact() {
+    return marshaller.encodeCompact(faces, CoordinateMapping.IDENTITY);
+  }
+
+  @Benchmark
+  public List<Map<String, Object>> toMapsBoundingBoxOnly() {
+    return boxesMarshaller.toMaps(faces, CoordinateMapping.IDENTITY);
+  }
+
+  @Benchmark
+  public List<Map<String, Object>> toMapsWithoutAllPoints() {
+    return contoursMarshaller.toMaps(faces, CoordinateMapping.IDENTITY);
+  }
+}
@@ -0,0 +1,176 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Converts a synthetic page of text, about the size of a dense document photo. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TextMarshallerBenchmark {
+  private static final int BLOCKS = 12;
+  private static final int LINES_PER_BLOCK = 4;
+  private static final int ELEMENTS_PER_LINE = 6;
+
+  /** A block, line or element of the synthetic page. */
+  static final class Node {
+    final Rect boundingBox;
+    final Point[] cornerPoints;
+    final String text;
+    final List<Node> children;
+
+    Node(Rect boundingBox, String text, List<Node> children) {
+      this.boundingBox = boundingBox;
+      this.cornerPoints =
+          new Point[] {
+            new Point(boundingBox.left, boundingBox.top),
+            new Point(boundingBox.right, boundingBox.top),
+            new Point(boundingBox.right, boundingBox.bottom),
+            new Point(boundingBox.left, boundingBox.bottom),
+          };
+      this.text = text;
+      this.children = children;
+    }
+  }
+
+  private static final TextMarshaller.Tree<Node, Node, Node, Node> TREE =
+      new TextMarshaller.Tree<Node, Node, Node, Node>() {
+        @Override
+        public String text(Node page) {
+          return page.text;
+        }
+
+        @Override
+        public List<Node> blocks(Node page) {
+          return page.children;
+        }
+
+        @Override
+        public List<Node> lines(Node block) {
+          return block.children;
+        }
+
+        @Override
+        public List<Node> elements(Node line) {
+          return line.children;
+        }
+      };
+
+  private static final TextMarshaller.Container<Node> CONTAINER =
+      new TextMarshaller.Container<Node>() {
+        @Override
+        public Rect boundingBox(Node node) {
+          return node.boundingBox;
+        }
+
+        @Override
+        public Point[] cornerPoints(Node node) {
+          return node.cornerPoints;
+        }
+
+        @Override
+        public String language(Node node) {
+          return "en";
+        }
+
+        @Override
+        public String text(Node node) {
+          return node.text;
+        }
+      };
+
+  private Node page;
+  private TextMarshaller<Node, Node, Node, Node> marshaller;
+  private TextMarshaller<Node, Node, Node, Node> filteredMarshaller;
+
+  @Setup
+  public void setUp() {
+    final List<Node> blocks = new ArrayList<>(BLOCKS);
+    final StringBuilder pageText = new StringBuilder();
+    for (int b = 0; b < BLOCKS; b++) {
+      final int blockTop = 40 + b * 160;
+      final List<Node> lines = new ArrayList<>(LINES_PER_BLOCK);
+      final StringBuilder blockText = new StringBuilder();
+      for (int l = 0; l < LINES_PER_BLOCK; l++) {
+        final int lineTop = blockTop + l * 36;
+        final List<Node> elements = new ArrayList<>(ELEMENTS_PER_LINE);
+        final StringBuilder lineText = new StringBuilder();
+        for (int e = 0; e < ELEMENTS_PER_LINE; e++) {
+          final String word = "word" + b + l + e;
+          final int left = 30 + e * 150;
+          elements.add(
+              new Node(
+                  new Rect(left, lineTop, left + 130, lineTop + 28 + (e % 3) * 4),
+                  word,
+                  null));
+          lineText.append(e == 0 ? "" : " ").append(word);
+        }
+        lines.add(
+            new Node(
+                new Rect(30, lineTop, 30 + ELEMENTS_PER_LINE * 150, lineTop + 36),
+                lineText.toString(),
+                elements));
+        blockText.append(l == 0 ? "" : "\n").append(lineText);
+      }
+      blocks.add(
+          new Node(
+              new Rect(30, blockTop, 30 + ELEMENTS_PER_LINE * 150, blockTop + 150),
+              blockText.toString(),
+              lines));
+      pageText.append(b == 0 ? "" : "\n").append(blockText);
+    }
+    page = new Node(new Rect(0, 0, 1000, 2000), pageText.toString(), blocks);
+
+    marshaller =
+        new TextMarshaller<>(
+            TREE,
+            CONTAINER,
+            CONTAINER,
+            CONTAINER,
+            TextMarshaller.GRANULARITY_ELEMENTS,
+            false,
+            0,
+            null);
+    filteredMarshaller =
+        new TextMarshaller<>(
+            TREE,
+            CONTAINER,
+            CONTAINER,
+            CONTAINER,
+            TextMarshaller.GRANULARITY_LINES,
+            false,
+            30,
+            new RectF(0, 0, 1000, 1000));
+  }
+
+  @Benchmark
+  public Map<String, Object> toMap() {
+    return marshaller.toMap(page, CoordinateMapping.IDENTITY);
+  }
+
+  @Benchmark
+  public byte[] encodeCompact() {
+    return marshaller.encodeCompact(page, CoordinateMapping.IDENTITY);
+  }
+
+  @Benchmark
+  public Map<String, Object> toMapFiltered() {
+    return filteredMarshaller.toMap(page, CoordinateMapping.IDENTITY);
+  }
+}
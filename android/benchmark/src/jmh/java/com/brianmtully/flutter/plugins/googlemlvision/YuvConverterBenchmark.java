@@ -0,0 +1,98 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.graphics.Rect;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Packs a synthetic camera frame into NV21, the decode step of planar frames and frames with a
+ * region of interest.
+ *
+ * <p>The planes are laid out like a typical {@code YUV_420_888} camera image: rows padded to a
+ * multiple of 64 bytes and interleaved chroma with a pixel stride of 2.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class YuvConverterBenchmark {
+  @Param({"640x480", "1280x720", "1920x1080"})
+  public String size;
+
+  private int width;
+  private int height;
+  private List<ByteBuffer> planes;
+  private List<Map<String, Object>> planeData;
+  private YuvConverter.Plane[] yuvPlanes;
+  private Rect crop;
+  private ByteBuffer out;
+
+  @Setup
+  public void setUp() {
+    final String[] dimensions = size.split("x");
+    width = Integer.parseInt(dimensions[0]);
+    height = Integer.parseInt(dimensions[1]);
+
+    final int lumaStride = (width + 63) / 64 * 64;
+    final int chromaStride = lumaStride;
+    planes = new ArrayList<>(3);
+    planes.add(filled(lumaStride * height));
+    planes.add(filled(chromaStride * (height / 2)));
+    planes.add(filled(chromaStride * (height / 2)));
+
+    planeData = new ArrayList<>(3);
+    planeData.add(plane(lumaStride, 1));
+    planeData.add(plane(chromaStride, 2));
+    planeData.add(plane(chromaStride, 2));
+    yuvPlanes = YuvConverter.fromPlanes(planes, planeData, width, height);
+
+    // The center half of the frame, downscaled by two.
+    crop = new Rect(width / 4 & ~1, height / 4 & ~1, width * 3 / 4 & ~1, height * 3 / 4 & ~1);
+    out = ByteBuffer.allocateDirect(YuvConverter.nv21Size(width, height));
+  }
+
+  private static ByteBuffer filled(int size) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+    for (int i = 0; i < size; i++) {
+      buffer.put((byte) (i * 31));
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static Map<String, Object> plane(int bytesPerRow, int bytesPerPixel) {
+    final Map<String, Object> plane = new HashMap<>();
+    plane.put("bytesPerRow", bytesPerRow);
+    plane.put("bytesPerPixel", bytesPerPixel);
+    return plane;
+  }
+
+  @Benchmark
+  public ByteBuffer packFullFrame() {
+    out.clear();
+    YuvConverter.toNv21(planes, planeData, width, height, out);
+    return out;
+  }
+
+  @Benchmark
+  public ByteBuffer packRegionDownscaled() {
+    out.clear();
+    YuvConverter.toNv21(yuvPlanes, crop, crop.width() / 2, crop.height() / 2, out);
+    return out;
+  }
+}
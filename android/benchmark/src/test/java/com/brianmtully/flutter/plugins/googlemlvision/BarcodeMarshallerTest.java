@@ -0,0 +1,205 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import static com.brianmtully.flutter.plugins.googlemlvision.CoordinateMapping.IDENTITY;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class BarcodeMarshallerTest {
+  private static final class Barcode {
+    Rect boundingBox;
+    Point[] cornerPoints;
+    String rawValue;
+    String displayValue;
+    int format;
+    int valueType;
+    String typeKey;
+    Object typeValue;
+  }
+
+  private static final BarcodeMarshaller.Reader<Barcode> READER =
+      new BarcodeMarshaller.Reader<Barcode>() {
+        @Override
+        public Rect boundingBox(Barcode barcode) {
+          return barcode.boundingBox;
+        }
+
+        @Override
+        public Point[] cornerPoints(Barcode barcode) {
+          return barcode.cornerPoints;
+        }
+
+        @Override
+        public String rawValue(Barcode barcode) {
+          return barcode.rawValue;
+        }
+
+        @Override
+        public String displayValue(Barcode barcode) {
+          return barcode.displayValue;
+        }
+
+        @Override
+        public int format(Barcode barcode) {
+          return barcode.format;
+        }
+
+        @Override
+        public int valueType(Barcode barcode) {
+          return barcode.valueType;
+        }
+
+        @Override
+        public void addTypeValue(Barcode barcode, Map<String, Object> addTo) {
+          if (barcode.typeKey != null) {
+            addTo.put(barcode.typeKey, barcode.typeValue);
+          }
+        }
+      };
+
+  private final BarcodeMarshaller<Barcode> marshaller = new BarcodeMarshaller<>(READER);
+
+  private static Barcode email() {
+    final Barcode barcode = new Barcode();
+    barcode.boundingBox = new Rect(10, 20, 110, 70);
+    barcode.cornerPoints =
+        new Point[] {new Point(10, 20), new Point(110, 20), new Point(110, 70), new Point(10, 70)};
+    barcode.rawValue = "mailto:a@b.c";
+    barcode.displayValue = "a@b.c";
+    barcode.format = 256;
+    barcode.valueType = 2;
+    barcode.typeKey = "email";
+    final Map<String, Object> email = new HashMap<>();
+    email.put("address", "a@b.c");
+    email.put("type", 1);
+    barcode.typeValue = email;
+    return barcode;
+  }
+
+  @Test
+  public void toMapsWritesBoundingBoxAndCornerPoints() {
+    final Map<String, Object> data =
+        marshaller.toMaps(Collections.singletonList(email()), IDENTITY).get(0);
+
+    assertEquals(10.0, data.get("left"));
+    assertEquals(20.0, data.get("top"));
+    assertEquals(100.0, data.get("width"));
+    assertEquals(50.0, data.get("height"));
+    @SuppressWarnings("unchecked")
+    final List<double[]> points = (List<double[]>) data.get("points");
+    assertEquals(4, points.size());
+    assertArrayEquals(new double[] {10, 20}, points.get(0), 0);
+    assertArrayEquals(new double[] {110, 70}, points.get(2), 0);
+  }
+
+  @Test
+  public void toMapsWritesValuesAndTypePayload() {
+    final Map<String, Object> data =
+        marshaller.toMaps(Collections.singletonList(email()), IDENTITY).get(0);
+
+    assertEquals("mailto:a@b.c", data.get("rawValue"));
+    assertEquals("a@b.c", data.get("displayValue"));
+    assertEquals(256, data.get("format"));
+    assertEquals(2, data.get("valueType"));
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> email = (Map<String, Object>) data.get("email");
+    assertEquals("a@b.c", email.get("address"));
+    assertEquals(1, email.get("type"));
+  }
+
+  @Test
+  public void toMapsLeavesOutMissingValues() {
+    final Map<String, Object> data =
+        marshaller.toMaps(Collections.singletonList(new Barcode()), IDENTITY).get(0);
+
+    assertFalse(data.containsKey("left"));
+    assertTrue(((List<?>) data.get("points")).isEmpty());
+    assertTrue(data.containsKey("rawValue"));
+    assertNull(data.get("rawValue"));
+    assertNull(data.get("displayValue"));
+  }
+
+  @Test
+  public void encodeCompactWritesBarcodes() {
+    final CompactResultReader reader =
+        new CompactResultReader(
+            marshaller.encodeCompact(Arrays.asList(email(), new Barcode()), IDENTITY));
+
+    assertEquals(CompactResultWriter.VERSION, reader.version);
+    assertEquals(CompactResultWriter.KIND_BARCODES, reader.kind);
+    assertEquals(2, reader.readInt());
+
+    assertArrayEquals(new float[] {10, 20, 100, 50}, reader.readRect(), 0);
+    final float[][] points = reader.readPoints();
+    assertEquals(4, points.length);
+    assertArrayEquals(new float[] {110, 70}, points[2], 0);
+    assertEquals("mailto:a@b.c", reader.readString());
+    assertEquals("a@b.c", reader.readString());
+    assertEquals(256, reader.readInt());
+    assertEquals(2, reader.readInt());
+    assertEquals("email", reader.readString());
+    // The payload as a tagged map of two entries.
+    assertEquals(7, reader.readByte());
+    assertEquals(2, reader.readInt());
+  }
+
+  @Test
+  public void encodeCompactWritesMissingValuesAsAbsent() {
+    final CompactResultReader reader =
+        new CompactResultReader(
+            marshaller.encodeCompact(Collections.singletonList(new Barcode()), IDENTITY));
+
+    assertEquals(1, reader.readInt());
+    assertNull(reader.readRect());
+    assertEquals(0, reader.readPoints().length);
+    assertNull(reader.readString());
+    assertNull(reader.readString());
+    assertEquals(0, reader.readInt());
+    assertEquals(0, reader.readInt());
+    assertNull(reader.readString());
+  }
+
+  @Test
+  public void mappingMovesCoordinatesOnly() {
+    final CoordinateMapping mapping = new CoordinateMapping(2, 2, 100, 200);
+    final Map<String, Object> data =
+        marshaller.toMaps(Collections.singletonList(email()), mapping).get(0);
+
+    assertEquals(120.0, data.get("left"));
+    assertEquals(240.0, data.get("top"));
+    assertEquals(200.0, data.get("width"));
+    assertEquals(100.0, data.get("height"));
+    @SuppressWarnings("unchecked")
+    final List<double[]> points = (List<double[]>) data.get("points");
+    assertArrayEquals(new double[] {120, 240}, points.get(0), 0);
+    // Type payloads are left alone, even where their keys look like coordinates.
+    assertEquals(1, ((Map<?, ?>) data.get("email")).get("type"));
+  }
+
+  @Test
+  public void mappingMovesCompactResults() {
+    final CoordinateMapping mapping = new CoordinateMapping(2, 2, 100, 200);
+    final CompactResultReader reader =
+        new CompactResultReader(
+            marshaller.encodeCompact(Collections.singletonList(email()), mapping));
+
+    assertEquals(1, reader.readInt());
+    assertArrayEquals(new float[] {120, 240, 200, 100}, reader.readRect(), 0);
+    assertArrayEquals(new float[] {120, 240}, reader.readPoints()[0], 0);
+  }
+}
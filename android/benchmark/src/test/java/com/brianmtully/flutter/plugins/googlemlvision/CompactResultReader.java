@@ -0,0 +1,105 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Reads results written by {@link CompactResultWriter}, the way {@code _CompactResultReader} does
+ * in Dart.
+ */
+class CompactResultReader {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  final int version;
+  final int kind;
+  private final float scaleX;
+  private final float scaleY;
+  private final float offsetX;
+  private final float offsetY;
+  private final String[] strings;
+  private final ByteBuffer data;
+
+  CompactResultReader(byte[] bytes) {
+    data = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    version = data.get();
+    kind = data.get();
+    scaleX = data.getFloat();
+    scaleY = data.getFloat();
+    offsetX = data.getFloat();
+    offsetY = data.getFloat();
+    strings = new String[data.getInt()];
+    for (int i = 0; i < strings.length; i++) {
+      final byte[] string = new byte[data.getInt()];
+      data.get(string);
+      strings[i] = new String(string, UTF8);
+    }
+  }
+
+  int readByte() {
+    return data.get() & 0xff;
+  }
+
+  boolean readBoolean() {
+    return readByte() != 0;
+  }
+
+  int readInt() {
+    return data.getInt();
+  }
+
+  float readFloat() {
+    return data.getFloat();
+  }
+
+  String readString() {
+    final int index = data.getInt();
+    return index < 0 ? null : strings[index];
+  }
+
+  /** Returns left, top, width and height, or null when no rect was written. */
+  float[] readRect() {
+    if (!readBoolean()) {
+      return null;
+    }
+    return new float[] {
+      data.getFloat() * scaleX + offsetX,
+      data.getFloat() * scaleY + offsetY,
+      data.getFloat() * scaleX,
+      data.getFloat() * scaleY,
+    };
+  }
+
+  /** Returns x and y, or null when no point was written. */
+  float[] readPoint() {
+    if (!readBoolean()) {
+      return null;
+    }
+    return readCoordinates();
+  }
+
+  /** Returns the points as x and y pairs, or null when their count is negative. */
+  float[][] readPoints() {
+    final int count = data.getInt();
+    if (count < 0) {
+      return null;
+    }
+    final float[][] points = new float[count][];
+    for (int i = 0; i < count; i++) {
+      points[i] = readCoordinates();
+    }
+    return points;
+  }
+
+  boolean isAtEnd() {
+    return !data.hasRemaining();
+  }
+
+  private float[] readCoordinates() {
+    return new float[] {data.getFloat() * scaleX + offsetX, data.getFloat() * scaleY + offsetY};
+  }
+}
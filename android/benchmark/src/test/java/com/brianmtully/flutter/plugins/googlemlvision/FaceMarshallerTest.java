@@ -0,0 +1,265 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import static com.brianmtully.flutter.plugins.googlemlvision.CoordinateMapping.IDENTITY;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.PointF;
+import android.graphics.Rect;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class FaceMarshallerTest {
+  private static final int LEFT_EYE =
+      Arrays.asList(FaceMarshaller.LANDMARK_NAMES).indexOf("leftEye");
+  private static final int FACE = Arrays.asList(FaceMarshaller.CONTOUR_NAMES).indexOf("face");
+  private static final int NOSE_BRIDGE =
+      Arrays.asList(FaceMarshaller.CONTOUR_NAMES).indexOf("noseBridge");
+
+  private static final class Face {
+    Rect boundingBox = new Rect(10, 20, 110, 140);
+    float headEulerAngleY = 12.5f;
+    float headEulerAngleZ = -3.25f;
+    Float smilingProbability;
+    Float leftEyeOpenProbability;
+    Float rightEyeOpenProbability;
+    Integer trackingId;
+    final PointF[] landmarks = new PointF[FaceMarshaller.LANDMARK_NAMES.length];
+    final List<List<PointF>> contours =
+        new ArrayList<>(
+            Collections.<List<PointF>>nCopies(FaceMarshaller.CONTOUR_NAMES.length, null));
+  }
+
+  private static final FaceMarshaller.Reader<Face> READER =
+      new FaceMarshaller.Reader<Face>() {
+        @Override
+        public Rect boundingBox(Face face) {
+          return face.boundingBox;
+        }
+
+        @Override
+        public float headEulerAngleY(Face face) {
+          return face.headEulerAngleY;
+        }
+
+        @Override
+        public float headEulerAngleZ(Face face) {
+          return face.headEulerAngleZ;
+        }
+
+        @Override
+        public Float smilingProbability(Face face) {
+          return face.smilingProbability;
+        }
+
+        @Override
+        public Float leftEyeOpenProbability(Face face) {
+          return face.leftEyeOpenProbability;
+        }
+
+        @Override
+        public Float rightEyeOpenProbability(Face face) {
+          return face.rightEyeOpenProbability;
+        }
+
+        @Override
+        public Integer trackingId(Face face) {
+          return face.trackingId;
+        }
+
+        @Override
+        public PointF landmark(Face face, int index) {
+          return face.landmarks[index];
+        }
+
+        @Override
+        public List<PointF> contour(Face face, int index) {
+          return face.contours.get(index);
+        }
+
+        @Override
+        public List<List<PointF>> allContours(Face face) {
+          final List<List<PointF>> contours = new ArrayList<>();
+          for (List<PointF> contour : face.contours) {
+            if (contour != null) {
+              contours.add(contour);
+            }
+          }
+          return contours;
+        }
+      };
+
+  private static Face detailedFace() {
+    final Face face = new Face();
+    face.smilingProbability = 0.8f;
+    face.leftEyeOpenProbability = 0.9f;
+    face.rightEyeOpenProbability = 0.7f;
+    face.trackingId = 4;
+    face.landmarks[LEFT_EYE] = new PointF(40, 60);
+    face.contours.set(FACE, Arrays.asList(new PointF(10, 20), new PointF(110, 140)));
+    face.contours.set(NOSE_BRIDGE, Collections.singletonList(new PointF(60, 70)));
+    return face;
+  }
+
+  private static FaceMarshaller<Face> marshaller(Map<String, Object> fields) {
+    return new FaceMarshaller<>(READER, new FaceMarshaller.FieldMask(fields));
+  }
+
+  @Test
+  public void toMapsWritesBoundingBoxAndAttributes() {
+    final Map<String, Object> data =
+        marshaller(null).toMaps(Collections.singletonList(detailedFace()), IDENTITY).get(0);
+
+    assertEquals(10.0, data.get("left"));
+    assertEquals(20.0, data.get("top"));
+    assertEquals(100.0, data.get("width"));
+    assertEquals(120.0, data.get("height"));
+    assertEquals(12.5f, data.get("headEulerAngleY"));
+    assertEquals(-3.25f, data.get("headEulerAngleZ"));
+    assertEquals(0.8f, data.get("smilingProbability"));
+    assertEquals(0.9f, data.get("leftEyeOpenProbability"));
+    assertEquals(0.7f, data.get("rightEyeOpenProbability"));
+    assertEquals(4, data.get("trackingId"));
+  }
+
+  @Test
+  public void toMapsWritesLandmarksAndContours() {
+    final Map<String, Object> data =
+        marshaller(null).toMaps(Collections.singletonList(detailedFace()), IDENTITY).get(0);
+
+    @SuppressWarnings("unchecked")
+    final Map<String, double[]> landmarks = (Map<String, double[]>) data.get("landmarks");
+    assertEquals(FaceMarshaller.LANDMARK_NAMES.length, landmarks.size());
+    assertArrayEquals(new double[] {40, 60}, landmarks.get("leftEye"), 0);
+    assertTrue(landmarks.containsKey("noseBase"));
+    assertNull(landmarks.get("noseBase"));
+
+    @SuppressWarnings("unchecked")
+    final Map<String, List<double[]>> contours = (Map<String, List<double[]>>) data.get("contours");
+    assertEquals(2, contours.get("face").size());
+    assertArrayEquals(new double[] {110, 140}, contours.get("face").get(1), 0);
+    assertTrue(contours.containsKey("leftEye"));
+    assertNull(contours.get("leftEye"));
+    final List<double[]> allPoints = contours.get("allPoints");
+    assertEquals(3, allPoints.size());
+    assertArrayEquals(new double[] {60, 70}, allPoints.get(2), 0);
+  }
+
+  @Test
+  public void toMapsLeavesOutMissingClassificationAndTrackingId() {
+    final Map<String, Object> data =
+        marshaller(null).toMaps(Collections.singletonList(new Face()), IDENTITY).get(0);
+
+    assertFalse(data.containsKey("smilingProbability"));
+    assertFalse(data.containsKey("leftEyeOpenProbability"));
+    assertFalse(data.containsKey("rightEyeOpenProbability"));
+    assertFalse(data.containsKey("trackingId"));
+  }
+
+  @Test
+  public void toMapsOnlyWritesRequestedFields() {
+    final Map<String, Object> fields = new HashMap<>();
+    fields.put("landmarks", Collections.singletonList("leftEye"));
+    fields.put("contours", Collections.emptyList());
+    fields.put("classification", false);
+    fields.put("headAngles", false);
+    final Map<String, Object> data =
+        marshaller(fields).toMaps(Collections.singletonList(detailedFace()), IDENTITY).get(0);
+
+    assertEquals(10.0, data.get("left"));
+    assertFalse(data.containsKey("headEulerAngleY"));
+    assertFalse(data.containsKey("smilingProbability"));
+    assertEquals(4, data.get("trackingId"));
+    @SuppressWarnings("unchecked")
+    final Map<String, double[]> landmarks = (Map<String, double[]>) data.get("landmarks");
+    assertEquals(Collections.singleton("leftEye"), landmarks.keySet());
+    assertFalse(data.containsKey("contours"));
+  }
+
+  @Test
+  public void encodeCompactWritesFaces() {
+    final CompactResultReader reader =
+        new CompactResultReader(
+            marshaller(null).encodeCompact(Arrays.asList(detailedFace(), new Face()), IDENTITY));
+
+    assertEquals(CompactResultWriter.VERSION, reader.version);
+    assertEquals(CompactResultWriter.KIND_FACES, reader.kind);
+    assertEquals(2, reader.readInt());
+
+    assertArrayEquals(new float[] {10, 20, 100, 120}, reader.readRect(), 0);
+    assertEquals(12.5f, reader.readFloat(), 0);
+    assertEquals(-3.25f, reader.readFloat(), 0);
+    assertEquals(0.8f, reader.readFloat(), 0);
+    assertEquals(0.9f, reader.readFloat(), 0);
+    assertEquals(0.7f, reader.readFloat(), 0);
+    assertTrue(reader.readBoolean());
+    assertEquals(4, reader.readInt());
+    for (int i = 0; i < FaceMarshaller.LANDMARK_NAMES.length; i++) {
+      final float[] point = reader.readPoint();
+      if (i == LEFT_EYE) {
+        assertArrayEquals(new float[] {40, 60}, point, 0);
+      } else {
+        assertNull(point);
+      }
+    }
+    for (int i = 0; i < FaceMarshaller.CONTOUR_NAMES.length; i++) {
+      final float[][] points = reader.readPoints();
+      if (i == FACE) {
+        assertEquals(2, points.length);
+        assertArrayEquals(new float[] {110, 140}, points[1], 0);
+      } else if (i == NOSE_BRIDGE) {
+        assertEquals(1, points.length);
+      } else {
+        assertNull(points);
+      }
+    }
+  }
+
+  @Test
+  public void encodeCompactWritesMissingValuesAsAbsent() {
+    final Map<String, Object> fields = new HashMap<>();
+    fields.put("landmarks", Collections.singletonList("noseBase"));
+    final CompactResultReader reader =
+        new CompactResultReader(
+            marshaller(fields).encodeCompact(Collections.singletonList(detailedFace()), IDENTITY));
+
+    assertEquals(1, reader.readInt());
+    reader.readRect();
+    reader.readFloat();
+    reader.readFloat();
+    reader.readFloat();
+    reader.readFloat();
+    reader.readFloat();
+    reader.readBoolean();
+    reader.readInt();
+    // Landmarks left out by the field mask read as missing.
+    for (int i = 0; i < FaceMarshaller.LANDMARK_NAMES.length; i++) {
+      assertNull(reader.readPoint());
+    }
+
+    final CompactResultReader empty =
+        new CompactResultReader(
+            marshaller(null).encodeCompact(Collections.singletonList(new Face()), IDENTITY));
+    assertEquals(1, empty.readInt());
+    empty.readRect();
+    empty.readFloat();
+    empty.readFloat();
+    assertTrue(Float.isNaN(empty.readFloat()));
+    assertTrue(Float.isNaN(empty.readFloat()));
+    assertTrue(Float.isNaN(empty.readFloat()));
+    assertFalse(empty.readBoolean());
+    assertEquals(0, empty.readInt());
+  }
+}
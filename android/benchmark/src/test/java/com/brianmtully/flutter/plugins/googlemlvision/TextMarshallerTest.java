@@ -0,0 +1,278 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import static com.brianmtully.flutter.plugins.googlemlvision.CoordinateMapping.IDENTITY;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class TextMarshallerTest {
+  /** A page, block, line or element. */
+  private static final class Node {
+    final Rect boundingBox;
+    final Point[] cornerPoints;
+    final String language;
+    final String text;
+    final List<Node> children;
+
+    Node(Rect boundingBox, String language, String text, Node... children) {
+      this.boundingBox = boundingBox;
+      this.cornerPoints =
+          boundingBox == null
+              ? null
+              : new Point[] {
+                new Point(boundingBox.left, boundingBox.top),
+                new Point(boundingBox.right, boundingBox.top),
+                new Point(boundingBox.right, boundingBox.bottom),
+                new Point(boundingBox.left, boundingBox.bottom),
+              };
+      this.language = language;
+      this.text = text;
+      this.children = Arrays.asList(children);
+    }
+  }
+
+  private static final TextMarshaller.Tree<Node, Node, Node, Node> TREE =
+      new TextMarshaller.Tree<Node, Node, Node, Node>() {
+        @Override
+        public String text(Node page) {
+          return page.text;
+        }
+
+        @Override
+        public List<Node> blocks(Node page) {
+          return page.children;
+        }
+
+        @Override
+        public List<Node> lines(Node block) {
+          return block.children;
+        }
+
+        @Override
+        public List<Node> elements(Node line) {
+          return line.children;
+        }
+      };
+
+  private static final TextMarshaller.Container<Node> CONTAINER =
+      new TextMarshaller.Container<Node>() {
+        @Override
+        public Rect boundingBox(Node node) {
+          return node.boundingBox;
+        }
+
+        @Override
+        public Point[] cornerPoints(Node node) {
+          return node.cornerPoints;
+        }
+
+        @Override
+        public String language(Node node) {
+          return node.language;
+        }
+
+        @Override
+        public String text(Node node) {
+          return node.text;
+        }
+      };
+
+  // Two blocks: a large heading at the top and a line of small print further down.
+  private static final Node PAGE =
+      new Node(
+          null,
+          null,
+          "Hello world\nfine print",
+          new Node(
+              new Rect(10, 20, 210, 60),
+              "en",
+              "Hello world",
+              new Node(
+                  new Rect(10, 20, 210, 60),
+                  "en",
+                  "Hello world",
+                  new Node(new Rect(10, 20, 100, 60), "en", "Hello"),
+                  new Node(new Rect(120, 20, 210, 60), null, "world"))),
+          new Node(
+              new Rect(10, 500, 110, 510),
+              "en",
+              "fine print",
+              new Node(new Rect(10, 500, 110, 510), "en", "fine print")));
+
+  private static TextMarshaller<Node, Node, Node, Node> marshaller(
+      int granularity, double minTextHeight, RectF region) {
+    return new TextMarshaller<>(
+        TREE, CONTAINER, CONTAINER, CONTAINER, granularity, false, minTextHeight, region);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Map<String, Object>> children(Map<String, Object> data, String key) {
+    return (List<Map<String, Object>>) data.get(key);
+  }
+
+  @Test
+  public void toMapWritesTreeWithBoundingBoxesAndCornerPoints() {
+    final Map<String, Object> text =
+        marshaller(TextMarshaller.GRANULARITY_ELEMENTS, 0, null).toMap(PAGE, IDENTITY);
+
+    final List<Map<String, Object>> blocks = children(text, "blocks");
+    assertEquals(2, blocks.size());
+    final Map<String, Object> block = blocks.get(0);
+    assertEquals(10.0, block.get("left"));
+    assertEquals(20.0, block.get("top"));
+    assertEquals(200.0, block.get("width"));
+    assertEquals(40.0, block.get("height"));
+    @SuppressWarnings("unchecked")
+    final List<double[]> points = (List<double[]>) block.get("points");
+    assertEquals(4, points.size());
+    assertArrayEquals(new double[] {210, 20}, points.get(1), 0);
+    assertEquals("en", children(block, "recognizedLanguages").get(0).get("languageCode"));
+
+    final List<Map<String, Object>> elements =
+        children(children(block, "lines").get(0), "elements");
+    assertEquals(2, elements.size());
+    assertEquals("world", elements.get(1).get("text"));
+    assertEquals(120.0, elements.get(1).get("left"));
+  }
+
+  @Test
+  public void toMapOnlyWritesTextAtGranularity() {
+    final Map<String, Object> text =
+        marshaller(TextMarshaller.GRANULARITY_LINES, 0, null).toMap(PAGE, IDENTITY);
+    assertFalse(text.containsKey("text"));
+    final Map<String, Object> block = children(text, "blocks").get(0);
+    assertFalse(block.containsKey("text"));
+    assertEquals("Hello world", children(block, "lines").get(0).get("text"));
+
+    final Map<String, Object> everyLevel =
+        new TextMarshaller<>(
+                TREE,
+                CONTAINER,
+                CONTAINER,
+                CONTAINER,
+                TextMarshaller.GRANULARITY_LINES,
+                true,
+                0,
+                null)
+            .toMap(PAGE, IDENTITY);
+    assertEquals("Hello world\nfine print", everyLevel.get("text"));
+    assertEquals("Hello world", children(everyLevel, "blocks").get(0).get("text"));
+  }
+
+  @Test
+  public void toMapLeavesOutMissingValues() {
+    final Node page =
+        new Node(null, null, "?", new Node(null, null, "?", new Node(null, null, "?")));
+    final Map<String, Object> block =
+        children(
+                marshaller(TextMarshaller.GRANULARITY_ELEMENTS, 0, null).toMap(page, IDENTITY),
+                "blocks")
+            .get(0);
+
+    assertFalse(block.containsKey("left"));
+    assertTrue(((List<?>) block.get("points")).isEmpty());
+    final Map<String, Object> language = children(block, "recognizedLanguages").get(0);
+    assertTrue(language.containsKey("languageCode"));
+    assertNull(language.get("languageCode"));
+  }
+
+  @Test
+  public void toMapStopsAtGranularity() {
+    final Map<String, Object> blocksOnly =
+        marshaller(TextMarshaller.GRANULARITY_BLOCKS, 0, null).toMap(PAGE, IDENTITY);
+    assertEquals(2, children(blocksOnly, "blocks").size());
+    assertTrue(children(children(blocksOnly, "blocks").get(0), "lines").isEmpty());
+
+    final Map<String, Object> textOnly =
+        marshaller(TextMarshaller.GRANULARITY_TEXT, 0, null).toMap(PAGE, IDENTITY);
+    assertEquals("Hello world\nfine print", textOnly.get("text"));
+    assertTrue(children(textOnly, "blocks").isEmpty());
+  }
+
+  @Test
+  public void toMapFiltersSmallAndOutlyingText() {
+    final Map<String, Object> large =
+        marshaller(TextMarshaller.GRANULARITY_ELEMENTS, 20, null).toMap(PAGE, IDENTITY);
+    assertEquals(1, children(large, "blocks").size());
+    final Map<String, Object> largeText =
+        marshaller(TextMarshaller.GRANULARITY_TEXT, 20, null).toMap(PAGE, IDENTITY);
+    assertEquals("Hello world", largeText.get("text"));
+
+    final Map<String, Object> bottom =
+        marshaller(TextMarshaller.GRANULARITY_TEXT, 0, new RectF(0, 400, 300, 600))
+            .toMap(PAGE, IDENTITY);
+    assertEquals("fine print", bottom.get("text"));
+  }
+
+  @Test
+  public void encodeCompactWritesTree() {
+    final CompactResultReader reader =
+        new CompactResultReader(
+            marshaller(TextMarshaller.GRANULARITY_ELEMENTS, 0, null).encodeCompact(PAGE, IDENTITY));
+
+    assertEquals(CompactResultWriter.VERSION, reader.version);
+    assertEquals(CompactResultWriter.KIND_TEXT, reader.kind);
+    // Text is only written for the elements.
+    assertNull(reader.readString());
+    assertEquals(2, reader.readInt());
+
+    // The first block, its line and its elements.
+    assertArrayEquals(new float[] {10, 20, 200, 40}, reader.readRect(), 0);
+    assertArrayEquals(new float[] {210, 20}, reader.readPoints()[1], 0);
+    assertEquals("en", reader.readString());
+    assertNull(reader.readString());
+    assertEquals(1, reader.readInt());
+    reader.readRect();
+    reader.readPoints();
+    reader.readString();
+    assertNull(reader.readString());
+    assertEquals(2, reader.readInt());
+    reader.readRect();
+    reader.readPoints();
+    assertEquals("en", reader.readString());
+    assertEquals("Hello", reader.readString());
+    assertArrayEquals(new float[] {120, 20, 90, 40}, reader.readRect(), 0);
+    reader.readPoints();
+    assertNull(reader.readString());
+    assertEquals("world", reader.readString());
+  }
+
+  @Test
+  public void encodeCompactWritesMissingValuesAsAbsent() {
+    final Node page = new Node(null, null, "?", new Node(null, null, "?"));
+    final CompactResultReader reader =
+        new CompactResultReader(
+            marshaller(TextMarshaller.GRANULARITY_BLOCKS, 0, null).encodeCompact(page, IDENTITY));
+
+    assertNull(reader.readString());
+    assertEquals(1, reader.readInt());
+    assertNull(reader.readRect());
+    assertEquals(0, reader.readPoints().length);
+    assertNull(reader.readString());
+    assertEquals("?", reader.readString());
+    // Lines are below the granularity.
+    assertEquals(0, reader.readInt());
+    assertTrue(reader.isAtEnd());
+  }
+
+  @Test
+  public void parseGranularityDefaultsToElements() {
+    assertEquals(TextMarshaller.GRANULARITY_ELEMENTS, TextMarshaller.parseGranularity(null));
+    assertEquals(TextMarshaller.GRANULARITY_LINES, TextMarshaller.parseGranularity("lines"));
+    assertEquals(TextMarshaller.GRANULARITY_TEXT, TextMarshaller.parseGranularity("text"));
+  }
+}
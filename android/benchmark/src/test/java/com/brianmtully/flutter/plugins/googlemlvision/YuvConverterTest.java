@@ -0,0 +1,159 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.graphics.Rect;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class YuvConverterTest {
+  // A 4x2 frame: Y rows padded to 6 bytes, and U and V interleaved with a pixel stride of 2.
+  private static final byte[] Y = {1, 2, 3, 4, 0, 0, 5, 6, 7, 8};
+  private static final byte[] U = {10, 20, 11};
+  private static final byte[] V = {20, 11, 21};
+
+  private static Map<String, Object> planeData(Integer bytesPerRow, Integer bytesPerPixel) {
+    final Map<String, Object> plane = new HashMap<>();
+    plane.put("bytesPerRow", bytesPerRow);
+    plane.put("bytesPerPixel", bytesPerPixel);
+    return plane;
+  }
+
+  private static List<ByteBuffer> planes(byte[] y, byte[] u, byte[] v) {
+    return Arrays.asList(ByteBuffer.wrap(y), ByteBuffer.wrap(u), ByteBuffer.wrap(v));
+  }
+
+  private static List<Map<String, Object>> interleavedPlaneData() {
+    return Arrays.asList(planeData(6, null), planeData(4, 2), planeData(4, 2));
+  }
+
+  private static byte[] toNv21(
+      List<ByteBuffer> planes, List<Map<String, Object>> planeData, int width, int height) {
+    final ByteBuffer out = ByteBuffer.allocate(YuvConverter.nv21Size(width, height));
+    YuvConverter.toNv21(planes, planeData, width, height, out);
+    assertEquals(out.capacity(), out.position());
+    return out.array();
+  }
+
+  private static void assertRejected(
+      String message, List<ByteBuffer> planes, List<Map<String, Object>> planeData) {
+    try {
+      YuvConverter.fromPlanes(planes, planeData, 4, 2);
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains(message));
+    }
+  }
+
+  @Test
+  public void toNv21SkipsRowPaddingAndInterleavesChroma() {
+    assertArrayEquals(
+        new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 20, 10, 21, 11},
+        toNv21(planes(Y, U, V), interleavedPlaneData(), 4, 2));
+  }
+
+  @Test
+  public void toNv21ReadsPlanarChroma() {
+    final List<Map<String, Object>> planeData =
+        Arrays.asList(planeData(4, null), planeData(2, 1), planeData(null, null));
+
+    assertArrayEquals(
+        new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 30, 10, 31, 11},
+        toNv21(
+            planes(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, new byte[] {10, 11}, new byte[] {30, 31}),
+            planeData,
+            4,
+            2));
+  }
+
+  @Test
+  public void toNv21CropsAndScales() {
+    final byte[] y = new byte[16];
+    for (int i = 0; i < y.length; i++) {
+      y[i] = (byte) i;
+    }
+    final YuvConverter.Plane[] planes = {
+      new YuvConverter.Plane(ByteBuffer.wrap(y), 0, 4, 1),
+      new YuvConverter.Plane(ByteBuffer.wrap(new byte[] {40, 41, 42, 43}), 0, 2, 1),
+      new YuvConverter.Plane(ByteBuffer.wrap(new byte[] {50, 51, 52, 53}), 0, 2, 1),
+    };
+    final ByteBuffer out = ByteBuffer.allocate(YuvConverter.nv21Size(2, 2));
+
+    // The bottom right quarter of a 4x4 frame, and the whole frame at half size.
+    YuvConverter.toNv21(planes, new Rect(2, 2, 4, 4), 2, 2, out);
+    assertArrayEquals(new byte[] {10, 11, 14, 15, 53, 43}, out.array());
+    out.clear();
+    YuvConverter.toNv21(planes, new Rect(0, 0, 4, 4), 2, 2, out);
+    assertArrayEquals(new byte[] {0, 2, 8, 10, 50, 40}, out.array());
+  }
+
+  @Test
+  public void fromPlanesAcceptsLastRowWithoutPadding() {
+    // The last Y row ends after its last pixel, as camera buffers commonly do.
+    final YuvConverter.Plane[] planes =
+        YuvConverter.fromPlanes(planes(Y, U, V), interleavedPlaneData(), 4, 2);
+
+    assertEquals(6, planes[0].rowStride);
+    assertEquals(2, planes[1].pixelStride);
+    assertEquals(8, planes[0].get(3, 1));
+    assertEquals(11, planes[1].get(1, 0));
+  }
+
+  @Test
+  public void fromPlanesRejectsShortPlanes() {
+    assertRejected(
+        "Y plane has 9 bytes, expected at least 10 for 4x2",
+        planes(Arrays.copyOf(Y, 9), U, V),
+        interleavedPlaneData());
+    assertRejected(
+        "V plane has 2 bytes, expected at least 3 for 2x1",
+        planes(Y, U, Arrays.copyOf(V, 2)),
+        interleavedPlaneData());
+  }
+
+  @Test
+  public void fromPlanesRejectsInvalidStrides() {
+    assertRejected(
+        "Invalid strides for U plane",
+        planes(Y, U, V),
+        Arrays.asList(planeData(6, null), planeData(4, 0), planeData(4, 2)));
+    assertRejected(
+        "Y plane rows of 3 bytes are too short for 4 pixels",
+        planes(Y, U, V),
+        Arrays.asList(planeData(3, null), planeData(4, 2), planeData(4, 2)));
+    assertRejected(
+        "U plane rows of 2 bytes are too short for 2 pixels of 2 bytes",
+        planes(Y, U, V),
+        Arrays.asList(planeData(6, null), planeData(2, 2), planeData(4, 2)));
+  }
+
+  @Test
+  public void fromPlanesRejectsWrongPlaneCount() {
+    assertRejected(
+        "Expected 3 planes for YUV_420_888, got: 1",
+        Collections.singletonList(ByteBuffer.wrap(Y)),
+        Collections.singletonList(planeData(6, null)));
+  }
+
+  @Test
+  public void packedFormatsRejectShortBuffers() {
+    try {
+      YuvConverter.fromNv21(ByteBuffer.allocate(11), 4, 2);
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      assertEquals("NV21 image has 11 bytes, expected at least 12 for 4x2", expected.getMessage());
+    }
+  }
+}
@@ -0,0 +1,194 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.MethodChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Trades detection quality for latency on one detector handle, enabled with {@code
+ * options["processing"]["governor"]}.
+ *
+ * <p>The governor tracks the latency of each frame from its arrival until its result, smoothed
+ * over recent frames. When it stays above the target, the governor first switches a detector
+ * supporting it to its fast mode, then downscales frames towards {@code minScale}, then skips
+ * frames up to {@code maxFrameSkip}. When latency is well below the target, the steps are undone
+ * in reverse order. Every change is reported to Dart as an event. Frames answered from the motion
+ * gate's cache took no detection and are left out of the latency.
+ *
+ * <p>Only used from the main thread.
+ */
+class AdaptiveGovernor {
+  /** Implemented by detectors that can switch to a faster, less accurate mode. */
+  interface ModeSwitch {
+    /** Whether the detector was configured with a mode slower than its fast mode. */
+    boolean hasFastMode();
+
+    void setFastMode(boolean fast);
+  }
+
+  /** Receives the governor's decisions, see {@link GovernorEvents}. */
+  interface Listener {
+    void onDecision(Map<String, Object> decision);
+  }
+
+  // Frames measured before the smoothed latency is acted upon, and again after every change.
+  private static final int SAMPLES_PER_DECISION = 8;
+  private static final double SMOOTHING = 0.2;
+  // Steps are undone once latency drops below this fraction of the target.
+  private static final double RELAX_RATIO = 0.6;
+  private static final double SCALE_STEP = 0.75;
+
+  private final int handle;
+  private final double targetLatencyMs;
+  private final int maxFrameSkip;
+  private final double minScale;
+  @Nullable private final ModeSwitch modeSwitch;
+  private final Listener listener;
+
+  private boolean fastMode = false;
+  private double scale = 1;
+  private int frameSkip = 0;
+  private int skipped = 0;
+  private int samples = 0;
+  private double latencyMs = 0;
+
+  AdaptiveGovernor(
+      int handle,
+      Map<String, Object> governor,
+      @Nullable ModeSwitch modeSwitch,
+      Listener listener) {
+    this.handle = handle;
+    this.targetLatencyMs = (Double) governor.get("targetLatencyMs");
+
+    final Integer maxSkip = (Integer) governor.get("maxFrameSkip");
+    this.maxFrameSkip = maxSkip == null ? 0 : Math.max(0, maxSkip);
+    final Double min = (Double) governor.get("minScale");
+    this.minScale = min == null ? 1 : Math.min(1, Math.max(0.1, min));
+
+    final boolean allowFastMode = !Boolean.FALSE.equals(governor.get("allowFastMode"));
+    this.modeSwitch =
+        allowFastMode && modeSwitch != null && modeSwitch.hasFastMode() ? modeSwitch : null;
+    this.listener = listener;
+  }
+
+  /** Whether the next frame should be skipped under the current frame skip rate. */
+  boolean shouldSkip() {
+    if (skipped < frameSkip) {
+      skipped++;
+      return true;
+    }
+    skipped = 0;
+    return false;
+  }
+
+  /** Applies the current downscale factor to a frame's metadata; image files are left as is. */
+  void adjust(Map<String, Object> imageData) {
+    if (scale >= 1 || !"bytes".equals(imageData.get("type"))) {
+      return;
+    }
+
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> metadata = (Map<String, Object>) imageData.get("metadata");
+    final Double frameScale = (Double) metadata.get("scale");
+    metadata.put("scale", (frameScale != null ? frameScale : 1) * scale);
+  }
+
+  /** Wraps the result of a frame that is about to be processed to measure its latency. */
+  MethodChannel.Result track(final MethodChannel.Result result, final DetectionRequest request) {
+    final long startedAt = SystemClock.elapsedRealtimeNanos();
+    return new MethodChannel.Result() {
+      @Override
+      public void success(@Nullable Object value) {
+        if (!request.isAnsweredFromCache()) {
+          record((SystemClock.elapsedRealtimeNanos() - startedAt) / 1e6);
+        }
+        result.success(value);
+      }
+
+      @Override
+      public void error(
+          String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+        // Failed and dropped frames say nothing about how long detection takes.
+        result.error(errorCode, errorMessage, errorDetails);
+      }
+
+      @Override
+      public void notImplemented() {
+        result.notImplemented();
+      }
+    };
+  }
+
+  private void record(double frameLatencyMs) {
+    latencyMs =
+        samples == 0 ? frameLatencyMs : latencyMs + SMOOTHING * (frameLatencyMs - latencyMs);
+    if (++samples < SAMPLES_PER_DECISION) {
+      return;
+    }
+
+    final boolean changed;
+    if (latencyMs > targetLatencyMs) {
+      changed = degrade();
+    } else if (latencyMs < targetLatencyMs * RELAX_RATIO) {
+      changed = relax();
+    } else {
+      changed = false;
+    }
+
+    if (changed) {
+      // The new setting is judged on fresh measurements only.
+      samples = 0;
+      report();
+    }
+  }
+
+  private boolean degrade() {
+    if (modeSwitch != null && !fastMode) {
+      fastMode = true;
+      modeSwitch.setFastMode(true);
+      return true;
+    }
+    if (scale > minScale) {
+      scale = Math.max(minScale, scale * SCALE_STEP);
+      return true;
+    }
+    if (frameSkip < maxFrameSkip) {
+      frameSkip++;
+      return true;
+    }
+    return false;
+  }
+
+  private boolean relax() {
+    if (frameSkip > 0) {
+      frameSkip--;
+      return true;
+    }
+    if (scale < 1) {
+      scale = Math.min(1, scale / SCALE_STEP);
+      return true;
+    }
+    if (fastMode) {
+      fastMode = false;
+      modeSwitch.setFastMode(false);
+      return true;
+    }
+    return false;
+  }
+
+  private void report() {
+    final Map<String, Object> decision = new HashMap<>();
+    decision.put("handle", handle);
+    decision.put("latencyMs", latencyMs);
+    decision.put("frameSkip", frameSkip);
+    decision.put("scale", scale);
+    decision.put("fastMode", fastMode);
+    listener.onDecision(decision);
+  }
+}
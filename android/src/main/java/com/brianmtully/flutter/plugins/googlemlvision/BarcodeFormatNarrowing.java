@@ -0,0 +1,81 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import androidx.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * Narrows the barcode formats a scanner searches for to the formats it actually decodes.
+ *
+ * <p>The scanner starts out searching for all configured formats and records the formats it
+ * decodes. After {@code warmUpFrames} frames it is narrowed to the recorded formats, or keeps
+ * searching for all of them when nothing was decoded. After {@code wideningInterval} narrowed
+ * frames it searches for all configured formats again for another warm-up window, so formats that
+ * only show up later are picked up.
+ */
+class BarcodeFormatNarrowing {
+  // Barcode formats are single bits, see BarcodeFormat in Dart. ML Kit reads zero as all formats.
+  private static final int ALL_FORMATS = 0xFFFF;
+
+  private final int configuredFormats;
+  private final int warmUpFrames;
+  private final int wideningInterval;
+  private int formats;
+  private int decodedFormats = 0;
+  private int frames = 0;
+
+  BarcodeFormatNarrowing(int configuredFormats, int warmUpFrames, int wideningInterval) {
+    this.configuredFormats = configuredFormats == 0 ? ALL_FORMATS : configuredFormats;
+    this.warmUpFrames = warmUpFrames;
+    this.wideningInterval = wideningInterval;
+    this.formats = this.configuredFormats;
+  }
+
+  /** Returns the narrowing configured in {@code options}, or null if it isn't enabled. */
+  @Nullable
+  static BarcodeFormatNarrowing parse(Map<String, Object> options) {
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> adaptiveFormats =
+        (Map<String, Object>) options.get("adaptiveFormats");
+    if (adaptiveFormats == null) {
+      return null;
+    }
+    return new BarcodeFormatNarrowing(
+        (Integer) options.get("barcodeFormats"),
+        (Integer) adaptiveFormats.get("warmUpFrames"),
+        (Integer) adaptiveFormats.get("wideningInterval"));
+  }
+
+  synchronized int formats() {
+    return formats;
+  }
+
+  boolean isNarrowed(int formats) {
+    return formats != configuredFormats;
+  }
+
+  /**
+   * Records the formats decoded in a frame, a bitwise or of barcode formats, and returns the
+   * formats to search for from the next frame on.
+   */
+  synchronized int onFrame(int decoded) {
+    frames++;
+    if (!isNarrowed(formats)) {
+      decodedFormats |= decoded & configuredFormats;
+      if (frames >= warmUpFrames) {
+        if (decodedFormats != 0) {
+          formats = decodedFormats;
+        }
+        decodedFormats = 0;
+        frames = 0;
+      }
+    } else if (frames >= wideningInterval) {
+      formats = configuredFormats;
+      frames = 0;
+    }
+    return formats;
+  }
+}
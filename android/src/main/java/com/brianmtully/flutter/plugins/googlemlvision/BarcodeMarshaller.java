@@ -0,0 +1,114 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts scanned barcodes to channel messages.
+ *
+ * <p>Barcodes are read through a {@link Reader}, so the conversion doesn't depend on ML Kit types
+ * and also runs on plain JVM fixtures, see the benchmark module.
+ *
+ * @param <B> a scanned barcode
+ */
+class BarcodeMarshaller<B> {
+  /** Reads a barcode. */
+  interface Reader<B> {
+    @Nullable
+    Rect boundingBox(B barcode);
+
+    @Nullable
+    Point[] cornerPoints(B barcode);
+
+    @Nullable
+    String rawValue(B barcode);
+
+    @Nullable
+    String displayValue(B barcode);
+
+    int format(B barcode);
+
+    int valueType(B barcode);
+
+    /**
+     * Adds the payload of the barcode's value type to {@code addTo}, keyed by the value type's
+     * name, e.g. {@code "email"}. Adds nothing for value types without a payload.
+     */
+    void addTypeValue(B barcode, Map<String, Object> addTo);
+  }
+
+  private final Reader<B> reader;
+
+  BarcodeMarshaller(Reader<B> reader) {
+    this.reader = reader;
+  }
+
+  /** Converts {@code visionBarcodes}, mapping their coordinates with {@code mapping}. */
+  List<Map<String, Object>> toMaps(List<B> visionBarcodes, CoordinateMapping mapping) {
+    List<Map<String, Object>> barcodes = new ArrayList<>(visionBarcodes.size());
+
+    for (B barcode : visionBarcodes) {
+      Map<String, Object> barcodeMap = new HashMap<>();
+
+      Rect bounds = reader.boundingBox(barcode);
+      if (bounds != null) {
+        mapping.putRect(bounds, barcodeMap);
+      }
+
+      List<double[]> points = new ArrayList<>();
+      Point[] cornerPoints = reader.cornerPoints(barcode);
+      if (cornerPoints != null) {
+        for (Point point : cornerPoints) {
+          points.add(mapping.point(point.x, point.y));
+        }
+      }
+      barcodeMap.put("points", points);
+
+      barcodeMap.put("rawValue", reader.rawValue(barcode));
+      barcodeMap.put("displayValue", reader.displayValue(barcode));
+      barcodeMap.put("format", reader.format(barcode));
+      barcodeMap.put("valueType", reader.valueType(barcode));
+
+      reader.addTypeValue(barcode, barcodeMap);
+
+      barcodes.add(barcodeMap);
+    }
+    return barcodes;
+  }
+
+  byte[] encodeCompact(List<B> visionBarcodes, CoordinateMapping mapping) {
+    CompactResultWriter writer =
+        new CompactResultWriter(CompactResultWriter.KIND_BARCODES, mapping);
+    writer.putInt(visionBarcodes.size());
+    for (B barcode : visionBarcodes) {
+      writer.putRect(reader.boundingBox(barcode));
+      writer.putPoints(reader.cornerPoints(barcode));
+      writer.putString(reader.rawValue(barcode));
+      writer.putString(reader.displayValue(barcode));
+      writer.putInt(reader.format(barcode));
+      writer.putInt(reader.valueType(barcode));
+
+      // Value type payloads are small and irregular, so they keep their map shape.
+      Map<String, Object> typeValue = new HashMap<>();
+      reader.addTypeValue(barcode, typeValue);
+      if (typeValue.isEmpty()) {
+        writer.putString(null);
+        writer.putValue(null);
+      } else {
+        Map.Entry<String, Object> entry = typeValue.entrySet().iterator().next();
+        writer.putString(entry.getKey());
+        writer.putValue(entry.getValue());
+      }
+    }
+    return writer.toByteArray();
+  }
+}
@@ -0,0 +1,177 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.util.SparseArray;
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs detectors over lists of image files and streams each result over an {@link EventChannel}.
+ *
+ * <p>Every event carries the {@code batchId} it belongs to. A batch keeps at most one image per
+ * core in flight, so decoding and inference overlap without loading the whole batch into memory.
+ * Images are decoded on a dedicated executor, so blocking file reads never hold up the shared
+ * executor running ML Kit callbacks and result conversion.
+ * A final {@code done} event is sent once every image of a batch completed.
+ *
+ * <p>Only used from the main thread.
+ */
+class BatchProcessor implements EventChannel.StreamHandler {
+  private static final class Batch {
+    final int id;
+    final List<String> paths;
+    @Nullable final Integer maxDimension;
+    final FrameScheduler.FrameProcessor processor;
+    // Shared by every image, so cancelling the batch discards the images in flight.
+    final DetectionRequest request = new DetectionRequest(null, null);
+    int next = 0;
+    int inFlight = 0;
+    boolean cancelled = false;
+
+    Batch(
+        int id,
+        List<String> paths,
+        @Nullable Integer maxDimension,
+        FrameScheduler.FrameProcessor processor) {
+      this.id = id;
+      this.paths = paths;
+      this.maxDimension = maxDimension;
+      this.processor = processor;
+    }
+  }
+
+  private final Executor decodeExecutor;
+  private final int parallelism;
+  private final SparseArray<Batch> batches = new SparseArray<>();
+  @Nullable private EventChannel.EventSink events;
+
+  BatchProcessor(Executor decodeExecutor, int parallelism) {
+    this.decodeExecutor = decodeExecutor;
+    this.parallelism = parallelism;
+  }
+
+  @Override
+  public void onListen(Object arguments, EventChannel.EventSink events) {
+    this.events = events;
+  }
+
+  @Override
+  public void onCancel(Object arguments) {
+    events = null;
+    for (int i = 0; i < batches.size(); i++) {
+      batches.valueAt(i).cancelled = true;
+      batches.valueAt(i).request.cancel();
+    }
+    batches.clear();
+  }
+
+  void start(
+      int batchId,
+      List<String> paths,
+      @Nullable Integer maxDimension,
+      FrameScheduler.FrameProcessor processor) {
+    if (batches.get(batchId) != null) {
+      throw new IllegalArgumentException(String.format("Batch already exists: %s", batchId));
+    }
+
+    final Batch batch = new Batch(batchId, paths, maxDimension, processor);
+    batches.put(batchId, batch);
+    dispatch(batch);
+  }
+
+  /** Stops starting new images of the batch; images in flight are discarded once detected. */
+  void cancel(int batchId) {
+    final Batch batch = batches.get(batchId);
+    if (batch != null) {
+      batch.cancelled = true;
+      batch.request.cancel();
+      batches.remove(batchId);
+    }
+  }
+
+  private void dispatch(final Batch batch) {
+    while (!batch.cancelled && batch.inFlight < parallelism && batch.next < batch.paths.size()) {
+      final int index = batch.next++;
+      batch.inFlight++;
+
+      final Map<String, Object> imageData = new HashMap<>();
+      imageData.put("type", "file");
+      imageData.put("path", batch.paths.get(index));
+      imageData.put("maxDimension", batch.maxDimension);
+
+      final MethodChannel.Result result = new MainThreadResult(itemResult(batch, index));
+      decodeExecutor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              batch.processor.process(imageData, batch.request, result);
+            }
+          });
+    }
+
+    if (!batch.cancelled && batch.inFlight == 0 && batch.next == batch.paths.size()) {
+      batches.remove(batch.id);
+
+      final Map<String, Object> event = new HashMap<>();
+      event.put("batchId", batch.id);
+      event.put("done", true);
+      send(event);
+    }
+  }
+
+  private MethodChannel.Result itemResult(final Batch batch, final int index) {
+    return new MethodChannel.Result() {
+      @Override
+      public void success(@Nullable Object value) {
+        final Map<String, Object> event = newItemEvent(batch, index);
+        event.put("result", value);
+        complete(batch, event);
+      }
+
+      @Override
+      public void error(
+          String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+        final Map<String, Object> event = newItemEvent(batch, index);
+        event.put("errorCode", errorCode);
+        event.put("errorMessage", errorMessage);
+        complete(batch, event);
+      }
+
+      @Override
+      public void notImplemented() {
+        error("MLVisionBatchError", "Detector not implemented.", null);
+      }
+    };
+  }
+
+  private static Map<String, Object> newItemEvent(Batch batch, int index) {
+    final Map<String, Object> event = new HashMap<>();
+    event.put("batchId", batch.id);
+    event.put("index", index);
+    return event;
+  }
+
+  private void complete(Batch batch, Map<String, Object> event) {
+    batch.inFlight--;
+    if (batch.cancelled) {
+      return;
+    }
+
+    send(event);
+    dispatch(batch);
+  }
+
+  private void send(Map<String, Object> event) {
+    if (events != null) {
+      events.success(event);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.MethodChannel;
+import java.util.Arrays;
+
+/**
+ * Collects the results of several detectors into one reply.
+ *
+ * <p>Replies with the list of slot results once every slot succeeded, or with the first error.
+ */
+class CombinedResult {
+  private final MethodChannel.Result result;
+  private final Object[] values;
+  private int remaining;
+  private boolean completed = false;
+
+  CombinedResult(int count, MethodChannel.Result result) {
+    this.result = result;
+    this.values = new Object[count];
+    this.remaining = count;
+    if (count == 0) {
+      complete();
+    }
+  }
+
+  MethodChannel.Result slot(final int index) {
+    return new MethodChannel.Result() {
+      @Override
+      public void success(@Nullable Object value) {
+        synchronized (CombinedResult.this) {
+          if (completed) {
+            return;
+          }
+          values[index] = value;
+          if (--remaining > 0) {
+            return;
+          }
+        }
+        complete();
+      }
+
+      @Override
+      public void error(
+          String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+        synchronized (CombinedResult.this) {
+          if (completed) {
+            return;
+          }
+          completed = true;
+        }
+        result.error(errorCode, errorMessage, errorDetails);
+      }
+
+      @Override
+      public void notImplemented() {
+        error("MLVisionPipelineError", "Detector not implemented.", null);
+      }
+    };
+  }
+
+  private void complete() {
+    synchronized (this) {
+      completed = true;
+    }
+    result.success(Arrays.asList(values));
+  }
+}
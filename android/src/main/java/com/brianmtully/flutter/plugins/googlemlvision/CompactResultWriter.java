@@ -0,0 +1,227 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.graphics.Point;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import androidx.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes detection results into a single flat buffer instead of nested maps.
+ *
+ * <p>Layout (little endian): {@code u8 version, u8 kind, f32 scaleX, f32 scaleY, f32 offsetX, f32
+ * offsetY, u32 stringCount, stringCount * (u32 length, utf8 bytes)}, followed by the kind specific
+ * body. Strings in the body are written as {@code i32} indices into the string table, or -1 for
+ * null. Coordinates are {@code f32}, and read as {@code x * scaleX + offsetX} and {@code y * scaleY
+ * + offsetY}; the writer's {@link CoordinateMapping} supplies the transform, so the body holds the
+ * detector's own coordinates. The Dart counterpart is {@code _CompactResultReader}.
+ */
+class CompactResultWriter {
+  static final int VERSION = 2;
+
+  static final int KIND_BARCODES = 1;
+  static final int KIND_FACES = 2;
+  static final int KIND_TEXT = 3;
+
+  private static final int TAG_NULL = 0;
+  private static final int TAG_TRUE = 1;
+  private static final int TAG_FALSE = 2;
+  private static final int TAG_INT = 3;
+  private static final int TAG_DOUBLE = 4;
+  private static final int TAG_STRING = 5;
+  private static final int TAG_LIST = 6;
+  private static final int TAG_MAP = 7;
+
+  private static final int HEADER_SIZE = 22;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final int kind;
+  private final CoordinateMapping mapping;
+  private final Map<String, Integer> stringIndices = new HashMap<>();
+  private final List<byte[]> strings = new ArrayList<>();
+  private int stringBytes = 0;
+  private ByteBuffer body = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+  CompactResultWriter(int kind, CoordinateMapping mapping) {
+    this.kind = kind;
+    this.mapping = mapping;
+  }
+
+  void putByte(int value) {
+    ensureCapacity(1);
+    body.put((byte) value);
+  }
+
+  void putBoolean(boolean value) {
+    putByte(value ? 1 : 0);
+  }
+
+  void putInt(int value) {
+    ensureCapacity(4);
+    body.putInt(value);
+  }
+
+  void putFloat(float value) {
+    ensureCapacity(4);
+    body.putFloat(value);
+  }
+
+  /** Writes {@code value}, or NaN when it is null. */
+  void putFloat(@Nullable Float value) {
+    putFloat(value == null ? Float.NaN : value);
+  }
+
+  void putDouble(double value) {
+    ensureCapacity(8);
+    body.putDouble(value);
+  }
+
+  void putString(@Nullable String value) {
+    putInt(indexOf(value));
+  }
+
+  /** Writes a presence flag followed by left, top, width and height. */
+  void putRect(@Nullable Rect rect) {
+    putBoolean(rect != null);
+    if (rect != null) {
+      ensureCapacity(16);
+      body.putFloat(rect.left);
+      body.putFloat(rect.top);
+      body.putFloat(rect.width());
+      body.putFloat(rect.height());
+    }
+  }
+
+  void putPoints(@Nullable Point[] points) {
+    final int count = points == null ? 0 : points.length;
+    putInt(count);
+    ensureCapacity(count * 8);
+    for (int i = 0; i < count; i++) {
+      body.putFloat(points[i].x);
+      body.putFloat(points[i].y);
+    }
+  }
+
+  /** Writes a point count, or -1 when {@code points} is null, followed by the points. */
+  void putPoints(@Nullable List<PointF> points) {
+    if (points == null) {
+      putInt(-1);
+      return;
+    }
+
+    final int count = points.size();
+    putInt(count);
+    ensureCapacity(count * 8);
+    for (int i = 0; i < count; i++) {
+      body.putFloat(points.get(i).x);
+      body.putFloat(points.get(i).y);
+    }
+  }
+
+  /** Writes a presence flag followed by x and y. */
+  void putPoint(@Nullable PointF point) {
+    putBoolean(point != null);
+    if (point != null) {
+      ensureCapacity(8);
+      body.putFloat(point.x);
+      body.putFloat(point.y);
+    }
+  }
+
+  /**
+   * Writes an arbitrary tree of maps, lists, strings and numbers with a type tag per value.
+   *
+   * <p>Only used for small, irregular payloads such as barcode value types.
+   */
+  void putValue(@Nullable Object value) {
+    if (value == null) {
+      putByte(TAG_NULL);
+    } else if (value instanceof Boolean) {
+      putByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+    } else if (value instanceof Integer) {
+      putByte(TAG_INT);
+      putInt((Integer) value);
+    } else if (value instanceof Number) {
+      putByte(TAG_DOUBLE);
+      putDouble(((Number) value).doubleValue());
+    } else if (value instanceof String) {
+      putByte(TAG_STRING);
+      putString((String) value);
+    } else if (value instanceof List) {
+      final List<?> list = (List<?>) value;
+      putByte(TAG_LIST);
+      putInt(list.size());
+      for (Object item : list) {
+        putValue(item);
+      }
+    } else if (value instanceof Map) {
+      final Map<?, ?> map = (Map<?, ?>) value;
+      putByte(TAG_MAP);
+      putInt(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        putString((String) entry.getKey());
+        putValue(entry.getValue());
+      }
+    } else {
+      throw new IllegalArgumentException("Unsupported value: " + value.getClass());
+    }
+  }
+
+  byte[] toByteArray() {
+    final ByteBuffer out =
+        ByteBuffer.allocate(HEADER_SIZE + strings.size() * 4 + stringBytes + body.position())
+            .order(ByteOrder.LITTLE_ENDIAN);
+    out.put((byte) VERSION);
+    out.put((byte) kind);
+    out.putFloat((float) mapping.scaleX);
+    out.putFloat((float) mapping.scaleY);
+    out.putFloat((float) mapping.offsetX);
+    out.putFloat((float) mapping.offsetY);
+    out.putInt(strings.size());
+    for (byte[] string : strings) {
+      out.putInt(string.length);
+      out.put(string);
+    }
+    out.put(body.array(), 0, body.position());
+    return out.array();
+  }
+
+  private int indexOf(@Nullable String value) {
+    if (value == null) {
+      return -1;
+    }
+
+    Integer index = stringIndices.get(value);
+    if (index == null) {
+      final byte[] bytes = value.getBytes(UTF8);
+      index = strings.size();
+      strings.add(bytes);
+      stringBytes += bytes.length;
+      stringIndices.put(value, index);
+    }
+    return index;
+  }
+
+  private void ensureCapacity(int bytes) {
+    if (body.remaining() >= bytes) {
+      return;
+    }
+
+    final int capacity = Math.max(body.capacity() * 2, body.position() + bytes);
+    final ByteBuffer grown = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    body.flip();
+    grown.put(body);
+    body = grown;
+  }
+}
@@ -0,0 +1,44 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.graphics.Rect;
+import java.util.Map;
+
+/**
+ * Maps coordinates in the image handed to a detector back to the frame passed in by the caller,
+ * from {@code x} to {@code x * scaleX + offsetX} and likewise for {@code y}.
+ *
+ * <p>The marshallers apply it where they read bounding boxes and points, so only coordinates are
+ * ever mapped. Compact results carry it in their header instead.
+ */
+final class CoordinateMapping {
+  static final CoordinateMapping IDENTITY = new CoordinateMapping(1, 1, 0, 0);
+
+  final double scaleX;
+  final double scaleY;
+  final double offsetX;
+  final double offsetY;
+
+  CoordinateMapping(double scaleX, double scaleY, double offsetX, double offsetY) {
+    this.scaleX = scaleX;
+    this.scaleY = scaleY;
+    this.offsetX = offsetX;
+    this.offsetY = offsetY;
+  }
+
+  /** Adds the mapped left, top, width and height of {@code rect} to {@code addTo}. */
+  void putRect(Rect rect, Map<String, Object> addTo) {
+    addTo.put("left", rect.left * scaleX + offsetX);
+    addTo.put("top", rect.top * scaleY + offsetY);
+    addTo.put("width", rect.width() * scaleX);
+    addTo.put("height", rect.height() * scaleY);
+  }
+
+  /** Returns the mapped point as x and y. */
+  double[] point(double x, double y) {
+    return new double[] {x * scaleX + offsetX, y * scaleY + offsetY};
+  }
+}
@@ -0,0 +1,218 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.MethodChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns consecutive detection results of one handle into deltas against the previous frame.
+ *
+ * <p>Entries are matched by raw value for barcodes, by tracking id for faces and objects, by text
+ * for labels, and by text plus bounding box overlap for text blocks. Faces and objects without
+ * tracking ids fall back to bounding box overlap, so they are never matched when the field mask
+ * leaves out their bounding box. Each entry gets a {@code
+ * deltaId} that is stable while it stays matched. Only added, removed and moved entries are sent,
+ * or an {@code unchanged} marker when nothing changed.
+ */
+class DeltaTracker {
+  private static final double MATCH_IOU = 0.5;
+
+  private static final class Entry {
+    final int id;
+    Map<String, Object> data;
+
+    Entry(int id, Map<String, Object> data) {
+      this.id = id;
+      this.data = data;
+    }
+  }
+
+  private final String type;
+  private final double moveThreshold;
+  private List<Entry> previous = new ArrayList<>();
+  @Nullable private Object previousText;
+  private int nextId = 0;
+
+  DeltaTracker(String type, double moveThreshold) {
+    this.type = type;
+    this.moveThreshold = moveThreshold;
+  }
+
+  /**
+   * Wraps {@code result} so that successful results are replaced with their delta and replies are
+   * delivered on the main looper.
+   */
+  MethodChannel.Result wrap(MethodChannel.Result result) {
+    final MethodChannel.Result mainThreadResult = MainThreadResult.queued(result);
+    return new MethodChannel.Result() {
+      @Override
+      public void success(@Nullable Object value) {
+        // Each delta is against the one computed before it, so Dart has to receive them in that
+        // order: post under the lock that orders the updates.
+        synchronized (DeltaTracker.this) {
+          mainThreadResult.success(update(value));
+        }
+      }
+
+      @Override
+      public void error(
+          String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+        mainThreadResult.error(errorCode, errorMessage, errorDetails);
+      }
+
+      @Override
+      public void notImplemented() {
+        mainThreadResult.notImplemented();
+      }
+    };
+  }
+
+  @SuppressWarnings("unchecked")
+  synchronized Map<String, Object> update(Object value) {
+    final List<Map<String, Object>> items;
+    Object text = null;
+    if ("TextRecognizer".equals(type)) {
+      final Map<String, Object> visionText = (Map<String, Object>) value;
+      items = (List<Map<String, Object>>) visionText.get("blocks");
+      text = visionText.get("text");
+    } else {
+      items = (List<Map<String, Object>>) value;
+    }
+
+    final List<Map<String, Object>> added = new ArrayList<>();
+    final List<Map<String, Object>> moved = new ArrayList<>();
+    final List<Entry> unmatched = new ArrayList<>(previous);
+    final List<Entry> current = new ArrayList<>(items.size());
+
+    for (Map<String, Object> item : items) {
+      final Entry match = removeMatch(unmatched, item);
+      if (match == null) {
+        final Entry entry = new Entry(nextId++, item);
+        added.add(withDeltaId(item, entry.id));
+        current.add(entry);
+      } else {
+        if (hasMoved(match.data, item)) {
+          match.data = item;
+          moved.add(withDeltaId(item, match.id));
+        }
+        current.add(match);
+      }
+    }
+
+    final List<Integer> removed = new ArrayList<>(unmatched.size());
+    for (Entry entry : unmatched) {
+      removed.add(entry.id);
+    }
+
+    final boolean textChanged = text == null ? previousText != null : !text.equals(previousText);
+    previous = current;
+    previousText = text;
+
+    final Map<String, Object> delta = new HashMap<>();
+    delta.put("delta", true);
+    if (added.isEmpty() && moved.isEmpty() && removed.isEmpty() && !textChanged) {
+      delta.put("unchanged", true);
+      return delta;
+    }
+
+    delta.put("added", added);
+    delta.put("moved", moved);
+    delta.put("removed", removed);
+    if ("TextRecognizer".equals(type)) {
+      delta.put("text", text);
+    }
+    return delta;
+  }
+
+  /**
+   * Returns a copy of {@code item} carrying {@code id}. The result's own maps are left untouched,
+   * as they may be shared, e.g. with the motion gate's cache.
+   */
+  private static Map<String, Object> withDeltaId(Map<String, Object> item, int id) {
+    final Map<String, Object> copy = new HashMap<>(item);
+    copy.put("deltaId", id);
+    return copy;
+  }
+
+  @Nullable
+  private Entry removeMatch(List<Entry> candidates, Map<String, Object> item) {
+    final Iterator<Entry> iterator = candidates.iterator();
+    while (iterator.hasNext()) {
+      final Entry candidate = iterator.next();
+      if (matches(candidate.data, item)) {
+        iterator.remove();
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  private boolean matches(Map<String, Object> a, Map<String, Object> b) {
+    switch (type) {
+      case "BarcodeDetector":
+        return equal(a.get("rawValue"), b.get("rawValue"))
+            && equal(a.get("format"), b.get("format"));
+      case "FaceDetector":
+      case "ObjectDetector":
+        if (a.get("trackingId") != null && b.get("trackingId") != null) {
+          return a.get("trackingId").equals(b.get("trackingId"));
+        }
+        return iou(a, b) >= MATCH_IOU;
+      case "ImageLabeler":
+        return equal(a.get("text"), b.get("text"));
+      default:
+        return equal(a.get("text"), b.get("text")) && iou(a, b) >= MATCH_IOU;
+    }
+  }
+
+  private boolean hasMoved(Map<String, Object> a, Map<String, Object> b) {
+    if (a.get("left") == null || b.get("left") == null) {
+      return a.get("left") != b.get("left");
+    }
+
+    return Math.abs(value(a, "left") - value(b, "left")) > moveThreshold
+        || Math.abs(value(a, "top") - value(b, "top")) > moveThreshold
+        || Math.abs(value(a, "width") - value(b, "width")) > moveThreshold
+        || Math.abs(value(a, "height") - value(b, "height")) > moveThreshold;
+  }
+
+  /** Returns the overlap of both bounding boxes; entries without one never overlap. */
+  private static double iou(Map<String, Object> a, Map<String, Object> b) {
+    if (a.get("left") == null || b.get("left") == null) {
+      return 0;
+    }
+
+    final double left = Math.max(value(a, "left"), value(b, "left"));
+    final double top = Math.max(value(a, "top"), value(b, "top"));
+    final double right =
+        Math.min(value(a, "left") + value(a, "width"), value(b, "left") + value(b, "width"));
+    final double bottom =
+        Math.min(value(a, "top") + value(a, "height"), value(b, "top") + value(b, "height"));
+    if (right <= left || bottom <= top) {
+      return 0;
+    }
+
+    final double intersection = (right - left) * (bottom - top);
+    final double union =
+        value(a, "width") * value(a, "height")
+            + value(b, "width") * value(b, "height")
+            - intersection;
+    return union <= 0 ? 0 : intersection / union;
+  }
+
+  private static double value(Map<String, Object> data, String key) {
+    return ((Number) data.get(key)).doubleValue();
+  }
+
+  private static boolean equal(@Nullable Object a, @Nullable Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}
@@ -0,0 +1,106 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * One image handed to a {@link Detector}, with the per-frame state that has to be updated when
+ * ML Kit reports back: the request the frame belongs to, the metrics timing it and the lease on
+ * the detector. Each is optional; warm-up and pipeline frames carry none of them. Results are
+ * marshalled with the frame's {@link #mapping()}.
+ *
+ * <p>Detectors call {@link #inferenceFinished()} first thing in every ML Kit callback and answer
+ * through the context, which returns the lease once answered.
+ */
+class DetectionContext implements MethodChannel.Result {
+  private final MethodChannel.Result result;
+  @Nullable private final DetectionRequest request;
+  @Nullable private final DetectorMetrics.TimedResult timer;
+  @Nullable private final LeasedDetector lease;
+  private final CoordinateMapping mapping;
+
+  DetectionContext(
+      MethodChannel.Result result,
+      @Nullable DetectionRequest request,
+      @Nullable DetectorMetrics.TimedResult timer,
+      CoordinateMapping mapping) {
+    this(result, request, timer, null, mapping);
+  }
+
+  private DetectionContext(
+      MethodChannel.Result result,
+      @Nullable DetectionRequest request,
+      @Nullable DetectorMetrics.TimedResult timer,
+      @Nullable LeasedDetector lease,
+      CoordinateMapping mapping) {
+    this.result = result;
+    this.request = request;
+    this.timer = timer;
+    this.lease = lease;
+    this.mapping = mapping;
+  }
+
+  /** A whole frame without request or metrics, e.g. a warm-up frame. */
+  static DetectionContext of(MethodChannel.Result result) {
+    return new DetectionContext(result, null, null, CoordinateMapping.IDENTITY);
+  }
+
+  /** Returns this frame holding a lease on {@code detector}, returned once it is answered. */
+  DetectionContext withLease(LeasedDetector detector) {
+    return new DetectionContext(result, request, timer, detector, mapping);
+  }
+
+  /** Maps coordinates in the image handed to the detector back to the frame. */
+  CoordinateMapping mapping() {
+    return mapping;
+  }
+
+  /**
+   * Marks the end of inference. Returns false if the frame was already answered because its
+   * request became stale, in which case the detection is discarded.
+   */
+  boolean inferenceFinished() {
+    if (timer != null) {
+      timer.inferenceFinished();
+    }
+    return request == null || !request.finishIfStale(this);
+  }
+
+  @Override
+  public void success(@Nullable Object value) {
+    try {
+      result.success(value);
+    } finally {
+      releaseLease();
+    }
+  }
+
+  @Override
+  public void error(
+      String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+    try {
+      result.error(errorCode, errorMessage, errorDetails);
+    } finally {
+      releaseLease();
+    }
+  }
+
+  @Override
+  public void notImplemented() {
+    try {
+      result.notImplemented();
+    } finally {
+      releaseLease();
+    }
+  }
+
+  private void releaseLease() {
+    if (lease != null) {
+      lease.release();
+    }
+  }
+}
@@ -0,0 +1,65 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.MethodChannel;
+import java.util.Map;
+
+/**
+ * One frame sent to a detector, identified by the {@code requestId} Dart sent with it.
+ *
+ * <p>A request becomes stale once it is cancelled or its optional deadline, {@code timeoutMs} after
+ * it arrived, passed. Stale requests are answered with an error instead of being decoded, and
+ * detectors check again when ML Kit reports back so that results nobody waits for are never
+ * converted to channel messages.
+ */
+class DetectionRequest {
+  static final String CANCELLED_ERROR_CODE = "requestCancelled";
+  static final String DEADLINE_ERROR_CODE = "deadlineExceeded";
+
+  @Nullable final Integer requestId;
+  private final long deadline;
+  private volatile boolean cancelled = false;
+  private volatile boolean answeredFromCache = false;
+
+  DetectionRequest(@Nullable Integer requestId, @Nullable Integer timeoutMs) {
+    this.requestId = requestId;
+    this.deadline =
+        timeoutMs != null ? SystemClock.elapsedRealtimeNanos() + timeoutMs * 1000000L : 0;
+  }
+
+  static DetectionRequest fromImageData(Map<String, Object> imageData) {
+    return new DetectionRequest(
+        (Integer) imageData.get("requestId"), (Integer) imageData.get("timeoutMs"));
+  }
+
+  void cancel() {
+    cancelled = true;
+  }
+
+  /** Marks the request as answered with the cached result of an earlier frame. */
+  void answerFromCache() {
+    answeredFromCache = true;
+  }
+
+  boolean isAnsweredFromCache() {
+    return answeredFromCache;
+  }
+
+  /** Answers {@code result} with an error and returns true if the request is stale. */
+  boolean finishIfStale(MethodChannel.Result result) {
+    if (cancelled) {
+      result.error(CANCELLED_ERROR_CODE, "Request was cancelled.", null);
+      return true;
+    }
+    if (deadline != 0 && SystemClock.elapsedRealtimeNanos() > deadline) {
+      result.error(DEADLINE_ERROR_CODE, "Request missed its deadline.", null);
+      return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,208 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.util.SparseArray;
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodChannel;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming detection sessions: frames arrive as binary messages and results leave as events.
+ *
+ * <p>A session belongs to a detector handle and feeds the handle's {@link FrameScheduler}, so the
+ * handle's drop policy still applies. Frames are not answered individually; every result event
+ * carries the session's handle with the sequence number and timestamp of its frame.
+ *
+ * <p>Frames are encoded little endian as:
+ *
+ * <pre>
+ * i32 handle, i64 sequence, i64 timestamp,
+ * f64 width, f64 height, i32 rotation, i32 rawFormat (-1 for none),
+ * f64 scale, u8 hasRegion, [f64 left, f64 top, f64 width, f64 height],
+ * i32 planeCount, planeCount * (i32 bytesPerRow, i32 bytesPerPixel (-1 for none), i32 length,
+ * length bytes)
+ * </pre>
+ *
+ * <p>A single plane is treated like {@code GoogleVisionImage.fromBytes}, several planes like
+ * {@code GoogleVisionImage.fromPlanes}. Planes are copied into buffers leased from the {@link
+ * FrameBufferPool} until their frame was answered. Only used from the main thread.
+ */
+class DetectionSessions
+    implements EventChannel.StreamHandler, BasicMessageChannel.MessageHandler<ByteBuffer> {
+  private final SparseArray<FrameScheduler> sessions = new SparseArray<>();
+  @Nullable private EventChannel.EventSink events;
+
+  @Override
+  public void onListen(Object arguments, EventChannel.EventSink events) {
+    this.events = events;
+  }
+
+  @Override
+  public void onCancel(Object arguments) {
+    events = null;
+  }
+
+  void open(int handle, FrameScheduler scheduler) {
+    sessions.put(handle, scheduler);
+  }
+
+  void close(int handle) {
+    sessions.remove(handle);
+  }
+
+  @Override
+  public void onMessage(@Nullable ByteBuffer message, BasicMessageChannel.Reply<ByteBuffer> reply) {
+    // Frames are fire and forget; results are sent as events.
+    reply.reply(null);
+    if (message == null) {
+      return;
+    }
+
+    message.order(ByteOrder.LITTLE_ENDIAN);
+    final int handle = message.getInt();
+    final long sequence = message.getLong();
+    final long timestamp = message.getLong();
+
+    final FrameScheduler scheduler = sessions.get(handle);
+    if (scheduler == null) {
+      sendError(
+          handle,
+          sequence,
+          timestamp,
+          "MLVisionSessionError",
+          String.format("No session for handle: %s", handle));
+      return;
+    }
+
+    final MethodChannel.Result result =
+        new MainThreadResult(frameResult(handle, sequence, timestamp));
+    final List<ByteBuffer> buffers = new ArrayList<>(3);
+    final Map<String, Object> imageData;
+    try {
+      imageData = decodeFrame(message, buffers);
+    } catch (RuntimeException exception) {
+      FrameBufferPool.getInstance().releaseAll(buffers);
+      result.error("MLVisionDetectorIOError", exception.getLocalizedMessage(), null);
+      return;
+    }
+    scheduler.submit(imageData, FrameBufferPool.getInstance().releaseOnFinish(result, buffers));
+  }
+
+  /**
+   * Rebuilds the image data map sent by {@code GoogleVisionImage} from a binary frame, adding the
+   * buffers its planes were copied into to {@code buffers}.
+   */
+  private static Map<String, Object> decodeFrame(ByteBuffer message, List<ByteBuffer> buffers) {
+    final Map<String, Object> metadata = new HashMap<>();
+    metadata.put("width", message.getDouble());
+    metadata.put("height", message.getDouble());
+    metadata.put("rotation", message.getInt());
+    final int rawFormat = message.getInt();
+    metadata.put("rawFormat", rawFormat < 0 ? null : rawFormat);
+
+    final double scale = message.getDouble();
+    if (scale < 1) {
+      metadata.put("scale", scale);
+    }
+    if (message.get() != 0) {
+      final Map<String, Object> region = new HashMap<>();
+      region.put("left", message.getDouble());
+      region.put("top", message.getDouble());
+      region.put("width", message.getDouble());
+      region.put("height", message.getDouble());
+      metadata.put("regionOfInterest", region);
+    }
+
+    final int planeCount = message.getInt();
+    final List<ByteBuffer> planes = new ArrayList<>(planeCount);
+    final List<Map<String, Object>> planeData = new ArrayList<>(planeCount);
+    for (int i = 0; i < planeCount; i++) {
+      final Map<String, Object> plane = new HashMap<>();
+      plane.put("bytesPerRow", message.getInt());
+      final int bytesPerPixel = message.getInt();
+      plane.put("bytesPerPixel", bytesPerPixel < 0 ? null : bytesPerPixel);
+      planeData.add(plane);
+
+      // The message buffer is only valid during the callback, so the planes are copied out.
+      final int length = message.getInt();
+      final ByteBuffer copy = FrameBufferPool.getInstance().acquire(length);
+      buffers.add(copy);
+      final ByteBuffer bytes = message.duplicate();
+      bytes.limit(bytes.position() + length);
+      copy.put(bytes);
+      copy.flip();
+      message.position(message.position() + length);
+      planes.add(copy);
+    }
+    metadata.put("planeData", planeData);
+
+    final Map<String, Object> imageData = new HashMap<>();
+    imageData.put("type", "bytes");
+    imageData.put("metadata", metadata);
+    if (planeCount == 1) {
+      imageData.put("bytes", planes.get(0));
+    } else {
+      imageData.put("planes", planes);
+    }
+    return imageData;
+  }
+
+  private MethodChannel.Result frameResult(
+      final int handle, final long sequence, final long timestamp) {
+    return new MethodChannel.Result() {
+      @Override
+      public void success(@Nullable Object value) {
+        final Map<String, Object> event = newEvent(handle, sequence, timestamp);
+        event.put("result", value);
+        send(event);
+      }
+
+      @Override
+      public void error(
+          String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+        sendError(handle, sequence, timestamp, errorCode, errorMessage);
+      }
+
+      @Override
+      public void notImplemented() {
+        error("MLVisionSessionError", "Detector not implemented.", null);
+      }
+    };
+  }
+
+  private void sendError(
+      int handle,
+      long sequence,
+      long timestamp,
+      String errorCode,
+      @Nullable String errorMessage) {
+    final Map<String, Object> event = newEvent(handle, sequence, timestamp);
+    event.put("errorCode", errorCode);
+    event.put("errorMessage", errorMessage);
+    send(event);
+  }
+
+  private static Map<String, Object> newEvent(int handle, long sequence, long timestamp) {
+    final Map<String, Object> event = new HashMap<>();
+    event.put("handle", handle);
+    event.put("sequence", sequence);
+    event.put("timestamp", timestamp);
+    return event;
+  }
+
+  private void send(Map<String, Object> event) {
+    if (events != null) {
+      events.success(event);
+    }
+  }
+}
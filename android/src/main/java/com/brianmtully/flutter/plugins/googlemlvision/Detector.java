@@ -5,11 +5,10 @@
 package com.brianmtully.flutter.plugins.googlemlvision;
 
 import 	com.google.mlkit.vision.common.InputImage;
-import io.flutter.plugin.common.MethodChannel;
 import java.io.IOException;
 
 public interface Detector {
-  void handleDetection(final InputImage image, final MethodChannel.Result result);
+  void handleDetection(final InputImage image, final DetectionContext context);
 
   void close() throws IOException;
 }
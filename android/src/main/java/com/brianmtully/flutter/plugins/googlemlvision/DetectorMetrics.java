@@ -0,0 +1,247 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.MethodChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latency and throughput metrics of one detector handle, enabled with {@code
+ * options["processing"]["collectMetrics"]}.
+ *
+ * <p>A frame is timed in four phases: decode (building the {@code InputImage}), inference (until
+ * ML Kit reports back), marshal (converting the ML Kit result) and total (from arrival until the
+ * reply is handed back on the main thread, including time spent waiting in the scheduler).
+ * Detectors mark the end of inference through {@link DetectionContext#inferenceFinished}.
+ *
+ * <p>When tracing is enabled, decode and marshal show up as {@link Trace} sections and inference
+ * as an async section on API 29 and above.
+ */
+class DetectorMetrics {
+  private static final double[] LATENCY_BOUNDS_MS = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024};
+  private static final double[] OBJECT_BOUNDS = {1, 4, 16, 64, 256, 1024, 4096};
+
+  private static final AtomicInteger NEXT_TRACE_COOKIE = new AtomicInteger();
+
+  /** A fixed bucket histogram; each bucket counts values up to its bound, the last one the rest. */
+  private static final class Histogram {
+    private final double[] bounds;
+    private final long[] buckets;
+    private long count = 0;
+    private double sum = 0;
+    private double max = 0;
+
+    Histogram(double[] bounds) {
+      this.bounds = bounds;
+      this.buckets = new long[bounds.length + 1];
+    }
+
+    synchronized void record(double value) {
+      int bucket = 0;
+      while (bucket < bounds.length && value > bounds[bucket]) {
+        bucket++;
+      }
+      buckets[bucket]++;
+      count++;
+      sum += value;
+      max = Math.max(max, value);
+    }
+
+    synchronized Map<String, Object> toMap() {
+      final List<Double> boundList = new ArrayList<>(bounds.length);
+      for (double bound : bounds) {
+        boundList.add(bound);
+      }
+      final List<Long> bucketList = new ArrayList<>(buckets.length);
+      for (long bucket : buckets) {
+        bucketList.add(bucket);
+      }
+
+      final Map<String, Object> data = new HashMap<>();
+      data.put("count", count);
+      data.put("sum", sum);
+      data.put("max", max);
+      data.put("bounds", boundList);
+      data.put("buckets", bucketList);
+      return data;
+    }
+  }
+
+  private final String type;
+  private final boolean trace;
+  private final Histogram decode = new Histogram(LATENCY_BOUNDS_MS);
+  private final Histogram inference = new Histogram(LATENCY_BOUNDS_MS);
+  private final Histogram marshal = new Histogram(LATENCY_BOUNDS_MS);
+  private final Histogram total = new Histogram(LATENCY_BOUNDS_MS);
+  private final Histogram objects = new Histogram(OBJECT_BOUNDS);
+  private long received = 0;
+  private long dropped = 0;
+  private long failed = 0;
+
+  DetectorMetrics(String type, boolean trace) {
+    this.type = type;
+    this.trace = trace;
+  }
+
+  /** Counts a frame arriving at the handle and wraps its result to record the outcome. */
+  MethodChannel.Result track(final MethodChannel.Result result) {
+    synchronized (this) {
+      received++;
+    }
+    final long receivedAt = SystemClock.elapsedRealtimeNanos();
+
+    return new MethodChannel.Result() {
+      @Override
+      public void success(@Nullable Object value) {
+        total.record(millisSince(receivedAt));
+        result.success(value);
+      }
+
+      @Override
+      public void error(
+          String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+        synchronized (DetectorMetrics.this) {
+          if (FrameScheduler.DROPPED_ERROR_CODE.equals(errorCode)) {
+            dropped++;
+          } else {
+            failed++;
+          }
+        }
+        result.error(errorCode, errorMessage, errorDetails);
+      }
+
+      @Override
+      public void notImplemented() {
+        synchronized (DetectorMetrics.this) {
+          failed++;
+        }
+        result.notImplemented();
+      }
+    };
+  }
+
+  /** Returns the start time to pass to {@link #decodeFinished(long)}. */
+  long decodeStarted() {
+    if (trace) {
+      Trace.beginSection(type + "#decode");
+    }
+    return SystemClock.elapsedRealtimeNanos();
+  }
+
+  void decodeFinished(long startedAt) {
+    decode.record(millisSince(startedAt));
+    if (trace) {
+      Trace.endSection();
+    }
+  }
+
+  /**
+   * Wraps the result handed to the detector to time inference and marshalling; the returned result
+   * is passed to the frame's {@link DetectionContext}.
+   */
+  TimedResult timeDetection(MethodChannel.Result result) {
+    return new TimedResult(result);
+  }
+
+  synchronized Map<String, Object> snapshot() {
+    final Map<String, Object> data = new HashMap<>();
+    data.put("framesReceived", received);
+    data.put("framesDropped", dropped);
+    data.put("framesFailed", failed);
+    data.put("decode", decode.toMap());
+    data.put("inference", inference.toMap());
+    data.put("marshal", marshal.toMap());
+    data.put("total", total.toMap());
+    data.put("objectsPerResult", objects.toMap());
+    return data;
+  }
+
+  private static double millisSince(long startedAt) {
+    return (SystemClock.elapsedRealtimeNanos() - startedAt) / 1e6;
+  }
+
+  /** Counts the objects making up a standard result; a compact result is a single array. */
+  private static int countObjects(@Nullable Object value) {
+    if (value instanceof Map) {
+      int count = 1;
+      for (Object item : ((Map<?, ?>) value).values()) {
+        count += countObjects(item);
+      }
+      return count;
+    } else if (value instanceof List) {
+      int count = 1;
+      for (Object item : (List<?>) value) {
+        count += countObjects(item);
+      }
+      return count;
+    }
+    return value == null ? 0 : 1;
+  }
+
+  final class TimedResult implements MethodChannel.Result {
+    private final MethodChannel.Result result;
+    private final long startedAt = SystemClock.elapsedRealtimeNanos();
+    private final int cookie = NEXT_TRACE_COOKIE.incrementAndGet();
+    private long inferenceFinishedAt;
+
+    TimedResult(MethodChannel.Result result) {
+      this.result = result;
+      if (trace && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+        Trace.beginAsyncSection(type + "#inference", cookie);
+      }
+    }
+
+    void inferenceFinished() {
+      inferenceFinishedAt = SystemClock.elapsedRealtimeNanos();
+      inference.record((inferenceFinishedAt - startedAt) / 1e6);
+      if (trace) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+          Trace.endAsyncSection(type + "#inference", cookie);
+        }
+        Trace.beginSection(type + "#marshal");
+      }
+    }
+
+    @Override
+    public void success(@Nullable Object value) {
+      finishMarshal(true);
+      objects.record(countObjects(value));
+      result.success(value);
+    }
+
+    @Override
+    public void error(
+        String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+      finishMarshal(false);
+      result.error(errorCode, errorMessage, errorDetails);
+    }
+
+    @Override
+    public void notImplemented() {
+      finishMarshal(false);
+      result.notImplemented();
+    }
+
+    private void finishMarshal(boolean succeeded) {
+      if (inferenceFinishedAt == 0) {
+        return;
+      }
+      if (succeeded) {
+        marshal.record(millisSince(inferenceFinishedAt));
+      }
+      if (trace) {
+        Trace.endSection();
+      }
+    }
+  }
+}
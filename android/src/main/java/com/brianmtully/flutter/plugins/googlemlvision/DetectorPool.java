@@ -0,0 +1,148 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Shares ML Kit clients between detector handles opened with identical options.
+ *
+ * <p>Clients are reference counted and only closed once the last handle using them is closed, so a
+ * screen reopening a detector reuses the already loaded model. Clients acquired with {@link
+ * #acquireCached} are expensive to load and stay open after their last handle closed, up to
+ * {@link #MAX_IDLE_CLIENTS} of them, closing the least recently used first, until {@link
+ * #closeIdle} is called when the engine detaches.
+ */
+class DetectorPool {
+  interface Factory<T extends Closeable> {
+    T create();
+  }
+
+  private static final class Entry {
+    final Closeable client;
+    final boolean cached;
+    int references = 0;
+
+    Entry(Closeable client, boolean cached) {
+      this.client = client;
+      this.cached = cached;
+    }
+  }
+
+  private static final DetectorPool INSTANCE = new DetectorPool();
+
+  static final int MAX_IDLE_CLIENTS = 3;
+
+  // Options applied to the results of a handle rather than to the ML Kit client.
+  private static final List<String> HANDLE_OPTIONS =
+      Arrays.asList(
+          "processing",
+          "fields",
+          "granularity",
+          "minTextHeight",
+          "region",
+          "maxResults",
+          "allowedLabels",
+          "adaptiveFormats",
+          "hybrid");
+
+  private final Map<String, Entry> entries = new HashMap<>();
+  // Cached clients without handles, least recently used first.
+  private final LinkedHashMap<String, Entry> idle = new LinkedHashMap<>();
+
+  static DetectorPool getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns a key identifying the ML Kit client for {@code options}.
+   *
+   * <p>Per-handle processing options and result filters don't affect the client and are left out.
+   */
+  static String key(String type, Map<String, Object> options) {
+    final Map<String, Object> sorted = new TreeMap<>(options);
+    sorted.keySet().removeAll(HANDLE_OPTIONS);
+    return type + sorted;
+  }
+
+  <T extends Closeable> T acquire(String key, Factory<T> factory) {
+    return acquire(key, factory, false);
+  }
+
+  /** Like {@link #acquire}, but keeps the client open for a while once it is released. */
+  <T extends Closeable> T acquireCached(String key, Factory<T> factory) {
+    return acquire(key, factory, true);
+  }
+
+  @SuppressWarnings("unchecked")
+  private synchronized <T extends Closeable> T acquire(
+      String key, Factory<T> factory, boolean cached) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = idle.remove(key);
+      if (entry == null) {
+        entry = new Entry(factory.create(), cached);
+      }
+      entries.put(key, entry);
+    }
+    entry.references++;
+    return (T) entry.client;
+  }
+
+  void release(String key) throws IOException {
+    final List<Closeable> closed = new ArrayList<>();
+    synchronized (this) {
+      final Entry entry = entries.get(key);
+      if (entry == null) {
+        return;
+      }
+      if (--entry.references > 0) {
+        return;
+      }
+      entries.remove(key);
+      if (!entry.cached) {
+        closed.add(entry.client);
+      } else {
+        idle.put(key, entry);
+        final Iterator<Entry> eldest = idle.values().iterator();
+        while (idle.size() > MAX_IDLE_CLIENTS) {
+          closed.add(eldest.next().client);
+          eldest.remove();
+        }
+      }
+    }
+
+    for (Closeable client : closed) {
+      client.close();
+    }
+  }
+
+  /**
+   * Closes the cached clients without handles, e.g. when the engine detaches. Clients still used
+   * by a handle are closed once it releases them.
+   */
+  void closeIdle() throws IOException {
+    final List<Closeable> closed = new ArrayList<>();
+    synchronized (this) {
+      for (Entry entry : idle.values()) {
+        closed.add(entry.client);
+      }
+      idle.clear();
+    }
+
+    for (Closeable client : closed) {
+      client.close();
+    }
+  }
+}
@@ -0,0 +1,63 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The detectors of every open handle, with the per-handle state processing their frames.
+ *
+ * <p>Safe to use from any thread; lookups on the frame path don't take a lock. Removing a handle
+ * doesn't close its detector, see {@link LeasedDetector}.
+ */
+class DetectorRegistry {
+  static final class Entry {
+    final LeasedDetector detector;
+    final FrameScheduler scheduler;
+    @Nullable final DetectorMetrics metrics;
+
+    Entry(LeasedDetector detector, FrameScheduler scheduler, @Nullable DetectorMetrics metrics) {
+      this.detector = detector;
+      this.scheduler = scheduler;
+      this.metrics = metrics;
+    }
+  }
+
+  private final ConcurrentHashMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+  @Nullable
+  Entry get(int handle) {
+    return entries.get(handle);
+  }
+
+  /**
+   * Registers {@code entry} unless {@code handle} already has one, and returns the entry that is
+   * registered afterwards.
+   */
+  Entry putIfAbsent(int handle, Entry entry) {
+    final Entry existing = entries.putIfAbsent(handle, entry);
+    return existing != null ? existing : entry;
+  }
+
+  @Nullable
+  Entry remove(int handle) {
+    return entries.remove(handle);
+  }
+
+  /** Removes and returns every entry. */
+  List<Entry> removeAll() {
+    final List<Entry> removed = new ArrayList<>();
+    for (Integer handle : entries.keySet()) {
+      final Entry entry = entries.remove(handle);
+      if (entry != null) {
+        removed.add(entry);
+      }
+    }
+    return removed;
+  }
+}
@@ -0,0 +1,254 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.graphics.PointF;
+import android.graphics.Rect;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts detected faces to channel messages, sending only the fields of its {@link FieldMask}.
+ *
+ * <p>Faces are read through a {@link Reader}, so the conversion doesn't depend on ML Kit types and
+ * also runs on plain JVM fixtures, see the benchmark module.
+ *
+ * @param <F> a detected face
+ */
+class FaceMarshaller<F> {
+  // Same order as FaceLandmarkType in Dart.
+  static final String[] LANDMARK_NAMES = {
+    "bottomMouth",
+    "leftCheek",
+    "leftEar",
+    "leftEye",
+    "leftMouth",
+    "noseBase",
+    "rightCheek",
+    "rightEar",
+    "rightEye",
+    "rightMouth",
+  };
+
+  // Same order as FaceContourType in Dart, without allPoints.
+  static final String[] CONTOUR_NAMES = {
+    "face",
+    "leftEye",
+    "leftEyebrowBottom",
+    "leftEyebrowTop",
+    "lowerLipBottom",
+    "lowerLipTop",
+    "noseBottom",
+    "noseBridge",
+    "rightEye",
+    "rightEyebrowBottom",
+    "rightEyebrowTop",
+    "upperLipBottom",
+    "upperLipTop",
+  };
+
+  /**
+   * Reads a face. Landmarks and contours are addressed by their index in {@link #LANDMARK_NAMES}
+   * and {@link #CONTOUR_NAMES}.
+   */
+  interface Reader<F> {
+    Rect boundingBox(F face);
+
+    float headEulerAngleY(F face);
+
+    float headEulerAngleZ(F face);
+
+    @Nullable
+    Float smilingProbability(F face);
+
+    @Nullable
+    Float leftEyeOpenProbability(F face);
+
+    @Nullable
+    Float rightEyeOpenProbability(F face);
+
+    @Nullable
+    Integer trackingId(F face);
+
+    @Nullable
+    PointF landmark(F face, int index);
+
+    @Nullable
+    List<PointF> contour(F face, int index);
+
+    /** The points of every detected contour, in the detector's own contour order. */
+    List<List<PointF>> allContours(F face);
+  }
+
+  /**
+   * The face fields sent to Dart, from {@code options["fields"]}; everything when not set.
+   *
+   * <p>Fields left out are never read from the face nor converted.
+   */
+  static final class FieldMask {
+    final boolean[] landmarks = new boolean[LANDMARK_NAMES.length];
+    final boolean[] contours = new boolean[CONTOUR_NAMES.length];
+    final boolean allPoints;
+    final boolean classification;
+    final boolean headAngles;
+    final boolean anyLandmark;
+    final boolean anyContour;
+
+    @SuppressWarnings("unchecked")
+    FieldMask(@Nullable Map<String, Object> fields) {
+      final List<String> landmarkNames =
+          fields != null ? (List<String>) fields.get("landmarks") : null;
+      final List<String> contourNames =
+          fields != null ? (List<String>) fields.get("contours") : null;
+
+      boolean anyLandmark = false;
+      for (int i = 0; i < LANDMARK_NAMES.length; i++) {
+        landmarks[i] = landmarkNames == null || landmarkNames.contains(LANDMARK_NAMES[i]);
+        anyLandmark |= landmarks[i];
+      }
+      boolean anyContour = false;
+      for (int i = 0; i < CONTOUR_NAMES.length; i++) {
+        contours[i] = contourNames == null || contourNames.contains(CONTOUR_NAMES[i]);
+        anyContour |= contours[i];
+      }
+      allPoints = contourNames == null || contourNames.contains("allPoints");
+
+      this.anyLandmark = anyLandmark;
+      this.anyContour = anyContour || allPoints;
+      classification = fields == null || !Boolean.FALSE.equals(fields.get("classification"));
+      headAngles = fields == null || !Boolean.FALSE.equals(fields.get("headAngles"));
+    }
+  }
+
+  private final Reader<F> reader;
+  private final FieldMask fieldMask;
+
+  FaceMarshaller(Reader<F> reader, FieldMask fieldMask) {
+    this.reader = reader;
+    this.fieldMask = fieldMask;
+  }
+
+  /** Converts {@code foundFaces}, mapping their coordinates with {@code mapping}. */
+  List<Map<String, Object>> toMaps(List<F> foundFaces, CoordinateMapping mapping) {
+    List<Map<String, Object>> faces = new ArrayList<>(foundFaces.size());
+    for (F face : foundFaces) {
+      Map<String, Object> faceData = new HashMap<>();
+
+      mapping.putRect(reader.boundingBox(face), faceData);
+
+      if (fieldMask.headAngles) {
+        faceData.put("headEulerAngleY", reader.headEulerAngleY(face));
+        faceData.put("headEulerAngleZ", reader.headEulerAngleZ(face));
+      }
+
+      if (fieldMask.classification) {
+        Float smilingProbability = reader.smilingProbability(face);
+        if (smilingProbability != null) {
+          faceData.put("smilingProbability", smilingProbability);
+        }
+
+        Float leftEyeOpenProbability = reader.leftEyeOpenProbability(face);
+        if (leftEyeOpenProbability != null) {
+          faceData.put("leftEyeOpenProbability", leftEyeOpenProbability);
+        }
+
+        Float rightEyeOpenProbability = reader.rightEyeOpenProbability(face);
+        if (rightEyeOpenProbability != null) {
+          faceData.put("rightEyeOpenProbability", rightEyeOpenProbability);
+        }
+      }
+
+      Integer trackingId = reader.trackingId(face);
+      if (trackingId != null) {
+        faceData.put("trackingId", trackingId);
+      }
+
+      if (fieldMask.anyLandmark) {
+        faceData.put("landmarks", getLandmarkData(face, mapping));
+      }
+
+      if (fieldMask.anyContour) {
+        faceData.put("contours", getContourData(face, mapping));
+      }
+
+      faces.add(faceData);
+    }
+    return faces;
+  }
+
+  byte[] encodeCompact(List<F> foundFaces, CoordinateMapping mapping) {
+    CompactResultWriter writer = new CompactResultWriter(CompactResultWriter.KIND_FACES, mapping);
+    writer.putInt(foundFaces.size());
+    for (F face : foundFaces) {
+      writer.putRect(reader.boundingBox(face));
+      writer.putFloat(fieldMask.headAngles ? reader.headEulerAngleY(face) : 0);
+      writer.putFloat(fieldMask.headAngles ? reader.headEulerAngleZ(face) : 0);
+      writer.putFloat(fieldMask.classification ? reader.smilingProbability(face) : null);
+      writer.putFloat(fieldMask.classification ? reader.leftEyeOpenProbability(face) : null);
+      writer.putFloat(fieldMask.classification ? reader.rightEyeOpenProbability(face) : null);
+
+      Integer trackingId = reader.trackingId(face);
+      writer.putBoolean(trackingId != null);
+      writer.putInt(trackingId != null ? trackingId : 0);
+
+      for (int i = 0; i < LANDMARK_NAMES.length; i++) {
+        writer.putPoint(fieldMask.landmarks[i] ? reader.landmark(face, i) : null);
+      }
+
+      // allPoints is not sent; it is rebuilt in Dart from the individual contours.
+      for (int i = 0; i < CONTOUR_NAMES.length; i++) {
+        writer.putPoints(fieldMask.contours[i] ? reader.contour(face, i) : null);
+      }
+    }
+    return writer.toByteArray();
+  }
+
+  private Map<String, double[]> getLandmarkData(F face, CoordinateMapping mapping) {
+    Map<String, double[]> landmarks = new HashMap<>();
+
+    for (int i = 0; i < LANDMARK_NAMES.length; i++) {
+      if (fieldMask.landmarks[i]) {
+        PointF position = reader.landmark(face, i);
+        landmarks.put(
+            LANDMARK_NAMES[i], position != null ? mapping.point(position.x, position.y) : null);
+      }
+    }
+
+    return landmarks;
+  }
+
+  private Map<String, List<double[]>> getContourData(F face, CoordinateMapping mapping) {
+    Map<String, List<double[]>> contours = new HashMap<>();
+
+    if (fieldMask.allPoints) {
+      List<double[]> allPoints = new ArrayList<>();
+      for (List<PointF> contour : reader.allContours(face)) {
+        addPoints(contour, mapping, allPoints);
+      }
+      contours.put("allPoints", allPoints);
+    }
+    for (int i = 0; i < CONTOUR_NAMES.length; i++) {
+      if (fieldMask.contours[i]) {
+        List<PointF> contour = reader.contour(face, i);
+        contours.put(
+            CONTOUR_NAMES[i],
+            contour != null ? addPoints(contour, mapping, new ArrayList<double[]>()) : null);
+      }
+    }
+
+    return contours;
+  }
+
+  private static List<double[]> addPoints(
+      List<PointF> points, CoordinateMapping mapping, List<double[]> addTo) {
+    for (int i = 0; i < points.size(); i++) {
+      addTo.add(mapping.point(points.get(i).x, points.get(i).y));
+    }
+    return addTo;
+  }
+}
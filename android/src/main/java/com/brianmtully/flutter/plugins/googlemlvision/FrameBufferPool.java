@@ -0,0 +1,131 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.MethodChannel;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reuses the direct buffers frames are copied into, so streaming frames of the same size doesn't
+ * allocate a new buffer for every frame.
+ *
+ * <p>Buffers are bucketed by capacity, rounded up to {@link #BUCKET_SIZE}, and at most {@link
+ * #MAX_IDLE_PER_BUCKET} idle buffers are kept per bucket. A frame releases its buffers once its
+ * result was answered, which is only after ML Kit finished reading the image, see {@link
+ * #releaseOnFinish}. Safe to use from any thread.
+ */
+class FrameBufferPool {
+  private static final int BUCKET_SIZE = 64 * 1024;
+  private static final int MAX_IDLE_PER_BUCKET = 4;
+
+  private static final FrameBufferPool INSTANCE = new FrameBufferPool();
+
+  private final Map<Integer, ArrayDeque<ByteBuffer>> idle = new HashMap<>();
+
+  static FrameBufferPool getInstance() {
+    return INSTANCE;
+  }
+
+  /** Returns a direct buffer with {@code size} bytes remaining, positioned at zero. */
+  ByteBuffer acquire(int size) {
+    final int capacity = (size + BUCKET_SIZE - 1) / BUCKET_SIZE * BUCKET_SIZE;
+    ByteBuffer buffer = null;
+    synchronized (this) {
+      final ArrayDeque<ByteBuffer> buffers = idle.get(capacity);
+      if (buffers != null) {
+        buffer = buffers.pollFirst();
+      }
+    }
+
+    if (buffer == null) {
+      buffer = ByteBuffer.allocateDirect(capacity);
+    }
+    buffer.clear();
+    buffer.limit(size);
+    return buffer;
+  }
+
+  /** Returns {@code buffer} to the pool; it must not be used afterwards. */
+  synchronized void release(ByteBuffer buffer) {
+    ArrayDeque<ByteBuffer> buffers = idle.get(buffer.capacity());
+    if (buffers == null) {
+      buffers = new ArrayDeque<>(MAX_IDLE_PER_BUCKET);
+      idle.put(buffer.capacity(), buffers);
+    }
+    if (buffers.size() < MAX_IDLE_PER_BUCKET) {
+      buffers.addLast(buffer);
+    }
+  }
+
+  void releaseAll(List<ByteBuffer> buffers) {
+    for (ByteBuffer buffer : buffers) {
+      release(buffer);
+    }
+  }
+
+  /** Wraps the result of a frame to release {@code buffers} once the frame was answered. */
+  MethodChannel.Result releaseOnFinish(MethodChannel.Result result, List<ByteBuffer> buffers) {
+    return releaseOnFinish(result, new AtomicInteger(1), buffers);
+  }
+
+  /**
+   * Wraps the results of several detectors reading the same frame, releasing {@code buffers} once
+   * every one of them was answered. Unlike wrapping their combined reply, this also waits for the
+   * detectors still running after another one failed.
+   */
+  List<MethodChannel.Result> releaseOnFinish(
+      List<MethodChannel.Result> results, List<ByteBuffer> buffers) {
+    if (results.isEmpty()) {
+      releaseAll(buffers);
+      return results;
+    }
+
+    final AtomicInteger remaining = new AtomicInteger(results.size());
+    final List<MethodChannel.Result> wrapped = new ArrayList<>(results.size());
+    for (MethodChannel.Result result : results) {
+      wrapped.add(releaseOnFinish(result, remaining, buffers));
+    }
+    return wrapped;
+  }
+
+  private MethodChannel.Result releaseOnFinish(
+      final MethodChannel.Result result,
+      final AtomicInteger remaining,
+      final List<ByteBuffer> buffers) {
+    return new MethodChannel.Result() {
+      @Override
+      public void success(@Nullable Object value) {
+        finished();
+        result.success(value);
+      }
+
+      @Override
+      public void error(
+          String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+        finished();
+        result.error(errorCode, errorMessage, errorDetails);
+      }
+
+      @Override
+      public void notImplemented() {
+        finished();
+        result.notImplemented();
+      }
+
+      private void finished() {
+        if (remaining.decrementAndGet() == 0) {
+          releaseAll(buffers);
+        }
+      }
+    };
+  }
+}
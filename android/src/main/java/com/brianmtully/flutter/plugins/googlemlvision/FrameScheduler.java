@@ -0,0 +1,218 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.MethodChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounds the number of frames a single detector handle has in flight.
+ *
+ * <p>Frames that cannot be processed under the configured {@link Policy} complete their result
+ * with the {@link #DROPPED_ERROR_CODE} error instead of being queued indefinitely. Every frame is
+ * tracked as a {@link DetectionRequest} until it completes, so it can be cancelled while it waits
+ * or while it is being processed.
+ */
+class FrameScheduler {
+  static final String DROPPED_ERROR_CODE = "frameDropped";
+
+  enum Policy {
+    /** Every frame is processed; the legacy behavior. */
+    NONE,
+    /** At most one frame waits; a newer frame replaces it. */
+    KEEP_LATEST,
+    /** Up to {@code maxPendingFrames} frames wait; further frames are dropped. */
+    BOUNDED_QUEUE,
+    /** Frames arriving while another one is in flight are dropped. */
+    REJECT_WHEN_BUSY
+  }
+
+  interface FrameProcessor {
+    void process(
+        Map<String, Object> imageData, DetectionRequest request, MethodChannel.Result result);
+  }
+
+  private static final class Frame {
+    final Map<String, Object> imageData;
+    final DetectionRequest request;
+    final MethodChannel.Result result;
+
+    Frame(Map<String, Object> imageData, DetectionRequest request, MethodChannel.Result result) {
+      this.imageData = imageData;
+      this.request = request;
+      this.result = result;
+    }
+  }
+
+  private final Policy policy;
+  private final int maxPendingFrames;
+  private final FrameProcessor processor;
+  @Nullable private final DetectorMetrics metrics;
+  @Nullable private final AdaptiveGovernor governor;
+  private final ArrayDeque<Frame> pending = new ArrayDeque<>();
+  private final List<DetectionRequest> inFlight = new ArrayList<>();
+  private boolean busy = false;
+
+  FrameScheduler(
+      ProcessingOptions options,
+      FrameProcessor processor,
+      @Nullable DetectorMetrics metrics,
+      @Nullable AdaptiveGovernor governor) {
+    this.policy = options.dropPolicy;
+    this.maxPendingFrames = options.maxPendingFrames;
+    this.processor = processor;
+    this.metrics = metrics;
+    this.governor = governor;
+  }
+
+  void submit(Map<String, Object> imageData, MethodChannel.Result result) {
+    if (metrics != null) {
+      result = metrics.track(result);
+    }
+    final DetectionRequest request = DetectionRequest.fromImageData(imageData);
+    if (governor != null) {
+      if (governor.shouldSkip()) {
+        result.error(DROPPED_ERROR_CODE, "Frame skipped to meet the latency target.", null);
+        return;
+      }
+      governor.adjust(imageData);
+      result = governor.track(result, request);
+    }
+
+    final Frame frame = new Frame(imageData, request, result);
+    if (policy == Policy.NONE) {
+      dispatch(frame);
+      return;
+    }
+
+    Frame toDispatch = null;
+    Frame dropped = null;
+    synchronized (this) {
+      if (!busy) {
+        busy = true;
+        toDispatch = frame;
+      } else {
+        switch (policy) {
+          case KEEP_LATEST:
+            dropped = pending.pollFirst();
+            pending.addLast(frame);
+            break;
+          case BOUNDED_QUEUE:
+            if (pending.size() < maxPendingFrames) {
+              pending.addLast(frame);
+            } else {
+              dropped = frame;
+            }
+            break;
+          default:
+            dropped = frame;
+            break;
+        }
+      }
+    }
+
+    reportDropped(dropped);
+    if (toDispatch != null) {
+      dispatch(toDispatch);
+    }
+  }
+
+  /**
+   * Cancels the request with {@code requestId}, or every request if null, e.g. when the detector
+   * is closed. Waiting frames complete right away; frames being processed complete once the
+   * detector reports back, without their results being converted. Both fail with {@link
+   * DetectionRequest#CANCELLED_ERROR_CODE}.
+   */
+  void cancel(@Nullable Integer requestId) {
+    final List<Frame> cancelled = new ArrayList<>();
+    synchronized (this) {
+      final Iterator<Frame> frames = pending.iterator();
+      while (frames.hasNext()) {
+        final Frame frame = frames.next();
+        if (matches(frame.request, requestId)) {
+          frames.remove();
+          cancelled.add(frame);
+        }
+      }
+      for (DetectionRequest request : inFlight) {
+        if (matches(request, requestId)) {
+          request.cancel();
+        }
+      }
+    }
+
+    for (Frame frame : cancelled) {
+      frame.request.cancel();
+      frame.request.finishIfStale(frame.result);
+    }
+  }
+
+  private static boolean matches(DetectionRequest request, @Nullable Integer requestId) {
+    return requestId == null || requestId.equals(request.requestId);
+  }
+
+  private void dispatch(Frame frame) {
+    synchronized (this) {
+      inFlight.add(frame.request);
+    }
+    processor.process(frame.imageData, frame.request, new CompletionResult(frame));
+  }
+
+  private void onFrameComplete(Frame frame) {
+    final Frame next;
+    synchronized (this) {
+      inFlight.remove(frame.request);
+      if (policy == Policy.NONE) {
+        return;
+      }
+      next = pending.pollFirst();
+      if (next == null) {
+        busy = false;
+        return;
+      }
+    }
+    dispatch(next);
+  }
+
+  private static void reportDropped(@Nullable Frame frame) {
+    if (frame == null) {
+      return;
+    }
+    frame.result.error(DROPPED_ERROR_CODE, "Frame dropped because the detector is busy.", null);
+  }
+
+  /** Forwards to the caller's result and releases the in-flight slot. */
+  private class CompletionResult implements MethodChannel.Result {
+    private final Frame frame;
+
+    CompletionResult(Frame frame) {
+      this.frame = frame;
+    }
+
+    @Override
+    public void success(@Nullable Object result) {
+      frame.result.success(result);
+      onFrameComplete(frame);
+    }
+
+    @Override
+    public void error(
+        String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+      frame.result.error(errorCode, errorMessage, errorDetails);
+      onFrameComplete(frame);
+    }
+
+    @Override
+    public void notImplemented() {
+      frame.result.notImplemented();
+      onFrameComplete(frame);
+    }
+  }
+}
@@ -6,7 +6,9 @@ package com.brianmtully.flutter.plugins.googlemlvision;
 
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.mlkit.vision.barcode.Barcode;
@@ -14,222 +16,363 @@ import com.google.mlkit.vision.barcode.BarcodeScanning;
 import com.google.mlkit.vision.barcode.BarcodeScanner;
 import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
 import com.google.mlkit.vision.common.InputImage;
-import io.flutter.plugin.common.MethodChannel;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 class GMLKBarcodeDetector implements Detector {
-  private final BarcodeScanner detector;
+  private static final BarcodeMarshaller<Barcode> MARSHALLER =
+      new BarcodeMarshaller<>(
+          new BarcodeMarshaller.Reader<Barcode>() {
+            @Override
+            public Rect boundingBox(Barcode barcode) {
+              return barcode.getBoundingBox();
+            }
+
+            @Override
+            public Point[] cornerPoints(Barcode barcode) {
+              return barcode.getCornerPoints();
+            }
+
+            @Override
+            public String rawValue(Barcode barcode) {
+              return barcode.getRawValue();
+            }
+
+            @Override
+            public String displayValue(Barcode barcode) {
+              return barcode.getDisplayValue();
+            }
+
+            @Override
+            public int format(Barcode barcode) {
+              return barcode.getFormat();
+            }
+
+            @Override
+            public int valueType(Barcode barcode) {
+              return barcode.getValueType();
+            }
+
+            @Override
+            public void addTypeValue(Barcode barcode, Map<String, Object> addTo) {
+              GMLKBarcodeDetector.addTypeValue(barcode, addTo);
+            }
+          });
+
+  /**
+   * A client searching for narrowed formats. It holds one reference per frame dispatched to it,
+   * plus one while new frames use it, and goes back to the pool once the last one is returned.
+   */
+  private static final class NarrowedClient {
+    final String poolKey;
+    final BarcodeScanner scanner;
+    int references = 1;
+
+    NarrowedClient(String poolKey, BarcodeScanner scanner) {
+      this.poolKey = poolKey;
+      this.scanner = scanner;
+    }
+  }
 
-  GMLKBarcodeDetector(Map<String, Object> options) {
-    detector = BarcodeScanning.getClient(parseOptions(options));
+  private final Map<String, Object> options;
+  private final BarcodeScanner configuredDetector;
+  private final String poolKey;
+  private final Executor executor;
+  private final boolean compactResults;
+  @Nullable private final BarcodeFormatNarrowing narrowing;
+  // The client used for new frames when the searched formats are narrowed.
+  @Nullable private NarrowedClient narrowed;
+  // The formats searched for by new frames, if narrowing.
+  private int formats;
+
+  GMLKBarcodeDetector(final Map<String, Object> options, Executor executor) {
+    this.options = options;
+    poolKey = DetectorPool.key("BarcodeDetector", options);
+    configuredDetector = acquireClient(poolKey, options);
+    narrowing = BarcodeFormatNarrowing.parse(options);
+    formats = narrowing != null ? narrowing.formats() : 0;
+    compactResults = ProcessingOptions.parse(options).compactResults;
+    this.executor = executor;
   }
 
-  @Override
-  public void handleDetection(final InputImage image, final MethodChannel.Result result) {
-    detector
-        .process(image)
-        .addOnSuccessListener(
-            new OnSuccessListener<List<Barcode>>() {
+  private static BarcodeScanner acquireClient(String key, final Map<String, Object> options) {
+    return DetectorPool.getInstance()
+        .acquire(
+            key,
+            new DetectorPool.Factory<BarcodeScanner>() {
               @Override
-              public void onSuccess(List<Barcode> visionBarcodes) {
-                List<Map<String, Object>> barcodes = new ArrayList<>();
-
-                for (Barcode barcode : visionBarcodes) {
-                  Map<String, Object> barcodeMap = new HashMap<>();
-
-                  Rect bounds = barcode.getBoundingBox();
-                  if (bounds != null) {
-                    barcodeMap.put("left", (double) bounds.left);
-                    barcodeMap.put("top", (double) bounds.top);
-                    barcodeMap.put("width", (double) bounds.width());
-                    barcodeMap.put("height", (double) bounds.height());
-                  }
+              public BarcodeScanner create() {
+                return BarcodeScanning.getClient(parseOptions(options));
+              }
+            });
+  }
 
-                  List<double[]> points = new ArrayList<>();
-                  if (barcode.getCornerPoints() != null) {
-                    for (Point point : barcode.getCornerPoints()) {
-                      points.add(new double[] {(double) point.x, (double) point.y});
-                    }
+  /**
+   * Records the formats decoded in a frame and switches new frames to a client searching for the
+   * formats picked by {@link #narrowing}.
+   *
+   * <p>Narrowed clients are pooled like any other client, so a handle opened with the narrowed
+   * formats shares them. A narrowed client is released once new frames switched away from it and
+   * the last frame dispatched to it completed.
+   */
+  private synchronized void updateFormats(List<Barcode> barcodes) {
+    int decoded = 0;
+    for (Barcode barcode : barcodes) {
+      if (barcode.getFormat() > 0) {
+        decoded |= barcode.getFormat();
+      }
+    }
+    final int nextFormats = narrowing.onFrame(decoded);
+    if (nextFormats == formats) {
+      return;
+    }
+    formats = nextFormats;
+
+    final NarrowedClient previous = narrowed;
+    narrowed = null;
+    if (narrowing.isNarrowed(formats)) {
+      final Map<String, Object> narrowedOptions = new HashMap<>(options);
+      narrowedOptions.put("barcodeFormats", formats);
+      final String narrowedPoolKey = DetectorPool.key("BarcodeDetector", narrowedOptions);
+      narrowed =
+          new NarrowedClient(narrowedPoolKey, acquireClient(narrowedPoolKey, narrowedOptions));
+    }
+    if (previous != null) {
+      release(previous);
+    }
+  }
+
+  /** Returns the narrowed client for a new frame with a reference held, or null if not narrowed. */
+  @Nullable
+  private synchronized NarrowedClient acquireNarrowed() {
+    if (narrowed != null) {
+      narrowed.references++;
+    }
+    return narrowed;
+  }
+
+  private synchronized void release(NarrowedClient client) {
+    if (--client.references > 0) {
+      return;
+    }
+    try {
+      DetectorPool.getInstance().release(client.poolKey);
+    } catch (IOException exception) {
+      Log.w("GoogleMLVision", "Unable to close barcode scanner", exception);
+    }
+  }
+
+  @Override
+  public void handleDetection(final InputImage image, final DetectionContext context) {
+    final NarrowedClient client = acquireNarrowed();
+    final BarcodeScanner scanner = client != null ? client.scanner : configuredDetector;
+    try {
+      scanner
+          .process(image)
+          .addOnSuccessListener(
+              executor,
+              new OnSuccessListener<List<Barcode>>() {
+                @Override
+                public void onSuccess(List<Barcode> visionBarcodes) {
+                  frameFinished(client);
+                  if (!context.inferenceFinished()) {
+                    return;
                   }
-                  barcodeMap.put("points", points);
-
-                  barcodeMap.put("rawValue", barcode.getRawValue());
-                  barcodeMap.put("displayValue", barcode.getDisplayValue());
-                  barcodeMap.put("format", barcode.getFormat());
-                  barcodeMap.put("valueType", barcode.getValueType());
-
-                  Map<String, Object> typeValue = new HashMap<>();
-                  switch (barcode.getValueType()) {
-                    case Barcode.TYPE_EMAIL:
-                      Barcode.Email email = barcode.getEmail();
-
-                      typeValue.put("type", email.getType());
-                      typeValue.put("address", email.getAddress());
-                      typeValue.put("body", email.getBody());
-                      typeValue.put("subject", email.getSubject());
-
-                      barcodeMap.put("email", typeValue);
-                      break;
-                    case Barcode.TYPE_PHONE:
-                      Barcode.Phone phone = barcode.getPhone();
-
-                      typeValue.put("number", phone.getNumber());
-                      typeValue.put("type", phone.getType());
-
-                      barcodeMap.put("phone", typeValue);
-                      break;
-                    case Barcode.TYPE_SMS:
-                      Barcode.Sms sms = barcode.getSms();
-
-                      typeValue.put("message", sms.getMessage());
-                      typeValue.put("phoneNumber", sms.getPhoneNumber());
-
-                      barcodeMap.put("sms", typeValue);
-                      break;
-                    case Barcode.TYPE_URL:
-                      Barcode.UrlBookmark urlBookmark = barcode.getUrl();
-
-                      typeValue.put("title", urlBookmark.getTitle());
-                      typeValue.put("url", urlBookmark.getUrl());
-
-                      barcodeMap.put("url", typeValue);
-                      break;
-                    case Barcode.TYPE_WIFI:
-                      Barcode.WiFi wifi = barcode.getWifi();
-
-                      typeValue.put("ssid", wifi.getSsid());
-                      typeValue.put("password", wifi.getPassword());
-                      typeValue.put("encryptionType", wifi.getEncryptionType());
-
-                      barcodeMap.put("wifi", typeValue);
-                      break;
-                    case Barcode.TYPE_GEO:
-                      Barcode.GeoPoint geoPoint = barcode.getGeoPoint();
-
-                      typeValue.put("latitude", geoPoint.getLat());
-                      typeValue.put("longitude", geoPoint.getLng());
-
-                      barcodeMap.put("geoPoint", typeValue);
-                      break;
-                    case Barcode.TYPE_CONTACT_INFO:
-                      Barcode.ContactInfo contactInfo = barcode.getContactInfo();
-
-                      List<Map<String, Object>> addresses = new ArrayList<>();
-                      for (Barcode.Address address : contactInfo.getAddresses()) {
-                        Map<String, Object> addressMap = new HashMap<>();
-                        if (address.getAddressLines() != null) {
-                          addressMap.put("addressLines", Arrays.asList(address.getAddressLines()));
-                        }
-                        addressMap.put("type", address.getType());
-
-                        addresses.add(addressMap);
-                      }
-                      typeValue.put("addresses", addresses);
-
-                      List<Map<String, Object>> emails = new ArrayList<>();
-                      for (Barcode.Email contactEmail : contactInfo.getEmails()) {
-                        Map<String, Object> emailMap = new HashMap<>();
-                        emailMap.put("address", contactEmail.getAddress());
-                        emailMap.put("type", contactEmail.getType());
-                        emailMap.put("body", contactEmail.getBody());
-                        emailMap.put("subject", contactEmail.getSubject());
-
-                        emails.add(emailMap);
-                      }
-                      typeValue.put("emails", emails);
-
-                      Map<String, Object> nameMap = new HashMap<>();
-                      Barcode.PersonName name = contactInfo.getName();
-                      if (name != null) {
-                        nameMap.put("formattedName", name.getFormattedName());
-                        nameMap.put("first", name.getFirst());
-                        nameMap.put("last", name.getLast());
-                        nameMap.put("middle", name.getMiddle());
-                        nameMap.put("prefix", name.getPrefix());
-                        nameMap.put("pronunciation", name.getPronunciation());
-                        nameMap.put("suffix", name.getSuffix());
-                      }
-                      typeValue.put("name", nameMap);
-
-                      List<Map<String, Object>> phones = new ArrayList<>();
-                      for (Barcode.Phone contactPhone : contactInfo.getPhones()) {
-                        Map<String, Object> phoneMap = new HashMap<>();
-                        phoneMap.put("number", contactPhone.getNumber());
-                        phoneMap.put("type", contactPhone.getType());
-
-                        phones.add(phoneMap);
-                      }
-                      typeValue.put("phones", phones);
-
-                      if (contactInfo.getUrls() != null) {
-                        typeValue.put("urls", Arrays.asList(contactInfo.getUrls()));
-                      }
-                      typeValue.put("jobTitle", contactInfo.getTitle());
-                      typeValue.put("organization", contactInfo.getOrganization());
-
-                      barcodeMap.put("contactInfo", typeValue);
-                      break;
-                    case Barcode.TYPE_CALENDAR_EVENT:
-                      Barcode.CalendarEvent calendarEvent =
-                          barcode.getCalendarEvent();
-
-                      typeValue.put("eventDescription", calendarEvent.getDescription());
-                      typeValue.put("location", calendarEvent.getLocation());
-                      typeValue.put("organizer", calendarEvent.getOrganizer());
-                      typeValue.put("status", calendarEvent.getStatus());
-                      typeValue.put("summary", calendarEvent.getSummary());
-                      if (calendarEvent.getStart() != null) {
-                        typeValue.put("start", calendarEvent.getStart().getRawValue());
-                      }
-                      if (calendarEvent.getEnd() != null) {
-                        typeValue.put("end", calendarEvent.getEnd().getRawValue());
-                      }
-
-                      barcodeMap.put("calendarEvent", typeValue);
-                      break;
-                    case Barcode.TYPE_DRIVER_LICENSE:
-                      Barcode.DriverLicense driverLicense =
-                          barcode.getDriverLicense();
-
-                      typeValue.put("firstName", driverLicense.getFirstName());
-                      typeValue.put("middleName", driverLicense.getMiddleName());
-                      typeValue.put("lastName", driverLicense.getLastName());
-                      typeValue.put("gender", driverLicense.getGender());
-                      typeValue.put("addressCity", driverLicense.getAddressCity());
-                      typeValue.put("addressStreet", driverLicense.getAddressStreet());
-                      typeValue.put("addressState", driverLicense.getAddressState());
-                      typeValue.put("addressZip", driverLicense.getAddressZip());
-                      typeValue.put("birthDate", driverLicense.getBirthDate());
-                      typeValue.put("documentType", driverLicense.getDocumentType());
-                      typeValue.put("licenseNumber", driverLicense.getLicenseNumber());
-                      typeValue.put("expiryDate", driverLicense.getExpiryDate());
-                      typeValue.put("issuingDate", driverLicense.getIssueDate());
-                      typeValue.put("issuingCountry", driverLicense.getIssuingCountry());
-
-                      barcodeMap.put("driverLicense", typeValue);
-                      break;
+                  if (narrowing != null) {
+                    updateFormats(visionBarcodes);
                   }
-
-                  barcodes.add(barcodeMap);
+                  if (compactResults) {
+                    context.success(
+                        MARSHALLER.encodeCompact(visionBarcodes, context.mapping()));
+                    return;
+                  }
+                  context.success(MARSHALLER.toMaps(visionBarcodes, context.mapping()));
                 }
-                result.success(barcodes);
-              }
-            })
-        .addOnFailureListener(
-            new OnFailureListener() {
-              @Override
-              public void onFailure(@NonNull Exception exception) {
-                result.error("barcodeDetectorError", exception.getLocalizedMessage(), null);
-              }
-            });
+              })
+          .addOnFailureListener(
+              executor,
+              new OnFailureListener() {
+                @Override
+                public void onFailure(@NonNull Exception exception) {
+                  frameFinished(client);
+                  if (!context.inferenceFinished()) {
+                    return;
+                  }
+                  context.error("barcodeDetectorError", exception.getLocalizedMessage(), null);
+                }
+              });
+    } catch (RuntimeException exception) {
+      frameFinished(client);
+      throw exception;
+    }
+  }
+
+  private void frameFinished(@Nullable NarrowedClient client) {
+    if (client != null) {
+      release(client);
+    }
+  }
+
+  private static void addTypeValue(Barcode barcode, Map<String, Object> barcodeMap) {
+    Map<String, Object> typeValue = new HashMap<>();
+    switch (barcode.getValueType()) {
+      case Barcode.TYPE_EMAIL:
+        Barcode.Email email = barcode.getEmail();
+
+        typeValue.put("type", email.getType());
+        typeValue.put("address", email.getAddress());
+        typeValue.put("body", email.getBody());
+        typeValue.put("subject", email.getSubject());
+
+        barcodeMap.put("email", typeValue);
+        break;
+      case Barcode.TYPE_PHONE:
+        Barcode.Phone phone = barcode.getPhone();
+
+        typeValue.put("number", phone.getNumber());
+        typeValue.put("type", phone.getType());
+
+        barcodeMap.put("phone", typeValue);
+        break;
+      case Barcode.TYPE_SMS:
+        Barcode.Sms sms = barcode.getSms();
+
+        typeValue.put("message", sms.getMessage());
+        typeValue.put("phoneNumber", sms.getPhoneNumber());
+
+        barcodeMap.put("sms", typeValue);
+        break;
+      case Barcode.TYPE_URL:
+        Barcode.UrlBookmark urlBookmark = barcode.getUrl();
+
+        typeValue.put("title", urlBookmark.getTitle());
+        typeValue.put("url", urlBookmark.getUrl());
+
+        barcodeMap.put("url", typeValue);
+        break;
+      case Barcode.TYPE_WIFI:
+        Barcode.WiFi wifi = barcode.getWifi();
+
+        typeValue.put("ssid", wifi.getSsid());
+        typeValue.put("password", wifi.getPassword());
+        typeValue.put("encryptionType", wifi.getEncryptionType());
+
+        barcodeMap.put("wifi", typeValue);
+        break;
+      case Barcode.TYPE_GEO:
+        Barcode.GeoPoint geoPoint = barcode.getGeoPoint();
+
+        typeValue.put("latitude", geoPoint.getLat());
+        typeValue.put("longitude", geoPoint.getLng());
+
+        barcodeMap.put("geoPoint", typeValue);
+        break;
+      case Barcode.TYPE_CONTACT_INFO:
+        Barcode.ContactInfo contactInfo = barcode.getContactInfo();
+
+        List<Map<String, Object>> addresses = new ArrayList<>();
+        for (Barcode.Address address : contactInfo.getAddresses()) {
+          Map<String, Object> addressMap = new HashMap<>();
+          if (address.getAddressLines() != null) {
+            addressMap.put("addressLines", Arrays.asList(address.getAddressLines()));
+          }
+          addressMap.put("type", address.getType());
+
+          addresses.add(addressMap);
+        }
+        typeValue.put("addresses", addresses);
+
+        List<Map<String, Object>> emails = new ArrayList<>();
+        for (Barcode.Email contactEmail : contactInfo.getEmails()) {
+          Map<String, Object> emailMap = new HashMap<>();
+          emailMap.put("address", contactEmail.getAddress());
+          emailMap.put("type", contactEmail.getType());
+          emailMap.put("body", contactEmail.getBody());
+          emailMap.put("subject", contactEmail.getSubject());
+
+          emails.add(emailMap);
+        }
+        typeValue.put("emails", emails);
+
+        Map<String, Object> nameMap = new HashMap<>();
+        Barcode.PersonName name = contactInfo.getName();
+        if (name != null) {
+          nameMap.put("formattedName", name.getFormattedName());
+          nameMap.put("first", name.getFirst());
+          nameMap.put("last", name.getLast());
+          nameMap.put("middle", name.getMiddle());
+          nameMap.put("prefix", name.getPrefix());
+          nameMap.put("pronunciation", name.getPronunciation());
+          nameMap.put("suffix", name.getSuffix());
+        }
+        typeValue.put("name", nameMap);
+
+        List<Map<String, Object>> phones = new ArrayList<>();
+        for (Barcode.Phone contactPhone : contactInfo.getPhones()) {
+          Map<String, Object> phoneMap = new HashMap<>();
+          phoneMap.put("number", contactPhone.getNumber());
+          phoneMap.put("type", contactPhone.getType());
+
+          phones.add(phoneMap);
+        }
+        typeValue.put("phones", phones);
+
+        if (contactInfo.getUrls() != null) {
+          typeValue.put("urls", Arrays.asList(contactInfo.getUrls()));
+        }
+        typeValue.put("jobTitle", contactInfo.getTitle());
+        typeValue.put("organization", contactInfo.getOrganization());
+
+        barcodeMap.put("contactInfo", typeValue);
+        break;
+      case Barcode.TYPE_CALENDAR_EVENT:
+        Barcode.CalendarEvent calendarEvent =
+            barcode.getCalendarEvent();
+
+        typeValue.put("eventDescription", calendarEvent.getDescription());
+        typeValue.put("location", calendarEvent.getLocation());
+        typeValue.put("organizer", calendarEvent.getOrganizer());
+        typeValue.put("status", calendarEvent.getStatus());
+        typeValue.put("summary", calendarEvent.getSummary());
+        if (calendarEvent.getStart() != null) {
+          typeValue.put("start", calendarEvent.getStart().getRawValue());
+        }
+        if (calendarEvent.getEnd() != null) {
+          typeValue.put("end", calendarEvent.getEnd().getRawValue());
+        }
+
+        barcodeMap.put("calendarEvent", typeValue);
+        break;
+      case Barcode.TYPE_DRIVER_LICENSE:
+        Barcode.DriverLicense driverLicense =
+            barcode.getDriverLicense();
+
+        typeValue.put("firstName", driverLicense.getFirstName());
+        typeValue.put("middleName", driverLicense.getMiddleName());
+        typeValue.put("lastName", driverLicense.getLastName());
+        typeValue.put("gender", driverLicense.getGender());
+        typeValue.put("addressCity", driverLicense.getAddressCity());
+        typeValue.put("addressStreet", driverLicense.getAddressStreet());
+        typeValue.put("addressState", driverLicense.getAddressState());
+        typeValue.put("addressZip", driverLicense.getAddressZip());
+        typeValue.put("birthDate", driverLicense.getBirthDate());
+        typeValue.put("documentType", driverLicense.getDocumentType());
+        typeValue.put("licenseNumber", driverLicense.getLicenseNumber());
+        typeValue.put("expiryDate", driverLicense.getExpiryDate());
+        typeValue.put("issuingDate", driverLicense.getIssueDate());
+        typeValue.put("issuingCountry", driverLicense.getIssuingCountry());
+
+        barcodeMap.put("driverLicense", typeValue);
+        break;
+    }
   }
 
-  private BarcodeScannerOptions parseOptions(Map<String, Object> optionsData) {
+  private static BarcodeScannerOptions parseOptions(Map<String, Object> optionsData) {
     Integer barcodeFormats = (Integer) optionsData.get("barcodeFormats");
     return new BarcodeScannerOptions.Builder()
         .setBarcodeFormats(barcodeFormats)
@@ -237,7 +380,11 @@ class GMLKBarcodeDetector implements Detector {
   }
 
   @Override
-  public void close() throws IOException {
-    detector.close();
+  public synchronized void close() throws IOException {
+    DetectorPool.getInstance().release(poolKey);
+    if (narrowed != null) {
+      release(narrowed);
+      narrowed = null;
+    }
   }
 }
@@ -5,8 +5,9 @@
 package com.brianmtully.flutter.plugins.googlemlvision;
 
 import android.graphics.PointF;
-
+import android.graphics.Rect;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.mlkit.vision.common.InputImage;
@@ -16,161 +17,291 @@ import com.google.mlkit.vision.face.FaceDetector;
 import com.google.mlkit.vision.face.FaceContour;
 import com.google.mlkit.vision.face.FaceDetectorOptions;
 import com.google.mlkit.vision.face.FaceLandmark;
-import io.flutter.plugin.common.MethodChannel;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
-class GMLKFaceDetector implements Detector {
-  private final FaceDetector detector;
-
-  GMLKFaceDetector(Map<String, Object> options) {
-    detector = FaceDetection.getClient(parseOptions(options));
+import java.util.concurrent.Executor;
+
+class GMLKFaceDetector implements Detector, AdaptiveGovernor.ModeSwitch {
+  // Same order as FaceMarshaller.LANDMARK_NAMES.
+  private static final int[] LANDMARK_TYPES = {
+    FaceLandmark.MOUTH_BOTTOM,
+    FaceLandmark.LEFT_CHEEK,
+    FaceLandmark.LEFT_EAR,
+    FaceLandmark.LEFT_EYE,
+    FaceLandmark.MOUTH_LEFT,
+    FaceLandmark.NOSE_BASE,
+    FaceLandmark.RIGHT_CHEEK,
+    FaceLandmark.RIGHT_EAR,
+    FaceLandmark.RIGHT_EYE,
+    FaceLandmark.MOUTH_RIGHT,
+  };
+
+  // Same order as FaceMarshaller.CONTOUR_NAMES.
+  private static final int[] CONTOUR_TYPES = {
+    FaceContour.FACE,
+    FaceContour.LEFT_EYE,
+    FaceContour.LEFT_EYEBROW_BOTTOM,
+    FaceContour.LEFT_EYEBROW_TOP,
+    FaceContour.LOWER_LIP_BOTTOM,
+    FaceContour.LOWER_LIP_TOP,
+    FaceContour.NOSE_BOTTOM,
+    FaceContour.NOSE_BRIDGE,
+    FaceContour.RIGHT_EYE,
+    FaceContour.RIGHT_EYEBROW_BOTTOM,
+    FaceContour.RIGHT_EYEBROW_TOP,
+    FaceContour.UPPER_LIP_BOTTOM,
+    FaceContour.UPPER_LIP_TOP,
+  };
+
+  private static final FaceMarshaller.Reader<Face> READER =
+      new FaceMarshaller.Reader<Face>() {
+        @Override
+        public Rect boundingBox(Face face) {
+          return face.getBoundingBox();
+        }
+
+        @Override
+        public float headEulerAngleY(Face face) {
+          return face.getHeadEulerAngleY();
+        }
+
+        @Override
+        public float headEulerAngleZ(Face face) {
+          return face.getHeadEulerAngleZ();
+        }
+
+        @Override
+        public Float smilingProbability(Face face) {
+          return face.getSmilingProbability();
+        }
+
+        @Override
+        public Float leftEyeOpenProbability(Face face) {
+          return face.getLeftEyeOpenProbability();
+        }
+
+        @Override
+        public Float rightEyeOpenProbability(Face face) {
+          return face.getRightEyeOpenProbability();
+        }
+
+        @Override
+        public Integer trackingId(Face face) {
+          return face.getTrackingId();
+        }
+
+        @Override
+        public PointF landmark(Face face, int index) {
+          FaceLandmark landmark = face.getLandmark(LANDMARK_TYPES[index]);
+          return landmark != null ? landmark.getPosition() : null;
+        }
+
+        @Override
+        public List<PointF> contour(Face face, int index) {
+          FaceContour contour = face.getContour(CONTOUR_TYPES[index]);
+          return contour != null ? contour.getPoints() : null;
+        }
+
+        @Override
+        public List<List<PointF>> allContours(Face face) {
+          List<FaceContour> contours = face.getAllContours();
+          List<List<PointF>> points = new ArrayList<>(contours.size());
+          for (FaceContour contour : contours) {
+            points.add(contour.getPoints());
+          }
+          return points;
+        }
+      };
+
+  private final Map<String, Object> options;
+  private final FaceDetector configuredDetector;
+  // Null when the handle's clients are not pooled because they track faces.
+  @Nullable private final String poolKey;
+  private final Executor executor;
+  private final boolean compactResults;
+  private final FaceMarshaller<Face> marshaller;
+  // The client used for new frames; switched by the adaptive governor.
+  private FaceDetector detector;
+  @Nullable private String fastPoolKey;
+  @Nullable private FaceDetector fastDetector;
+  // Set in hybrid mode, where most frames only run through the tracking client.
+  @Nullable private final TrackedFaceAttributes<Face> trackedAttributes;
+  @Nullable private final FaceMarshaller<TrackedFaceAttributes.Merged<Face>> mergedMarshaller;
+  // Never pooled, see openClient.
+  @Nullable private final FaceDetector trackingDetector;
+
+  GMLKFaceDetector(final Map<String, Object> options, Executor executor) {
+    this.options = options;
+    poolKey = isTracking(options) ? null : DetectorPool.key("FaceDetector", options);
+    configuredDetector = openClient(poolKey, options);
+    detector = configuredDetector;
+    compactResults = ProcessingOptions.parse(options).compactResults;
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> fields = (Map<String, Object>) options.get("fields");
+    marshaller = new FaceMarshaller<>(READER, new FaceMarshaller.FieldMask(fields));
+
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> hybrid = (Map<String, Object>) options.get("hybrid");
+    if (hybrid != null) {
+      trackedAttributes =
+          new TrackedFaceAttributes<>(READER, (Integer) hybrid.get("fullPassInterval"));
+      mergedMarshaller =
+          new FaceMarshaller<>(
+              TrackedFaceAttributes.mergedReader(READER), new FaceMarshaller.FieldMask(fields));
+      final Map<String, Object> trackingOptions = new HashMap<>(options);
+      trackingOptions.put("enableClassification", false);
+      trackingOptions.put("enableLandmarks", false);
+      trackingOptions.put("enableContours", false);
+      trackingOptions.put("enableTracking", true);
+      trackingOptions.put("mode", "fast");
+      trackingDetector = openClient(null, trackingOptions);
+    } else {
+      trackedAttributes = null;
+      mergedMarshaller = null;
+      trackingDetector = null;
+    }
+    this.executor = executor;
   }
 
-  @Override
-  public void handleDetection(final InputImage image, final MethodChannel.Result result) {
-    detector
-        .process(image)
-        .addOnSuccessListener(
-            new OnSuccessListener<List<Face>>() {
-              @Override
-              public void onSuccess(List<Face> foundFaces) {
-                List<Map<String, Object>> faces = new ArrayList<>(foundFaces.size());
-                for (Face face : foundFaces) {
-                  Map<String, Object> faceData = new HashMap<>();
-
-                  faceData.put("left", (double) face.getBoundingBox().left);
-                  faceData.put("top", (double) face.getBoundingBox().top);
-                  faceData.put("width", (double) face.getBoundingBox().width());
-                  faceData.put("height", (double) face.getBoundingBox().height());
-
-                  faceData.put("headEulerAngleY", face.getHeadEulerAngleY());
-                  faceData.put("headEulerAngleZ", face.getHeadEulerAngleZ());
-                  if (face.getSmilingProbability() != null) {
-                    faceData.put("smilingProbability", face.getSmilingProbability());
-                  }
-
-                  if (face.getLeftEyeOpenProbability()
-                      != null) {
-                    faceData.put("leftEyeOpenProbability", face.getLeftEyeOpenProbability());
-                  }
-
-                  if (face.getRightEyeOpenProbability()
-                      != null) {
-                    faceData.put("rightEyeOpenProbability", face.getRightEyeOpenProbability());
-                  }
-
-                  if (face.getTrackingId() != null) {
-                    faceData.put("trackingId", face.getTrackingId());
-                  }
-
-                  faceData.put("landmarks", getLandmarkData(face));
-
-                  faceData.put("contours", getContourData(face));
-
-                  faces.add(faceData);
-                }
+  private static boolean isTracking(Map<String, Object> options) {
+    return (boolean) options.get("enableTracking");
+  }
 
-                result.success(faces);
-              }
-            })
-        .addOnFailureListener(
-            new OnFailureListener() {
+  /**
+   * Returns the pooled client for {@code key}, or a new client if {@code key} is null.
+   *
+   * <p>Tracking clients are never pooled: their tracking ids and state belong to this handle's
+   * stream of frames.
+   */
+  private FaceDetector openClient(@Nullable String key, final Map<String, Object> clientOptions) {
+    if (key == null) {
+      return FaceDetection.getClient(parseOptions(clientOptions));
+    }
+    return DetectorPool.getInstance()
+        .acquire(
+            key,
+            new DetectorPool.Factory<FaceDetector>() {
               @Override
-              public void onFailure(@NonNull Exception exception) {
-                result.error("faceDetectorError", exception.getLocalizedMessage(), null);
+              public FaceDetector create() {
+                return FaceDetection.getClient(parseOptions(clientOptions));
               }
             });
   }
 
-  private Map<String, double[]> getLandmarkData(Face face) {
-    Map<String, double[]> landmarks = new HashMap<>();
-
-    landmarks.put("bottomMouth", landmarkPosition(face, FaceLandmark.MOUTH_BOTTOM));
-    landmarks.put("leftCheek", landmarkPosition(face, FaceLandmark.LEFT_CHEEK));
-    landmarks.put("leftEar", landmarkPosition(face, FaceLandmark.LEFT_EAR));
-    landmarks.put("leftEye", landmarkPosition(face, FaceLandmark.LEFT_EYE));
-    landmarks.put("leftMouth", landmarkPosition(face, FaceLandmark.MOUTH_LEFT));
-    landmarks.put("noseBase", landmarkPosition(face, FaceLandmark.NOSE_BASE));
-    landmarks.put("rightCheek", landmarkPosition(face, FaceLandmark.RIGHT_CHEEK));
-    landmarks.put("rightEar", landmarkPosition(face, FaceLandmark.RIGHT_EAR));
-    landmarks.put("rightEye", landmarkPosition(face, FaceLandmark.RIGHT_EYE));
-    landmarks.put("rightMouth", landmarkPosition(face, FaceLandmark.MOUTH_RIGHT));
-
-    return landmarks;
+  @Override
+  public boolean hasFastMode() {
+    return "accurate".equals(options.get("mode"));
   }
 
-  private Map<String, List<double[]>> getContourData(Face face) {
-    Map<String, List<double[]>> contours = new HashMap<>();
-
-    contours.put("allPoints", allContourPoints(face));
-    contours.put("face", contourPosition(face, FaceContour.FACE));
-    contours.put("leftEye", contourPosition(face, FaceContour.LEFT_EYE));
-    contours.put(
-        "leftEyebrowBottom", contourPosition(face, FaceContour.LEFT_EYEBROW_BOTTOM));
-    contours.put(
-        "leftEyebrowTop", contourPosition(face, FaceContour.LEFT_EYEBROW_TOP));
-    contours.put(
-        "lowerLipBottom", contourPosition(face, FaceContour.LOWER_LIP_BOTTOM));
-    contours.put("lowerLipTop", contourPosition(face, FaceContour.LOWER_LIP_TOP));
-    contours.put("noseBottom", contourPosition(face, FaceContour.NOSE_BOTTOM));
-    contours.put("noseBridge", contourPosition(face, FaceContour.NOSE_BRIDGE));
-    contours.put("rightEye", contourPosition(face, FaceContour.RIGHT_EYE));
-    contours.put(
-        "rightEyebrowBottom",
-        contourPosition(face, FaceContour.RIGHT_EYEBROW_BOTTOM));
-    contours.put(
-        "rightEyebrowTop", contourPosition(face, FaceContour.RIGHT_EYEBROW_TOP));
-    contours.put(
-        "upperLipBottom", contourPosition(face, FaceContour.UPPER_LIP_BOTTOM));
-    contours.put("upperLipTop", contourPosition(face, FaceContour.UPPER_LIP_TOP));
-
-    return contours;
+  /**
+   * Switches new frames to a client with {@code PERFORMANCE_MODE_FAST} and otherwise identical
+   * options, or back to the configured client. Tracking ids are not kept across clients.
+   */
+  @Override
+  public synchronized void setFastMode(boolean fast) {
+    if (fast && fastDetector == null) {
+      final Map<String, Object> fastOptions = new HashMap<>(options);
+      fastOptions.put("mode", "fast");
+      fastPoolKey = poolKey != null ? DetectorPool.key("FaceDetector", fastOptions) : null;
+      fastDetector = openClient(fastPoolKey, fastOptions);
+    }
+    detector = fast ? fastDetector : configuredDetector;
   }
 
-  private double[] landmarkPosition(Face face, int landmarkInt) {
-    FaceLandmark landmark = face.getLandmark(landmarkInt);
-    if (landmark != null) {
+  private synchronized FaceDetector currentDetector() {
+    return detector;
+  }
 
-      return new double[] {landmark.getPosition().x, landmark.getPosition().y};
+  @Override
+  public void handleDetection(final InputImage image, final DetectionContext context) {
+    if (trackedAttributes != null) {
+      handleHybridDetection(image, context);
+      return;
     }
 
-    return null;
+    currentDetector()
+        .process(image)
+        .addOnSuccessListener(
+            executor,
+            new OnSuccessListener<List<Face>>() {
+              @Override
+              public void onSuccess(List<Face> foundFaces) {
+                if (!context.inferenceFinished()) {
+                  return;
+                }
+                if (compactResults) {
+                  context.success(
+                      marshaller.encodeCompact(foundFaces, context.mapping()));
+                  return;
+                }
+                context.success(marshaller.toMaps(foundFaces, context.mapping()));
+              }
+            })
+        .addOnFailureListener(executor, failureListener(context));
   }
 
-  private List<double[]> contourPosition(Face face, int contourInt) {
-    FaceContour contour = face.getContour(contourInt);
-    if (contour != null) {
-      List<PointF> contourPoints = contour.getPoints();
-      List<double[]> result = new ArrayList<double[]>();
+  /**
+   * Runs the frame through the tracking client, and through the configured client as well when a
+   * new face showed up or the full pass interval passed. Faces are reported with the attributes
+   * of their last full pass.
+   */
+  private void handleHybridDetection(final InputImage image, final DetectionContext context) {
+    trackingDetector
+        .process(image)
+        .addOnSuccessListener(
+            executor,
+            new OnSuccessListener<List<Face>>() {
+              @Override
+              public void onSuccess(final List<Face> trackedFaces) {
+                if (!trackedAttributes.needsFullPass(trackedFaces)) {
+                  finishHybridDetection(trackedFaces, context);
+                  return;
+                }
 
-      for (int i = 0; i < contourPoints.size(); i++) {
-        result.add(new double[] {contourPoints.get(i).x, contourPoints.get(i).y});
-      }
+                currentDetector()
+                    .process(image)
+                    .addOnSuccessListener(
+                        executor,
+                        new OnSuccessListener<List<Face>>() {
+                          @Override
+                          public void onSuccess(List<Face> fullFaces) {
+                            trackedAttributes.update(trackedFaces, fullFaces);
+                            finishHybridDetection(trackedFaces, context);
+                          }
+                        })
+                    .addOnFailureListener(executor, failureListener(context));
+              }
+            })
+        .addOnFailureListener(executor, failureListener(context));
+  }
 
-      return result;
+  private void finishHybridDetection(List<Face> trackedFaces, DetectionContext context) {
+    if (!context.inferenceFinished()) {
+      return;
     }
-
-    return null;
+    final List<TrackedFaceAttributes.Merged<Face>> faces = trackedAttributes.merge(trackedFaces);
+    if (compactResults) {
+      context.success(mergedMarshaller.encodeCompact(faces, context.mapping()));
+      return;
+    }
+    context.success(mergedMarshaller.toMaps(faces, context.mapping()));
   }
 
-  private List<double[]> allContourPoints(Face face) {
-    List<FaceContour> contours = face.getAllContours();
-    List<double[]> result = new ArrayList<double[]>();
-    for (int i = 0; i < contours.size(); i++) {
-      List<PointF> contourPoints = contours.get(i).getPoints();
-      for (int j = 0; j < contourPoints.size(); j++) {
-        result.add(new double[]{contourPoints.get(j).x, contourPoints.get(j).y});
+  private static OnFailureListener failureListener(final DetectionContext context) {
+    return new OnFailureListener() {
+      @Override
+      public void onFailure(@NonNull Exception exception) {
+        if (!context.inferenceFinished()) {
+          return;
+        }
+        context.error("faceDetectorError", exception.getLocalizedMessage(), null);
       }
-
-    }
-    return result;
+    };
   }
 
-
   private FaceDetectorOptions parseOptions(Map<String, Object> options) {
     int classification =
         (boolean) options.get("enableClassification")
@@ -196,7 +327,7 @@ class GMLKFaceDetector implements Detector {
         mode = FaceDetectorOptions.PERFORMANCE_MODE_FAST;
         break;
       default:
-        throw new IllegalArgumentException("Not a mode:" + options.get("mode"));
+        throw new IllegalArgumentException("Not a mode: " + options.get("mode"));
     }
 
     FaceDetectorOptions.Builder builder =
@@ -215,7 +346,21 @@ class GMLKFaceDetector implements Detector {
   }
 
   @Override
-  public void close() throws IOException {
-    detector.close();
+  public synchronized void close() throws IOException {
+    closeClient(poolKey, configuredDetector);
+    if (fastDetector != null) {
+      closeClient(fastPoolKey, fastDetector);
+    }
+    if (trackingDetector != null) {
+      trackingDetector.close();
+    }
+  }
+
+  private static void closeClient(@Nullable String key, FaceDetector client) throws IOException {
+    if (key != null) {
+      DetectorPool.getInstance().release(key);
+    } else {
+      client.close();
+    }
   }
 }
@@ -5,36 +5,156 @@
 package com.brianmtully.flutter.plugins.googlemlvision;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.mlkit.common.model.LocalModel;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.label.ImageLabel;
 import com.google.mlkit.vision.label.ImageLabeling;
 import com.google.mlkit.vision.label.ImageLabeler;
+import com.google.mlkit.vision.label.ImageLabelerOptionsBase;
+import com.google.mlkit.vision.label.custom.CustomImageLabelerOptions;
 import com.google.mlkit.vision.label.defaults.ImageLabelerOptions;
-import io.flutter.plugin.common.MethodChannel;
+import io.flutter.embedding.engine.plugins.FlutterPlugin.FlutterAssets;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import android.util.Log;
 
 class GMLKImageLabeler implements Detector {
+  private static final Comparator<ImageLabel> BY_CONFIDENCE =
+      new Comparator<ImageLabel>() {
+        @Override
+        public int compare(ImageLabel a, ImageLabel b) {
+          return Float.compare(b.getConfidence(), a.getConfidence());
+        }
+      };
+
   private final ImageLabeler labeler;
+  private final String poolKey;
+  private final Executor executor;
+  // Zero when ML Kit applies the limit, or there is none.
+  private final int maxResults;
+  @Nullable private final Set<String> allowedLabels;
+
+  GMLKImageLabeler(
+      final Map<String, Object> options, final FlutterAssets assets, Executor executor) {
+    final Integer maxResults = (Integer) options.get("maxResults");
+    @SuppressWarnings("unchecked")
+    final List<String> allowedLabels = (List<String>) options.get("allowedLabels");
+    // A custom model keeps only the most confident labels itself, unless labels outside the
+    // allow-list could take their place.
+    final Integer maxResultCount =
+        options.get("customModel") != null && allowedLabels == null ? maxResults : null;
+    final Map<String, Object> clientOptions = new HashMap<>(options);
+    if (maxResultCount != null) {
+      clientOptions.put("maxResultCount", maxResultCount);
+    }
+
+    poolKey = DetectorPool.key("ImageLabeler", clientOptions);
+    final DetectorPool.Factory<ImageLabeler> factory =
+        new DetectorPool.Factory<ImageLabeler>() {
+          @Override
+          public ImageLabeler create() {
+            return ImageLabeling.getClient(parseOptions(clientOptions, assets));
+          }
+        };
+    // Loading a custom model initializes a new interpreter, so custom clients are kept around for
+    // handles reopened with the same model and options.
+    labeler =
+        options.get("customModel") != null
+            ? DetectorPool.getInstance().acquireCached(poolKey, factory)
+            : DetectorPool.getInstance().acquire(poolKey, factory);
+    this.maxResults = maxResults != null && maxResultCount == null ? maxResults : 0;
+    this.allowedLabels = allowedLabels != null ? new HashSet<>(allowedLabels) : null;
+    this.executor = executor;
+  }
+
+  private static ImageLabelerOptionsBase parseOptions(
+      Map<String, Object> options, FlutterAssets assets) {
+    final Double confidenceThreshold = (Double) options.get("confidenceThreshold");
+    final Integer maxResultCount = (Integer) options.get("maxResultCount");
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> customModel = (Map<String, Object>) options.get("customModel");
+
+    if (customModel != null) {
+      final CustomImageLabelerOptions.Builder builder =
+          new CustomImageLabelerOptions.Builder(parseModel(customModel, assets));
+      if (confidenceThreshold != null) {
+        builder.setConfidenceThreshold(confidenceThreshold.floatValue());
+      }
+      if (maxResultCount != null) {
+        builder.setMaxResultCount(maxResultCount);
+      }
+      return builder.build();
+    }
+
+    if (confidenceThreshold == null) {
+      return ImageLabelerOptions.DEFAULT_OPTIONS;
+    }
 
-  GMLKImageLabeler(Map<String, Object> options) {
-      labeler = ImageLabeling.getClient(ImageLabelerOptions.DEFAULT_OPTIONS);
+    // ML Kit drops labels below the threshold before they are returned.
+    return new ImageLabelerOptions.Builder()
+        .setConfidenceThreshold(confidenceThreshold.floatValue())
+        .build();
+  }
+
+  private static LocalModel parseModel(Map<String, Object> customModel, FlutterAssets assets) {
+    final String asset = (String) customModel.get("asset");
+    if (asset != null) {
+      return new LocalModel.Builder()
+          .setAssetFilePath(assets.getAssetFilePathByName(asset))
+          .build();
+    }
+    return new LocalModel.Builder()
+        .setAbsoluteFilePath((String) customModel.get("file"))
+        .build();
+  }
+
+  /**
+   * Applies the allow-list, then keeps the {@code maxResults} most confident labels if ML Kit
+   * didn't already.
+   */
+  private List<ImageLabel> keptLabels(List<ImageLabel> labels) {
+    List<ImageLabel> kept = labels;
+    if (allowedLabels != null) {
+      kept = new ArrayList<>();
+      for (ImageLabel label : labels) {
+        if (allowedLabels.contains(label.getText())) {
+          kept.add(label);
+        }
+      }
+    }
+
+    if (maxResults > 0 && kept.size() > maxResults) {
+      kept = new ArrayList<>(kept);
+      Collections.sort(kept, BY_CONFIDENCE);
+      kept = kept.subList(0, maxResults);
+    }
+    return kept;
   }
 
   @Override
-  public void handleDetection(final InputImage image, final MethodChannel.Result result) {
+  public void handleDetection(final InputImage image, final DetectionContext context) {
     labeler
         .process(image)
         .addOnSuccessListener(
+            executor,
             new OnSuccessListener<List<ImageLabel>>() {
               @Override
-              public void onSuccess(List<ImageLabel> visionLabels) {
+              public void onSuccess(List<ImageLabel> foundLabels) {
+                if (!context.inferenceFinished()) {
+                  return;
+                }
+                List<ImageLabel> visionLabels = keptLabels(foundLabels);
                 List<Map<String, Object>> labels = new ArrayList<>(visionLabels.size());
                 for (ImageLabel label : visionLabels) {
                   Map<String, Object> labelData = new HashMap<>();
@@ -45,20 +165,24 @@ class GMLKImageLabeler implements Detector {
                   labels.add(labelData);
                 }
 
-                result.success(labels);
+                context.success(labels);
               }
             })
         .addOnFailureListener(
+            executor,
             new OnFailureListener() {
               @Override
               public void onFailure(@NonNull Exception e) {
-                result.error("imageLabelerError", e.getLocalizedMessage(), null);
+                if (!context.inferenceFinished()) {
+                  return;
+                }
+                context.error("imageLabelerError", e.getLocalizedMessage(), null);
               }
             });
   }
 
   @Override
   public void close() throws IOException {
-    labeler.close();
+    DetectorPool.getInstance().release(poolKey);
   }
 }
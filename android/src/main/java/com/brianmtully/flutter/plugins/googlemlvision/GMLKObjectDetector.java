@@ -0,0 +1,137 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.objects.DetectedObject;
+import com.google.mlkit.vision.objects.ObjectDetection;
+import com.google.mlkit.vision.objects.ObjectDetector;
+import com.google.mlkit.vision.objects.defaults.ObjectDetectorOptions;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+class GMLKObjectDetector implements Detector {
+  private final ObjectDetector detector;
+  // Null in stream mode, whose client tracks objects across this handle's frames and is not
+  // shared with other handles.
+  @Nullable private final String poolKey;
+  private final Executor executor;
+
+  GMLKObjectDetector(final Map<String, Object> options, Executor executor) {
+    if ("stream".equals(options.get("mode"))) {
+      poolKey = null;
+      detector = ObjectDetection.getClient(parseOptions(options));
+    } else {
+      poolKey = DetectorPool.key("ObjectDetector", options);
+      detector =
+          DetectorPool.getInstance()
+              .acquire(
+                  poolKey,
+                  new DetectorPool.Factory<ObjectDetector>() {
+                    @Override
+                    public ObjectDetector create() {
+                      return ObjectDetection.getClient(parseOptions(options));
+                    }
+                  });
+    }
+    this.executor = executor;
+  }
+
+  @Override
+  public void handleDetection(final InputImage image, final DetectionContext context) {
+    detector
+        .process(image)
+        .addOnSuccessListener(
+            executor,
+            new OnSuccessListener<List<DetectedObject>>() {
+              @Override
+              public void onSuccess(List<DetectedObject> detectedObjects) {
+                if (!context.inferenceFinished()) {
+                  return;
+                }
+                List<Map<String, Object>> objects = new ArrayList<>(detectedObjects.size());
+                for (DetectedObject detectedObject : detectedObjects) {
+                  Map<String, Object> objectData = new HashMap<>();
+
+                  context.mapping().putRect(detectedObject.getBoundingBox(), objectData);
+
+                  if (detectedObject.getTrackingId() != null) {
+                    objectData.put("trackingId", detectedObject.getTrackingId());
+                  }
+
+                  List<Map<String, Object>> labels = new ArrayList<>();
+                  for (DetectedObject.Label label : detectedObject.getLabels()) {
+                    Map<String, Object> labelData = new HashMap<>();
+                    labelData.put("confidence", (double) label.getConfidence());
+                    labelData.put("index", label.getIndex());
+                    labelData.put("text", label.getText());
+
+                    labels.add(labelData);
+                  }
+                  objectData.put("labels", labels);
+
+                  objects.add(objectData);
+                }
+
+                context.success(objects);
+              }
+            })
+        .addOnFailureListener(
+            executor,
+            new OnFailureListener() {
+              @Override
+              public void onFailure(@NonNull Exception exception) {
+                if (!context.inferenceFinished()) {
+                  return;
+                }
+                context.error("objectDetectorError", exception.getLocalizedMessage(), null);
+              }
+            });
+  }
+
+  private ObjectDetectorOptions parseOptions(Map<String, Object> options) {
+    int mode;
+    switch ((String) options.get("mode")) {
+      case "stream":
+        mode = ObjectDetectorOptions.STREAM_MODE;
+        break;
+      case "singleImage":
+        mode = ObjectDetectorOptions.SINGLE_IMAGE_MODE;
+        break;
+      default:
+        throw new IllegalArgumentException("Not a mode: " + options.get("mode"));
+    }
+
+    ObjectDetectorOptions.Builder builder =
+        new ObjectDetectorOptions.Builder().setDetectorMode(mode);
+
+    if ((boolean) options.get("enableMultipleObjects")) {
+      builder.enableMultipleObjects();
+    }
+
+    if ((boolean) options.get("enableClassification")) {
+      builder.enableClassification();
+    }
+
+    return builder.build();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (poolKey != null) {
+      DetectorPool.getInstance().release(poolKey);
+    } else {
+      detector.close();
+    }
+  }
+}
@@ -13,118 +13,177 @@ import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.text.Text;
 import com.google.mlkit.vision.text.TextRecognition;
 import com.google.mlkit.vision.text.TextRecognizer;
-import io.flutter.plugin.common.MethodChannel;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import android.util.Log;
 
 class GMLKTextRecognizer implements Detector {
+  private static final TextMarshaller.Tree<Text, Text.TextBlock, Text.Line, Text.Element> TREE =
+      new TextMarshaller.Tree<Text, Text.TextBlock, Text.Line, Text.Element>() {
+        @Override
+        public String text(Text text) {
+          return text.getText();
+        }
+
+        @Override
+        public List<Text.TextBlock> blocks(Text text) {
+          return text.getTextBlocks();
+        }
+
+        @Override
+        public List<Text.Line> lines(Text.TextBlock block) {
+          return block.getLines();
+        }
+
+        @Override
+        public List<Text.Element> elements(Text.Line line) {
+          return line.getElements();
+        }
+      };
+
+  private static final TextMarshaller.Container<Text.TextBlock> BLOCKS =
+      new TextMarshaller.Container<Text.TextBlock>() {
+        @Override
+        public Rect boundingBox(Text.TextBlock block) {
+          return block.getBoundingBox();
+        }
+
+        @Override
+        public Point[] cornerPoints(Text.TextBlock block) {
+          return block.getCornerPoints();
+        }
+
+        @Override
+        public String language(Text.TextBlock block) {
+          return block.getRecognizedLanguage();
+        }
+
+        @Override
+        public String text(Text.TextBlock block) {
+          return block.getText();
+        }
+      };
+
+  private static final TextMarshaller.Container<Text.Line> LINES =
+      new TextMarshaller.Container<Text.Line>() {
+        @Override
+        public Rect boundingBox(Text.Line line) {
+          return line.getBoundingBox();
+        }
+
+        @Override
+        public Point[] cornerPoints(Text.Line line) {
+          return line.getCornerPoints();
+        }
+
+        @Override
+        public String language(Text.Line line) {
+          return line.getRecognizedLanguage();
+        }
+
+        @Override
+        public String text(Text.Line line) {
+          return line.getText();
+        }
+      };
+
+  private static final TextMarshaller.Container<Text.Element> ELEMENTS =
+      new TextMarshaller.Container<Text.Element>() {
+        @Override
+        public Rect boundingBox(Text.Element element) {
+          return element.getBoundingBox();
+        }
+
+        @Override
+        public Point[] cornerPoints(Text.Element element) {
+          return element.getCornerPoints();
+        }
+
+        @Override
+        public String language(Text.Element element) {
+          return element.getRecognizedLanguage();
+        }
+
+        @Override
+        public String text(Text.Element element) {
+          return element.getText();
+        }
+      };
+
   private final TextRecognizer recognizer;
+  private final String poolKey;
+  private final Executor executor;
+  private final boolean compactResults;
+  private final TextMarshaller<Text, Text.TextBlock, Text.Line, Text.Element> marshaller;
 
-  GMLKTextRecognizer(Map<String, Object> options) {
-      recognizer = TextRecognition.getClient();
+  GMLKTextRecognizer(final Map<String, Object> options, Executor executor) {
+    poolKey = DetectorPool.key("TextRecognizer", options);
+    recognizer =
+        DetectorPool.getInstance()
+            .acquire(
+                poolKey,
+                new DetectorPool.Factory<TextRecognizer>() {
+                  @Override
+                  public TextRecognizer create() {
+                    return TextRecognition.getClient();
+                  }
+                });
+    final ProcessingOptions processingOptions = ProcessingOptions.parse(options);
+    compactResults = processingOptions.compactResults;
+    final Double minHeight = (Double) options.get("minTextHeight");
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> region = (Map<String, Object>) options.get("region");
+    marshaller =
+        new TextMarshaller<>(
+            TREE,
+            BLOCKS,
+            LINES,
+            ELEMENTS,
+            TextMarshaller.parseGranularity((String) options.get("granularity")),
+            // Deltas match blocks by their text.
+            processingOptions.deltaResults,
+            minHeight != null ? minHeight : 0,
+            TextMarshaller.parseRegion(region));
+    this.executor = executor;
   }
 
   @Override
-  public void handleDetection(final InputImage image, final MethodChannel.Result result) {
+  public void handleDetection(final InputImage image, final DetectionContext context) {
     recognizer
         .process(image)
         .addOnSuccessListener(
+            executor,
             new OnSuccessListener<Text>() {
               @Override
               public void onSuccess(Text googleVisionText) {
-                Map<String, Object> visionTextData = new HashMap<>();
-                visionTextData.put("text", googleVisionText.getText());
-
-                List<Map<String, Object>> allBlockData = new ArrayList<>();
-                for (Text.TextBlock block : googleVisionText.getTextBlocks()) {
-                  Map<String, Object> blockData = new HashMap<>();
-                  addData(
-                      blockData,
-                      block.getBoundingBox(),
-                      block.getCornerPoints(),
-                          block.getRecognizedLanguage(),
-                      block.getText());
-
-                  List<Map<String, Object>> allLineData = new ArrayList<>();
-                  for (Text.Line line : block.getLines()) {
-                    Map<String, Object> lineData = new HashMap<>();
-                    addData(
-                        lineData,
-                        line.getBoundingBox(),
-                        line.getCornerPoints(),
-                        line.getRecognizedLanguage(),
-                        line.getText());
-
-                    List<Map<String, Object>> allElementData = new ArrayList<>();
-                    for (Text.Element element : line.getElements()) {
-                      Map<String, Object> elementData = new HashMap<>();
-                      addData(
-                          elementData,
-                          element.getBoundingBox(),
-                          element.getCornerPoints(),
-                          element.getRecognizedLanguage(),
-                          element.getText());
-
-                      allElementData.add(elementData);
-                    }
-                    lineData.put("elements", allElementData);
-                    allLineData.add(lineData);
-                  }
-                  blockData.put("lines", allLineData);
-                  allBlockData.add(blockData);
+                if (!context.inferenceFinished()) {
+                  return;
                 }
-
-                visionTextData.put("blocks", allBlockData);
-                result.success(visionTextData);
+                if (compactResults) {
+                  context.success(
+                      marshaller.encodeCompact(googleVisionText, context.mapping()));
+                  return;
+                }
+                context.success(marshaller.toMap(googleVisionText, context.mapping()));
               }
             })
         .addOnFailureListener(
+            executor,
             new OnFailureListener() {
               @Override
               public void onFailure(@NonNull Exception exception) {
-                result.error("textRecognizerError", exception.getLocalizedMessage(), null);
+                if (!context.inferenceFinished()) {
+                  return;
+                }
+                context.error("textRecognizerError", exception.getLocalizedMessage(), null);
               }
             });
   }
 
-  private void addData(
-      Map<String, Object> addTo,
-      Rect boundingBox,
-      Point[] cornerPoints,
-      String language,
-      String text) {
-
-    if (boundingBox != null) {
-      addTo.put("left", (double) boundingBox.left);
-      addTo.put("top", (double) boundingBox.top);
-      addTo.put("width", (double) boundingBox.width());
-      addTo.put("height", (double) boundingBox.height());
-    }
-
-    List<double[]> points = new ArrayList<>();
-    if (cornerPoints != null) {
-      for (Point point : cornerPoints) {
-        points.add(new double[] {(double) point.x, (double) point.y});
-      }
-    }
-    addTo.put("points", points);
-
-    List<Map<String, Object>> allLanguageData = new ArrayList<>();
-   // for (RecognizedLanguage language : languages) {
-      Map<String, Object> languageData = new HashMap<>();
-      languageData.put("languageCode", language);
-      allLanguageData.add(languageData);
-    //}
-    addTo.put("recognizedLanguages", allLanguageData);
-    addTo.put("text", text);
-  }
-
   @Override
   public void close() throws IOException {
-    recognizer.close();
+    DetectorPool.getInstance().release(poolKey);
   }
 }
@@ -3,28 +3,52 @@ package com.brianmtully.flutter.plugins.googlemlvision;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
 import android.net.Uri;
-import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.exifinterface.media.ExifInterface;
 import com.google.mlkit.vision.common.InputImage;
+import io.flutter.embedding.engine.plugins.FlutterPlugin.FlutterAssets;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import android.util.Log;
 
 class MlVisionHandler implements MethodCallHandler {
-  private final SparseArray<Detector> detectors = new SparseArray<>();
+  private static final int WARM_UP_SIZE = 32;
+
+  private final DetectorRegistry registry = new DetectorRegistry();
   private final Context applicationContext;
+  private final FlutterAssets assets;
+  private final Executor executor;
+  private final BatchProcessor batchProcessor;
+  private final DetectionSessions sessions;
+  private final GovernorEvents governorEvents;
 
-  MlVisionHandler(Context applicationContext) {
+  MlVisionHandler(
+      Context applicationContext,
+      FlutterAssets assets,
+      Executor executor,
+      BatchProcessor batchProcessor,
+      DetectionSessions sessions,
+      GovernorEvents governorEvents) {
     this.applicationContext = applicationContext;
+    this.assets = assets;
+    this.executor = executor;
+    this.batchProcessor = batchProcessor;
+    this.sessions = sessions;
+    this.governorEvents = governorEvents;
   }
 
   @Override
@@ -33,122 +57,653 @@ class MlVisionHandler implements MethodCallHandler {
       case "BarcodeDetector#detectInImage":
       case "FaceDetector#processImage":
       case "ImageLabeler#processImage":
+      case "ObjectDetector#processImage":
       case "TextRecognizer#processImage":
         handleDetection(call, result);
         break;
       case "BarcodeDetector#close":
       case "FaceDetector#close":
       case "ImageLabeler#close":
+      case "ObjectDetector#close":
       case "TextRecognizer#close":
         closeDetector(call, result);
         break;
+      case "BarcodeDetector#prepare":
+      case "FaceDetector#prepare":
+      case "ImageLabeler#prepare":
+      case "ObjectDetector#prepare":
+      case "TextRecognizer#prepare":
+        prepareDetector(call, result);
+        break;
+      case "BarcodeDetector#processBatch":
+      case "FaceDetector#processBatch":
+      case "ImageLabeler#processBatch":
+      case "ObjectDetector#processBatch":
+      case "TextRecognizer#processBatch":
+        processBatch(call, result);
+        break;
+      case "Batch#cancel":
+        cancelBatch(call, result);
+        break;
+      case "BarcodeDetector#openSession":
+      case "FaceDetector#openSession":
+      case "ImageLabeler#openSession":
+      case "ObjectDetector#openSession":
+      case "TextRecognizer#openSession":
+        openSession(call, result);
+        break;
+      case "BarcodeDetector#cancel":
+      case "FaceDetector#cancel":
+      case "ImageLabeler#cancel":
+      case "ObjectDetector#cancel":
+      case "TextRecognizer#cancel":
+        cancelRequests(call, result);
+        break;
+      case "Session#close":
+        closeSession(call, result);
+        break;
+      case "Pipeline#process":
+        processPipeline(call, result);
+        break;
+      case "Metrics#snapshot":
+        snapshotMetrics(call, result);
+        break;
       default:
         result.notImplemented();
     }
   }
 
   private void handleDetection(MethodCall call, MethodChannel.Result result) {
-    Map<String, Object> options = call.argument("options");
+    final DetectorRegistry.Entry entry = getOrCreateDetector(call);
 
-    InputImage image;
     Map<String, Object> imageData = call.arguments();
+    entry.scheduler.submit(imageData, result);
+  }
+
+  private void prepareDetector(MethodCall call, final MethodChannel.Result result) {
+    final Detector detector = getOrCreateDetector(call).detector;
+
+    final Boolean warmUp = call.argument("warmUp");
+    if (warmUp == null || !warmUp) {
+      result.success(null);
+      return;
+    }
+
+    // Runs a tiny blank frame through the detector so the model is loaded before the first real
+    // frame arrives. Its result is irrelevant; only completion is reported.
+    final Bitmap blank = Bitmap.createBitmap(WARM_UP_SIZE, WARM_UP_SIZE, Bitmap.Config.ARGB_8888);
+    detector.handleDetection(
+        InputImage.fromBitmap(blank, 0),
+        DetectionContext.of(
+            new MainThreadResult(
+                new MethodChannel.Result() {
+                  @Override
+                  public void success(Object ignored) {
+                    result.success(null);
+                  }
+
+                  @Override
+                  public void error(String errorCode, String errorMessage, Object errorDetails) {
+                    result.error(errorCode, errorMessage, errorDetails);
+                  }
+
+                  @Override
+                  public void notImplemented() {
+                    result.notImplemented();
+                  }
+                })));
+  }
+
+  private void processBatch(MethodCall call, MethodChannel.Result result) {
+    final Detector detector = getOrCreateDetector(call).detector;
+
+    final Integer batchId = call.argument("batchId");
+    final List<String> paths = call.argument("paths");
+    final Integer maxDimension = call.argument("maxDimension");
+    batchProcessor.start(
+        batchId, paths, maxDimension, newFrameProcessor(detector, null, null, null));
+    result.success(null);
+  }
+
+  private void cancelBatch(MethodCall call, MethodChannel.Result result) {
+    final Integer batchId = call.argument("batchId");
+    batchProcessor.cancel(batchId);
+    result.success(null);
+  }
+
+  private void openSession(MethodCall call, MethodChannel.Result result) {
+    final Integer handle = call.argument("handle");
+    final DetectorRegistry.Entry entry = getOrCreateDetector(call);
+
+    sessions.open(handle, entry.scheduler);
+    result.success(null);
+  }
+
+  private void closeSession(MethodCall call, MethodChannel.Result result) {
+    final Integer handle = call.argument("handle");
+    sessions.close(handle);
+    result.success(null);
+  }
+
+  private void cancelRequests(MethodCall call, MethodChannel.Result result) {
+    final Integer handle = call.argument("handle");
+    final Integer requestId = call.argument("requestId");
+    final DetectorRegistry.Entry entry = registry.get(handle);
+    if (entry != null) {
+      entry.scheduler.cancel(requestId);
+    }
+    result.success(null);
+  }
+
+  private void snapshotMetrics(MethodCall call, MethodChannel.Result result) {
+    final Integer handle = call.argument("handle");
+    final DetectorRegistry.Entry entry = registry.get(handle);
+    result.success(entry != null && entry.metrics != null ? entry.metrics.snapshot() : null);
+  }
+
+  /**
+   * Runs several detectors on one image and replies with their results in order.
+   *
+   * <p>Every detector entry is validated, and its detector opened, before anything is dispatched,
+   * so an invalid entry fails the call with a single error. The detectors are called directly:
+   * their per-handle drop policy, motion gate, delta results and metrics don't apply to pipeline
+   * calls.
+   */
+  private void processPipeline(MethodCall call, MethodChannel.Result result) {
+    final List<Map<String, Object>> detectorData = call.argument("detectors");
+    if (detectorData == null) {
+      result.error("MLVisionPipelineError", "No detectors given.", null);
+      return;
+    }
+
+    final List<Detector> detectors = new ArrayList<>(detectorData.size());
     try {
-      image = dataToVisionImage(imageData);
-    } catch (IOException exception) {
+      for (Map<String, Object> data : detectorData) {
+        final String type = (String) data.get("type");
+        final Integer handle = (Integer) data.get("handle");
+        if (type == null || handle == null) {
+          throw new IllegalArgumentException(String.format("Not a detector: %s", data));
+        }
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> options = (Map<String, Object>) data.get("options");
+        detectors.add(getOrCreateDetector(type, handle, options).detector);
+      }
+    } catch (IllegalArgumentException exception) {
+      result.error("MLVisionPipelineError", exception.getLocalizedMessage(), null);
+      return;
+    }
+
+    final Map<String, Object> imageData = call.arguments();
+    final RegionOfInterest region;
+    try {
+      region = regionOfInterest(imageData);
+    } catch (IOException | IllegalArgumentException exception) {
       result.error("MLVisionDetectorIOError", exception.getLocalizedMessage(), null);
       return;
     }
-    Detector detector = getDetector(call);
-    if (detector == null) {
-      switch (call.method.split("#")[0]) {
-        case "BarcodeDetector":
-          detector = new GMLKBarcodeDetector(options);
-          break;
-        case "FaceDetector":
-          detector = new GMLKFaceDetector(options);
-          break;
-        case "ImageLabeler":
-          detector = new GMLKImageLabeler(options);
-          break;
-        case "TextRecognizer":
-          detector = new GMLKTextRecognizer(options);
-          break;
+
+    final List<ByteBuffer> buffers = new ArrayList<>(1);
+    final InputImage image = decodeImage(imageData, region, buffers, result);
+    if (image == null) {
+      return;
+    }
+
+    // The image is decoded once and shared; ML Kit runs the detectors concurrently.
+    final CombinedResult combinedResult =
+        new CombinedResult(detectors.size(), new MainThreadResult(result));
+    final List<MethodChannel.Result> slots = new ArrayList<>(detectors.size());
+    for (int i = 0; i < detectors.size(); i++) {
+      slots.add(combinedResult.slot(i));
+    }
+    // The combined reply is sent on the first error, while other detectors may still read the
+    // image, so the buffers are released by the slots instead.
+    final List<MethodChannel.Result> slotResults =
+        FrameBufferPool.getInstance().releaseOnFinish(slots, buffers);
+    final CoordinateMapping mapping = region != null ? region.mapping : CoordinateMapping.IDENTITY;
+    for (int i = 0; i < detectors.size(); i++) {
+      detectors
+          .get(i)
+          .handleDetection(image, new DetectionContext(slotResults.get(i), null, null, mapping));
+    }
+  }
+
+  private DetectorRegistry.Entry getOrCreateDetector(MethodCall call) {
+    final Integer handle = call.argument("handle");
+    final Map<String, Object> options = call.argument("options");
+    return getOrCreateDetector(call.method.split("#")[0], handle, options);
+  }
+
+  private DetectorRegistry.Entry getOrCreateDetector(
+      String type, Integer handle, Map<String, Object> options) {
+    final DetectorRegistry.Entry existing = registry.get(handle);
+    if (existing != null) {
+      return existing;
+    }
+
+    final Detector detector;
+    switch (type) {
+      case "BarcodeDetector":
+        detector = new GMLKBarcodeDetector(options, executor);
+        break;
+      case "FaceDetector":
+        detector = new GMLKFaceDetector(options, executor);
+        break;
+      case "ImageLabeler":
+        detector = new GMLKImageLabeler(options, assets, executor);
+        break;
+      case "ObjectDetector":
+        detector = new GMLKObjectDetector(options, executor);
+        break;
+      case "TextRecognizer":
+        detector = new GMLKTextRecognizer(options, executor);
+        break;
+      default:
+        throw new IllegalArgumentException(String.format("No detector for type: %s", type));
+    }
+
+    final LeasedDetector leasedDetector = new LeasedDetector(detector);
+    final ProcessingOptions processingOptions = ProcessingOptions.parse(options);
+    final DeltaTracker deltaTracker =
+        processingOptions.deltaResults
+            ? new DeltaTracker(type, processingOptions.deltaMoveThreshold)
+            : null;
+    final DetectorMetrics detectorMetrics =
+        processingOptions.collectMetrics
+            ? new DetectorMetrics(type, processingOptions.traceSections)
+            : null;
+    final AdaptiveGovernor governor =
+        processingOptions.governor != null
+            ? new AdaptiveGovernor(
+                handle,
+                processingOptions.governor,
+                detector instanceof AdaptiveGovernor.ModeSwitch
+                    ? (AdaptiveGovernor.ModeSwitch) detector
+                    : null,
+                governorEvents)
+            : null;
+    final FrameScheduler scheduler =
+        new FrameScheduler(
+            processingOptions,
+            newFrameProcessor(
+                leasedDetector,
+                deltaTracker,
+                detectorMetrics,
+                MotionGate.parse(processingOptions.motionGate)),
+            detectorMetrics,
+            governor);
+
+    final DetectorRegistry.Entry entry =
+        registry.putIfAbsent(
+            handle, new DetectorRegistry.Entry(leasedDetector, scheduler, detectorMetrics));
+    if (entry.detector != leasedDetector) {
+      // Another thread registered the handle first; its detector is used instead.
+      closeQuietly(leasedDetector);
+    }
+    return entry;
+  }
+
+  private FrameScheduler.FrameProcessor newFrameProcessor(
+      final Detector detector,
+      @Nullable final DeltaTracker deltaTracker,
+      @Nullable final DetectorMetrics detectorMetrics,
+      @Nullable final MotionGate motionGate) {
+    return new FrameScheduler.FrameProcessor() {
+      @Override
+      public void process(
+          Map<String, Object> imageData,
+          DetectionRequest request,
+          MethodChannel.Result result) {
+        // Frames cancelled or past their deadline while waiting aren't decoded at all.
+        if (request.finishIfStale(result)) {
+          return;
+        }
+
+        // Frames of a static scene get the result of the last processed frame without decoding.
+        final MotionGate.CachedResult cachedResult =
+            motionGate != null ? motionGate.check(imageData) : null;
+        if (cachedResult != null) {
+          request.answerFromCache();
+          final MethodChannel.Result cachedReply =
+              deltaTracker != null ? deltaTracker.wrap(result) : new MainThreadResult(result);
+          cachedReply.success(cachedResult.value);
+          return;
+        }
+
+        final long decodeStartedAt =
+            detectorMetrics != null ? detectorMetrics.decodeStarted() : 0;
+        final RegionOfInterest region;
+        final InputImage image;
+        final List<ByteBuffer> buffers = new ArrayList<>(1);
+        try {
+          region = regionOfInterest(imageData);
+          image = decodeImage(imageData, region, buffers, result);
+        } catch (IOException | IllegalArgumentException exception) {
+          result.error("MLVisionDetectorIOError", exception.getLocalizedMessage(), null);
+          return;
+        } finally {
+          if (detectorMetrics != null) {
+            detectorMetrics.decodeFinished(decodeStartedAt);
+          }
+        }
+
+        if (image == null) {
+          return;
+        }
+
+        // Detectors complete their results from the executor; reply on the platform thread.
+        MethodChannel.Result detectionResult =
+            deltaTracker != null ? deltaTracker.wrap(result) : new MainThreadResult(result);
+        if (motionGate != null) {
+          // Cached in the coordinates of the whole frame.
+          detectionResult = motionGate.wrap(detectionResult);
+        }
+        if (!buffers.isEmpty()) {
+          detectionResult =
+              FrameBufferPool.getInstance().releaseOnFinish(detectionResult, buffers);
+        }
+        DetectorMetrics.TimedResult timer = null;
+        if (detectorMetrics != null) {
+          timer = detectorMetrics.timeDetection(detectionResult);
+          detectionResult = timer;
+        }
+        detector.handleDetection(
+            image,
+            new DetectionContext(
+                detectionResult,
+                request,
+                timer,
+                region != null ? region.mapping : CoordinateMapping.IDENTITY));
+      }
+    };
+  }
+
+  /**
+   * Decodes {@code imageData}, or replies to {@code result} with an error and returns null.
+   *
+   * <p>Pooled buffers the image was packed into are added to {@code buffers}; the caller releases
+   * them once ML Kit finished with the image. They are released right away if decoding failed.
+   */
+  @Nullable
+  private InputImage decodeImage(
+      Map<String, Object> imageData,
+      @Nullable RegionOfInterest region,
+      List<ByteBuffer> buffers,
+      MethodChannel.Result result) {
+    InputImage image = null;
+    try {
+      image = dataToVisionImage(imageData, region, buffers);
+    } catch (IOException exception) {
+      result.error("MLVisionDetectorIOError", exception.getLocalizedMessage(), null);
+      return null;
+    } finally {
+      if (image == null) {
+        FrameBufferPool.getInstance().releaseAll(buffers);
+      }
+    }
+
+    if (image == null) {
+      result.error("MLVisionDetectorIOError", "Unable to create image from bytes.", null);
+    }
+    return image;
+  }
+
+  @Nullable
+  private RegionOfInterest regionOfInterest(Map<String, Object> imageData) throws IOException {
+    if ("file".equals(imageData.get("type"))) {
+      final Integer maxDimension = (Integer) imageData.get("maxDimension");
+      final String imageFilePath = (String) imageData.get("path");
+      if (maxDimension == null || isContentUri(imageFilePath)) {
+        return null;
       }
 
-      final Integer handle = call.argument("handle");
-      addDetector(handle, detector);
+      final BitmapFactory.Options bounds = new BitmapFactory.Options();
+      bounds.inJustDecodeBounds = true;
+      BitmapFactory.decodeFile(imageFilePath, bounds);
+      if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+        throw new IOException(String.format("Unable to decode image file: %s", imageFilePath));
+      }
+
+      return RegionOfInterest.downscaled(
+          bounds.outWidth, bounds.outHeight, maxDimension, getImageExifOrientation(imageFilePath));
+    }
+
+    if (!"bytes".equals(imageData.get("type"))) {
+      return null;
     }
 
-    detector.handleDetection(image, result);
+    @SuppressWarnings("unchecked")
+    Map<String, Object> metadata = (Map<String, Object>) imageData.get("metadata");
+    return RegionOfInterest.parse(
+        metadata,
+        ((Double) metadata.get("width")).intValue(),
+        ((Double) metadata.get("height")).intValue(),
+        (int) metadata.get("rotation"));
   }
 
   private void closeDetector(final MethodCall call, final MethodChannel.Result result) {
-    final Detector detector = getDetector(call);
+    final Integer handle = call.argument("handle");
+    final DetectorRegistry.Entry entry = registry.remove(handle);
 
-    if (detector == null) {
-      final Integer handle = call.argument("handle");
+    if (entry == null) {
       final String message = String.format("Object for handle does not exists: %s", handle);
       throw new IllegalArgumentException(message);
     }
 
+    // Waiting frames are cancelled; frames already handed to ML Kit finish before the native
+    // detector is released, and are cancelled as well once it reports back.
+    sessions.close(handle);
+    entry.scheduler.cancel(null);
     try {
-      detector.close();
+      entry.detector.close();
       result.success(null);
     } catch (IOException e) {
-      final String code = String.format("%sIOError", detector.getClass().getSimpleName());
+      final String code =
+          String.format("%sIOError", entry.detector.delegate.getClass().getSimpleName());
       result.error(code, e.getLocalizedMessage(), null);
-    } finally {
-      final Integer handle = call.argument("handle");
-      detectors.remove(handle);
     }
   }
 
-  private InputImage dataToVisionImage(Map<String, Object> imageData) throws IOException {
+  /** Closes the detectors of every open handle, e.g. when the engine detaches. */
+  void closeAll() {
+    for (DetectorRegistry.Entry entry : registry.removeAll()) {
+      entry.scheduler.cancel(null);
+      closeQuietly(entry.detector);
+    }
+  }
+
+  private static void closeQuietly(Detector detector) {
+    try {
+      detector.close();
+    } catch (IOException exception) {
+      Log.w("GoogleMLVision", "Unable to close detector", exception);
+    }
+  }
+
+  private InputImage dataToVisionImage(
+      Map<String, Object> imageData,
+      @Nullable RegionOfInterest region,
+      List<ByteBuffer> buffers)
+      throws IOException {
     String imageType = (String) imageData.get("type");
     assert imageType != null;
 
     switch (imageType) {
       case "file":
         final String imageFilePath = (String) imageData.get("path");
+        if (isContentUri(imageFilePath)) {
+          // ML Kit resolves content URIs, e.g. from the gallery, and applies their orientation.
+          return InputImage.fromFilePath(this.applicationContext, Uri.parse(imageFilePath));
+        }
+
         final int rotation = getImageExifOrientation(imageFilePath);
 
+        if (region != null) {
+          return InputImage.fromBitmap(
+              decodeSampledBitmap(imageFilePath, region.outputWidth, region.outputHeight),
+              rotation);
+        }
+
         if (rotation == 0) {
           File file = new File(imageFilePath);
           return InputImage.fromFilePath(this.applicationContext, Uri.fromFile(file));
         }
 
-        Matrix matrix = new Matrix();
-        matrix.postRotate(rotation);
-
+        // ML Kit applies the orientation itself, so the pixels don't need a rotated copy.
         final Bitmap bitmap = BitmapFactory.decodeFile(imageFilePath);
-        final Bitmap rotatedBitmap =
-            Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (bitmap == null) {
+          throw new IOException(String.format("Unable to decode image file: %s", imageFilePath));
+        }
 
-        return InputImage.fromBitmap(rotatedBitmap, 0);
+        return InputImage.fromBitmap(bitmap, rotation);
       case "bytes":
         @SuppressWarnings("unchecked")
         Map<String, Object> metadata = (Map<String, Object>) imageData.get("metadata");
 
-
-        byte[] bytes = (byte[]) imageData.get("bytes");
-        assert bytes != null;
         Double width = (Double)metadata.get("width");
         int intWidth = width.intValue();
 
         Double height = (Double)metadata.get("height");
         int intHeight = height.intValue();
+
+        int frameRotation = (int) metadata.get("rotation");
+        Integer rawFormat = (Integer) metadata.get("rawFormat");
         try {
-          InputImage inputImage = InputImage.fromByteArray(bytes,intWidth,intHeight,(int)metadata.get("rotation"), 17); //842094169
-          return inputImage;
+          // Planes are byte arrays from the method channel, or pooled buffers from sessions.
+          @SuppressWarnings("unchecked")
+          List<Object> planes = (List<Object>) imageData.get("planes");
+          if (planes != null && region == null) {
+            return packedToVisionImage(
+                planesToYuv(planes, metadata, intWidth, intHeight, rawFormat),
+                new Rect(0, 0, intWidth, intHeight),
+                intWidth,
+                intHeight,
+                frameRotation,
+                buffers);
+          }
+
+          final Object data = imageData.get("bytes");
+          if (region != null) {
+            YuvConverter.Plane[] yuvPlanes;
+            if (planes != null) {
+              yuvPlanes = planesToYuv(planes, metadata, intWidth, intHeight, rawFormat);
+            } else if (rawFormat != null && rawFormat == ImageFormat.YV12) {
+              yuvPlanes = YuvConverter.fromYv12(toBuffer(data), intWidth, intHeight);
+            } else {
+              yuvPlanes = YuvConverter.fromNv21(toBuffer(data), intWidth, intHeight);
+            }
+            return packedToVisionImage(
+                yuvPlanes,
+                region.crop,
+                region.outputWidth,
+                region.outputHeight,
+                frameRotation,
+                buffers);
+          }
+
+          int format =
+              rawFormat != null && rawFormat == ImageFormat.YV12
+                  ? InputImage.IMAGE_FORMAT_YV12
+                  : InputImage.IMAGE_FORMAT_NV21;
+          assert data != null;
+          if (data instanceof byte[]) {
+            return InputImage.fromByteArray(
+                (byte[]) data, intWidth, intHeight, frameRotation, format);
+          }
+          return InputImage.fromByteBuffer(
+              (ByteBuffer) data, intWidth, intHeight, frameRotation, format);
         } catch(IllegalArgumentException exception) {
           Log.e("GoogleMLVision ", "exception:", exception);
-          return null;
+          // Replied as MLVisionDetectorIOError with the reason, e.g. a plane that is too small.
+          throw new IOException(exception.getLocalizedMessage(), exception);
         }
       default:
         throw new IllegalArgumentException(String.format("No image type for: %s", imageType));
     }
   }
 
+  /**
+   * Decodes the image file at {@code path} to exactly {@code width} x {@code height}.
+   *
+   * <p>The file is subsampled while decoding, so the full size image is never held in memory.
+   */
+  private static Bitmap decodeSampledBitmap(String path, int width, int height)
+      throws IOException {
+    final BitmapFactory.Options bounds = new BitmapFactory.Options();
+    bounds.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(path, bounds);
+
+    int sampleSize = 1;
+    while (bounds.outWidth / (sampleSize * 2) >= width
+        && bounds.outHeight / (sampleSize * 2) >= height) {
+      sampleSize *= 2;
+    }
+
+    final BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = sampleSize;
+    final Bitmap sampled = BitmapFactory.decodeFile(path, options);
+    if (sampled == null) {
+      throw new IOException(String.format("Unable to decode image file: %s", path));
+    }
+
+    if (sampled.getWidth() == width && sampled.getHeight() == height) {
+      return sampled;
+    }
+
+    final Bitmap scaled = Bitmap.createScaledBitmap(sampled, width, height, true);
+    if (scaled != sampled) {
+      sampled.recycle();
+    }
+    return scaled;
+  }
+
+  private YuvConverter.Plane[] planesToYuv(
+      List<Object> planes,
+      Map<String, Object> metadata,
+      int width,
+      int height,
+      Integer rawFormat) {
+    @SuppressWarnings("unchecked")
+    List<Map<String, Object>> planeData = (List<Map<String, Object>>) metadata.get("planeData");
+
+    if (rawFormat == null || rawFormat != ImageFormat.YUV_420_888) {
+      throw new IllegalArgumentException(
+          String.format("Unsupported planar image format: %s", rawFormat));
+    }
+
+    final List<ByteBuffer> buffers = new ArrayList<>(planes.size());
+    for (Object plane : planes) {
+      buffers.add(toBuffer(plane));
+    }
+    return YuvConverter.fromPlanes(buffers, planeData, width, height);
+  }
+
+  private static ByteBuffer toBuffer(Object data) {
+    return data instanceof ByteBuffer ? (ByteBuffer) data : ByteBuffer.wrap((byte[]) data);
+  }
+
+  private InputImage packedToVisionImage(
+      YuvConverter.Plane[] planes,
+      Rect crop,
+      int width,
+      int height,
+      int rotation,
+      List<ByteBuffer> buffers) {
+    // ML Kit only accepts packed NV21/YV12 buffers, so strip the row padding, crop and scale, and
+    // interleave the chroma planes straight into a pooled direct buffer.
+    final ByteBuffer buffer =
+        FrameBufferPool.getInstance().acquire(YuvConverter.nv21Size(width, height));
+    buffers.add(buffer);
+    YuvConverter.toNv21(planes, crop, width, height, buffer);
+    buffer.flip();
+
+    return InputImage.fromByteBuffer(
+        buffer, width, height, rotation, InputImage.IMAGE_FORMAT_NV21);
+  }
+
+  private static boolean isContentUri(String path) {
+    return path.startsWith("content://");
+  }
+
   private int getImageExifOrientation(String imageFilePath) throws IOException {
     ExifInterface exif = new ExifInterface(imageFilePath);
     int orientation =
@@ -165,17 +720,4 @@ class MlVisionHandler implements MethodCallHandler {
         return 0;
     }
   }
-
-  private void addDetector(final int handle, final Detector detector) {
-    if (detectors.get(handle) != null) {
-      final String message = String.format("Object for handle already exists: %s", handle);
-      throw new IllegalArgumentException(message);
-    }
-    detectors.put(handle, detector);
-  }
-
-  private Detector getDetector(final MethodCall call) {
-    final Integer handle = call.argument("handle");
-    return detectors.get(handle);
-  }
 }
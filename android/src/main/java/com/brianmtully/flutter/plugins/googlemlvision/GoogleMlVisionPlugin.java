@@ -3,14 +3,22 @@
 // found in the LICENSE file.
 package com.brianmtully.flutter.plugins.googlemlvision;
 
+        import android.util.Log;
         import androidx.annotation.NonNull;
 
         import io.flutter.embedding.engine.plugins.FlutterPlugin;
+        import io.flutter.plugin.common.BasicMessageChannel;
+        import io.flutter.plugin.common.BinaryCodec;
+        import io.flutter.plugin.common.EventChannel;
         import io.flutter.plugin.common.MethodCall;
         import io.flutter.plugin.common.MethodChannel;
         import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
         import io.flutter.plugin.common.MethodChannel.Result;
         import io.flutter.plugin.common.PluginRegistry.Registrar;
+        import java.io.IOException;
+        import java.nio.ByteBuffer;
+        import java.util.concurrent.ExecutorService;
+        import java.util.concurrent.Executors;
 
 /** FlutterPlugindExamplePlugin */
 public class GoogleMlVisionPlugin implements FlutterPlugin {
@@ -19,18 +27,69 @@ public class GoogleMlVisionPlugin implements FlutterPlugin {
   /// This local reference serves to register the plugin with the Flutter Engine and unregister it
   /// when the Flutter Engine is detached from the Activity
   private MethodChannel channel;
+  private EventChannel batchChannel;
+  private BasicMessageChannel<ByteBuffer> frameChannel;
+  private EventChannel sessionChannel;
+  private EventChannel governorChannel;
+  private ExecutorService executor;
+  private ExecutorService decodeExecutor;
+  private MlVisionHandler handler;
 
   @Override
   public void onAttachedToEngine(@NonNull FlutterPluginBinding flutterPluginBinding) {
     channel = new MethodChannel(flutterPluginBinding.getBinaryMessenger(), "plugins.flutter.brianmtully.com/google_ml_vision");
 
-    channel.setMethodCallHandler(new MlVisionHandler(flutterPluginBinding.getApplicationContext()));
+    // ML Kit results are converted to channel messages on these threads instead of the main thread.
+    final int processors = Runtime.getRuntime().availableProcessors();
+    executor = Executors.newFixedThreadPool(processors);
+
+    // Batch images are read from files with blocking calls; these keep them off the threads above.
+    decodeExecutor = Executors.newFixedThreadPool(processors);
+
+    final BatchProcessor batchProcessor = new BatchProcessor(decodeExecutor, processors);
+    batchChannel = new EventChannel(flutterPluginBinding.getBinaryMessenger(), "plugins.flutter.brianmtully.com/google_ml_vision/batch");
+    batchChannel.setStreamHandler(batchProcessor);
+
+    // Session frames and results bypass the method channel's per-call reply.
+    final DetectionSessions sessions = new DetectionSessions();
+    frameChannel = new BasicMessageChannel<>(flutterPluginBinding.getBinaryMessenger(), "plugins.flutter.brianmtully.com/google_ml_vision/frames", BinaryCodec.INSTANCE);
+    frameChannel.setMessageHandler(sessions);
+    sessionChannel = new EventChannel(flutterPluginBinding.getBinaryMessenger(), "plugins.flutter.brianmtully.com/google_ml_vision/sessions");
+    sessionChannel.setStreamHandler(sessions);
+
+    final GovernorEvents governorEvents = new GovernorEvents();
+    governorChannel = new EventChannel(flutterPluginBinding.getBinaryMessenger(), "plugins.flutter.brianmtully.com/google_ml_vision/governor");
+    governorChannel.setStreamHandler(governorEvents);
+
+    handler =
+        new MlVisionHandler(
+            flutterPluginBinding.getApplicationContext(),
+            flutterPluginBinding.getFlutterAssets(),
+            executor,
+            batchProcessor,
+            sessions,
+            governorEvents);
+    channel.setMethodCallHandler(handler);
   }
 
 
   @Override
   public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
     channel.setMethodCallHandler(null);
+    batchChannel.setStreamHandler(null);
+    frameChannel.setMessageHandler(null);
+    sessionChannel.setStreamHandler(null);
+    governorChannel.setStreamHandler(null);
+    // Handles left open by the engine release their pooled clients, then the clients cached for
+    // reopened handles are closed as nobody can reopen them anymore.
+    handler.closeAll();
+    try {
+      DetectorPool.getInstance().closeIdle();
+    } catch (IOException exception) {
+      Log.w("GoogleMLVision", "Unable to close detector", exception);
+    }
+    decodeExecutor.shutdown();
+    executor.shutdown();
   }
 }
 
@@ -0,0 +1,35 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.EventChannel;
+import java.util.Map;
+
+/**
+ * Sends the decisions of every handle's {@link AdaptiveGovernor} over an {@link EventChannel}.
+ *
+ * <p>Decisions made while Dart isn't listening are not kept. Only used from the main thread.
+ */
+class GovernorEvents implements EventChannel.StreamHandler, AdaptiveGovernor.Listener {
+  @Nullable private EventChannel.EventSink events;
+
+  @Override
+  public void onListen(Object arguments, EventChannel.EventSink events) {
+    this.events = events;
+  }
+
+  @Override
+  public void onCancel(Object arguments) {
+    events = null;
+  }
+
+  @Override
+  public void onDecision(Map<String, Object> decision) {
+    if (events != null) {
+      events.success(decision);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.util.Log;
+import com.google.mlkit.vision.common.InputImage;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A detector whose native resources outlive {@link #close()} until its last detection completed.
+ *
+ * <p>Every detection holds a lease for as long as ML Kit may still call back, so closing the handle
+ * never releases a client that is still in use. Detections started after closing fail with {@link
+ * #CLOSED_ERROR_CODE}. Leases are taken with a compare-and-set, so detections on any thread don't
+ * contend on a lock.
+ */
+class LeasedDetector implements Detector {
+  static final String CLOSED_ERROR_CODE = "MLVisionDetectorClosed";
+
+  private static final String TAG = "GoogleMLVision";
+
+  final Detector delegate;
+  // One reference held until close, plus one per detection in flight.
+  private final AtomicInteger references = new AtomicInteger(1);
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+
+  LeasedDetector(Detector delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void handleDetection(InputImage image, DetectionContext context) {
+    if (!acquire()) {
+      context.error(CLOSED_ERROR_CODE, "Detector was closed.", null);
+      return;
+    }
+
+    try {
+      delegate.handleDetection(image, context.withLease(this));
+    } catch (RuntimeException exception) {
+      release();
+      throw exception;
+    }
+  }
+
+  /**
+   * Stops new detections and releases the native resources, right away if no detection is in
+   * flight or otherwise once the last one completed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+    if (references.decrementAndGet() == 0) {
+      delegate.close();
+    }
+  }
+
+  private boolean acquire() {
+    while (true) {
+      final int count = references.get();
+      if (count == 0) {
+        return false;
+      }
+      if (references.compareAndSet(count, count + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /** Returns the lease of a detection, once its {@link DetectionContext} was answered. */
+  void release() {
+    if (references.decrementAndGet() != 0) {
+      return;
+    }
+
+    // The handle was closed while this detection was in flight; finish closing it here.
+    try {
+      delegate.close();
+    } catch (IOException exception) {
+      Log.w(TAG, "Unable to close detector", exception);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.MethodChannel;
+
+/** Delivers a {@link MethodChannel.Result} on the main looper, whatever thread completes it. */
+class MainThreadResult implements MethodChannel.Result {
+  private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+  private final MethodChannel.Result result;
+  private final Handler handler;
+  private final Thread mainThread;
+  private final boolean queued;
+
+  MainThreadResult(MethodChannel.Result result) {
+    this(result, MAIN_HANDLER, Looper.getMainLooper().getThread(), false);
+  }
+
+  /** Delivers replies through {@code handler}, which runs them on {@code mainThread}. */
+  MainThreadResult(
+      MethodChannel.Result result, Handler handler, Thread mainThread, boolean queued) {
+    this.result = result;
+    this.handler = handler;
+    this.mainThread = mainThread;
+    this.queued = queued;
+  }
+
+  /**
+   * Returns a result that posts its reply to the main looper even when completed on the main
+   * thread, so replies arrive in the order they were made from any thread.
+   */
+  static MainThreadResult queued(MethodChannel.Result result) {
+    return new MainThreadResult(result, MAIN_HANDLER, Looper.getMainLooper().getThread(), true);
+  }
+
+  @Override
+  public void success(@Nullable final Object value) {
+    post(
+        new Runnable() {
+          @Override
+          public void run() {
+            result.success(value);
+          }
+        });
+  }
+
+  @Override
+  public void error(
+      final String errorCode,
+      @Nullable final String errorMessage,
+      @Nullable final Object errorDetails) {
+    post(
+        new Runnable() {
+          @Override
+          public void run() {
+            result.error(errorCode, errorMessage, errorDetails);
+          }
+        });
+  }
+
+  @Override
+  public void notImplemented() {
+    post(
+        new Runnable() {
+          @Override
+          public void run() {
+            result.notImplemented();
+          }
+        });
+  }
+
+  private void post(Runnable runnable) {
+    if (!queued && Thread.currentThread() == mainThread) {
+      runnable.run();
+    } else {
+      handler.post(runnable);
+    }
+  }
+}
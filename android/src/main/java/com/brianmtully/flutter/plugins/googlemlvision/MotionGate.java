@@ -0,0 +1,201 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.MethodChannel;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers frames that barely differ from the last processed frame with that frame's result,
+ * configured by Dart as {@code options["processing"]["motionGate"]}.
+ *
+ * <p>Frames are compared on a grid of at most {@link #GRID_SIZE} x {@link #GRID_SIZE} samples of
+ * their luma plane, by the mean absolute difference of the samples. Comparing against the last
+ * processed frame rather than the previous one means slow changes still add up to a processed
+ * frame. Only camera frames are gated; image files are always processed. Frames are only compared
+ * to a reference of the same size, rotation, region of interest and scale, as the cached result
+ * depends on those.
+ */
+class MotionGate {
+  static final int GRID_SIZE = 64;
+
+  // Same as MotionGateOptions.threshold in Dart.
+  private static final double DEFAULT_THRESHOLD = 2.0;
+
+  /** A frame that wasn't processed, with the result of the last processed frame. */
+  static final class CachedResult {
+    @Nullable final Object value;
+
+    CachedResult(@Nullable Object value) {
+      this.value = value;
+    }
+  }
+
+  private final double threshold;
+  private final int maxSkippedFrames;
+
+  // Luma samples of the last processed frame.
+  @Nullable private byte[] reference;
+  // The metadata of the last processed frame its result depends on.
+  @Nullable private List<Object> referenceKey;
+  private int generation = 0;
+  private boolean hasResult = false;
+  @Nullable private Object result;
+  private int skipped = 0;
+
+  private MotionGate(double threshold, int maxSkippedFrames) {
+    this.threshold = threshold;
+    this.maxSkippedFrames = maxSkippedFrames;
+  }
+
+  /** Returns the gate configured by {@code motionGate}, or null if it isn't enabled. */
+  @Nullable
+  static MotionGate parse(@Nullable Map<String, Object> motionGate) {
+    if (motionGate == null) {
+      return null;
+    }
+    final Double threshold = (Double) motionGate.get("threshold");
+    final Integer maxSkippedFrames = (Integer) motionGate.get("maxSkippedFrames");
+    return new MotionGate(
+        threshold != null ? threshold : DEFAULT_THRESHOLD,
+        maxSkippedFrames != null ? maxSkippedFrames : 0);
+  }
+
+  /**
+   * Returns the result of the last processed frame if {@code imageData} barely differs from it.
+   * Otherwise returns null and the frame becomes the one later frames are compared to; its result
+   * is cached by the result returned from {@link #wrap}.
+   */
+  @Nullable
+  synchronized CachedResult check(Map<String, Object> imageData) {
+    final byte[] samples = sample(imageData);
+    if (samples == null) {
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> metadata = (Map<String, Object>) imageData.get("metadata");
+    final List<Object> key =
+        Arrays.asList(
+            metadata.get("width"),
+            metadata.get("height"),
+            metadata.get("rotation"),
+            metadata.get("regionOfInterest"),
+            metadata.get("scale"));
+    if (hasResult
+        && reference != null
+        && key.equals(referenceKey)
+        && (maxSkippedFrames == 0 || skipped < maxSkippedFrames)
+        && meanDifference(samples, reference) < threshold) {
+      skipped++;
+      return new CachedResult(result);
+    }
+
+    reference = samples;
+    referenceKey = key;
+    generation++;
+    hasResult = false;
+    result = null;
+    skipped = 0;
+    return null;
+  }
+
+  /** Wraps the result of the frame last passed to {@link #check} to cache its successful result. */
+  synchronized MethodChannel.Result wrap(final MethodChannel.Result result) {
+    final int frameGeneration = generation;
+    return new MethodChannel.Result() {
+      @Override
+      public void success(@Nullable Object value) {
+        cache(frameGeneration, value);
+        result.success(value);
+      }
+
+      @Override
+      public void error(
+          String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+        result.error(errorCode, errorMessage, errorDetails);
+      }
+
+      @Override
+      public void notImplemented() {
+        result.notImplemented();
+      }
+    };
+  }
+
+  private synchronized void cache(int frameGeneration, @Nullable Object value) {
+    // A later frame was processed meanwhile and will replace the result.
+    if (frameGeneration != generation) {
+      return;
+    }
+    hasResult = true;
+    result = value;
+  }
+
+  /** Samples the luma plane of a camera frame, or returns null for other images. */
+  @Nullable
+  private static byte[] sample(Map<String, Object> imageData) {
+    if (!"bytes".equals(imageData.get("type"))) {
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> metadata = (Map<String, Object>) imageData.get("metadata");
+    final int width = ((Double) metadata.get("width")).intValue();
+    final int height = ((Double) metadata.get("height")).intValue();
+
+    // NV21 and YV12 frames start with the luma plane, one byte per pixel without row padding.
+    Object luma = imageData.get("bytes");
+    int bytesPerRow = width;
+    @SuppressWarnings("unchecked")
+    final List<Object> planes = (List<Object>) imageData.get("planes");
+    if (planes != null) {
+      luma = planes.get(0);
+      @SuppressWarnings("unchecked")
+      final List<Map<String, Object>> planeData =
+          (List<Map<String, Object>>) metadata.get("planeData");
+      final Integer planeBytesPerRow =
+          planeData != null && !planeData.isEmpty()
+              ? (Integer) planeData.get(0).get("bytesPerRow")
+              : null;
+      if (planeBytesPerRow != null) {
+        bytesPerRow = planeBytesPerRow;
+      }
+    }
+    if (luma == null) {
+      return null;
+    }
+    final ByteBuffer buffer =
+        luma instanceof ByteBuffer ? (ByteBuffer) luma : ByteBuffer.wrap((byte[]) luma);
+    if (buffer.remaining() < (long) (height - 1) * bytesPerRow + width) {
+      // Left to the decoder to report.
+      return null;
+    }
+
+    final int columns = Math.min(GRID_SIZE, width);
+    final int rows = Math.min(GRID_SIZE, height);
+    final byte[] samples = new byte[columns * rows];
+    final int start = buffer.position();
+    for (int row = 0; row < rows; row++) {
+      final int rowStart = start + (row * height / rows) * bytesPerRow;
+      for (int column = 0; column < columns; column++) {
+        samples[row * columns + column] = buffer.get(rowStart + column * width / columns);
+      }
+    }
+    return samples;
+  }
+
+  private static double meanDifference(byte[] a, byte[] b) {
+    long sum = 0;
+    for (int i = 0; i < a.length; i++) {
+      sum += Math.abs((a[i] & 0xff) - (b[i] & 0xff));
+    }
+    return (double) sum / a.length;
+  }
+}
@@ -0,0 +1,74 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import androidx.annotation.Nullable;
+import java.util.Collections;
+import java.util.Map;
+
+/** Per-handle processing options sent by Dart as {@code options["processing"]}. */
+class ProcessingOptions {
+  final FrameScheduler.Policy dropPolicy;
+  final int maxPendingFrames;
+  final boolean compactResults;
+  final boolean deltaResults;
+  final double deltaMoveThreshold;
+  final boolean collectMetrics;
+  final boolean traceSections;
+  @Nullable final Map<String, Object> governor;
+  @Nullable final Map<String, Object> motionGate;
+
+  private ProcessingOptions(Map<String, Object> processing) {
+    dropPolicy = parsePolicy((String) processing.get("dropPolicy"));
+
+    Integer maxPending = (Integer) processing.get("maxPendingFrames");
+    maxPendingFrames = maxPending == null ? 1 : Math.max(1, maxPending);
+
+    deltaResults = Boolean.TRUE.equals(processing.get("deltaResults"));
+    Double moveThreshold = (Double) processing.get("deltaMoveThreshold");
+    deltaMoveThreshold = moveThreshold == null ? 0 : moveThreshold;
+
+    collectMetrics = Boolean.TRUE.equals(processing.get("collectMetrics"));
+    traceSections = Boolean.TRUE.equals(processing.get("traceSections"));
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> governorOptions = (Map<String, Object>) processing.get("governor");
+    governor = governorOptions;
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> motionGateOptions = (Map<String, Object>) processing.get("motionGate");
+    motionGate = motionGateOptions;
+
+    // Deltas are computed on the standard map results.
+    compactResults = !deltaResults && "compact".equals(processing.get("resultEncoding"));
+  }
+
+  static ProcessingOptions parse(@Nullable Map<String, Object> options) {
+    @SuppressWarnings("unchecked")
+    Map<String, Object> processing =
+        options == null ? null : (Map<String, Object>) options.get("processing");
+    return new ProcessingOptions(
+        processing != null ? processing : Collections.<String, Object>emptyMap());
+  }
+
+  private static FrameScheduler.Policy parsePolicy(@Nullable String policy) {
+    if (policy == null) {
+      return FrameScheduler.Policy.NONE;
+    }
+
+    switch (policy) {
+      case "none":
+        return FrameScheduler.Policy.NONE;
+      case "keepLatest":
+        return FrameScheduler.Policy.KEEP_LATEST;
+      case "boundedQueue":
+        return FrameScheduler.Policy.BOUNDED_QUEUE;
+      case "rejectWhenBusy":
+        return FrameScheduler.Policy.REJECT_WHEN_BUSY;
+      default:
+        throw new IllegalArgumentException("Not a frame drop policy: " + policy);
+    }
+  }
+}
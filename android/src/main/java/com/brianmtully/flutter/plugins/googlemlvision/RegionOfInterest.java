@@ -0,0 +1,135 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.graphics.Rect;
+import androidx.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * The part of a frame handed to a detector, sent by Dart as {@code metadata["regionOfInterest"]}
+ * and {@code metadata["scale"]}, or the downscaled size of an image file.
+ *
+ * <p>The region is given in the coordinates of the unrotated frame buffer. Detection results are
+ * mapped back with {@link #mapping} so they read as if the whole frame had been processed.
+ */
+class RegionOfInterest {
+  /** The cropped area of the frame buffer. */
+  final Rect crop;
+
+  final int outputWidth;
+  final int outputHeight;
+
+  /** Maps coordinates in the detector's image back to the frame. */
+  final CoordinateMapping mapping;
+
+  private RegionOfInterest(
+      Rect crop, int outputWidth, int outputHeight, int frameWidth, int frameHeight, int rotation) {
+    this.crop = crop;
+    this.outputWidth = outputWidth;
+    this.outputHeight = outputHeight;
+
+    final double bufferFactorX = (double) crop.width() / outputWidth;
+    final double bufferFactorY = (double) crop.height() / outputHeight;
+    final double factorX;
+    final double factorY;
+    final double offsetX;
+    final double offsetY;
+
+    // Results are reported in the rotated image, so the buffer axes swap for 90 and 270 degrees.
+    switch (rotation) {
+      case 90:
+        factorX = bufferFactorY;
+        factorY = bufferFactorX;
+        offsetX = frameHeight - crop.bottom;
+        offsetY = crop.left;
+        break;
+      case 180:
+        factorX = bufferFactorX;
+        factorY = bufferFactorY;
+        offsetX = frameWidth - crop.right;
+        offsetY = frameHeight - crop.bottom;
+        break;
+      case 270:
+        factorX = bufferFactorY;
+        factorY = bufferFactorX;
+        offsetX = crop.top;
+        offsetY = frameWidth - crop.right;
+        break;
+      default:
+        factorX = bufferFactorX;
+        factorY = bufferFactorY;
+        offsetX = crop.left;
+        offsetY = crop.top;
+    }
+    mapping = new CoordinateMapping(factorX, factorY, offsetX, offsetY);
+  }
+
+  /** Returns the region for {@code metadata}, or null when the whole frame is processed as is. */
+  @Nullable
+  static RegionOfInterest parse(
+      Map<String, Object> metadata, int frameWidth, int frameHeight, int rotation) {
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> region = (Map<String, Object>) metadata.get("regionOfInterest");
+    final Double scale = (Double) metadata.get("scale");
+    if (region == null && (scale == null || scale >= 1)) {
+      return null;
+    }
+
+    // NV21 subsamples chroma by two, so the crop keeps even bounds.
+    final Rect crop = new Rect(0, 0, frameWidth, frameHeight);
+    if (region != null) {
+      final int left = even(value(region, "left"));
+      final int top = even(value(region, "top"));
+      final int right = even(value(region, "left") + value(region, "width") + 1);
+      final int bottom = even(value(region, "top") + value(region, "height") + 1);
+      if (!crop.intersect(left, top, right, bottom) || crop.isEmpty()) {
+        throw new IllegalArgumentException(
+            String.format("Region of interest is outside the frame: %s", region));
+      }
+    }
+
+    final double factor = scale == null ? 1 : Math.min(1, scale);
+    if (factor <= 0) {
+      throw new IllegalArgumentException(String.format("Not a scale: %s", scale));
+    }
+    final int outputWidth = Math.max(2, even(crop.width() * factor));
+    final int outputHeight = Math.max(2, even(crop.height() * factor));
+
+    return new RegionOfInterest(
+        crop, outputWidth, outputHeight, frameWidth, frameHeight, rotation);
+  }
+
+  /**
+   * Returns the downscaled size of a {@code width} x {@code height} image whose longer side is
+   * limited to {@code maxDimension}, or null when it already fits.
+   */
+  @Nullable
+  static RegionOfInterest downscaled(int width, int height, int maxDimension, int rotation) {
+    if (maxDimension <= 0) {
+      throw new IllegalArgumentException(String.format("Not a max dimension: %s", maxDimension));
+    }
+    if (Math.max(width, height) <= maxDimension) {
+      return null;
+    }
+
+    final double factor = (double) maxDimension / Math.max(width, height);
+    return new RegionOfInterest(
+        new Rect(0, 0, width, height),
+        Math.max(1, (int) Math.round(width * factor)),
+        Math.max(1, (int) Math.round(height * factor)),
+        width,
+        height,
+        rotation);
+  }
+
+  private static int even(double value) {
+    return ((int) value) & ~1;
+  }
+
+  private static double value(Map<String, Object> region, String key) {
+    return ((Number) region.get(key)).doubleValue();
+  }
+}
@@ -0,0 +1,315 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.text.TextUtils;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts recognized text to channel messages, applying the granularity and geometric filters.
+ *
+ * <p>The text tree is read through {@link Tree} and {@link Container}, so the conversion doesn't
+ * depend on ML Kit types and also runs on plain JVM fixtures, see the benchmark module.
+ *
+ * <p>Text is only sent at the finest level written, as the coarser levels join the text of their
+ * children; Dart joins them back. With {@code textAtEveryLevel} it is sent at every level instead.
+ *
+ * @param <T> the recognized text
+ * @param <B> a text block
+ * @param <L> a line of a block
+ * @param <E> an element of a line
+ */
+class TextMarshaller<T, B, L, E> {
+  // Same order as TextGranularity in Dart; each level includes the ones before it.
+  static final int GRANULARITY_TEXT = 0;
+  static final int GRANULARITY_BLOCKS = 1;
+  static final int GRANULARITY_LINES = 2;
+  static final int GRANULARITY_ELEMENTS = 3;
+
+  /** Navigates from the recognized text down to its elements. */
+  interface Tree<T, B, L, E> {
+    String text(T text);
+
+    List<B> blocks(T text);
+
+    List<L> lines(B block);
+
+    List<E> elements(L line);
+  }
+
+  /** Reads a block, line or element. */
+  interface Container<C> {
+    @Nullable
+    Rect boundingBox(C container);
+
+    @Nullable
+    Point[] cornerPoints(C container);
+
+    @Nullable
+    String language(C container);
+
+    String text(C container);
+  }
+
+  private final Tree<T, B, L, E> tree;
+  private final Container<B> blockContainer;
+  private final Container<L> lineContainer;
+  private final Container<E> elementContainer;
+  private final int granularity;
+  private final boolean textAtEveryLevel;
+  // Containers smaller than this or centered outside the region are left out with their children.
+  private final double minTextHeight;
+  @Nullable private final RectF region;
+
+  TextMarshaller(
+      Tree<T, B, L, E> tree,
+      Container<B> blockContainer,
+      Container<L> lineContainer,
+      Container<E> elementContainer,
+      int granularity,
+      boolean textAtEveryLevel,
+      double minTextHeight,
+      @Nullable RectF region) {
+    this.tree = tree;
+    this.blockContainer = blockContainer;
+    this.lineContainer = lineContainer;
+    this.elementContainer = elementContainer;
+    this.granularity = granularity;
+    this.textAtEveryLevel = textAtEveryLevel;
+    this.minTextHeight = minTextHeight;
+    this.region = region;
+  }
+
+  static int parseGranularity(@Nullable String granularity) {
+    if (granularity == null) {
+      return GRANULARITY_ELEMENTS;
+    }
+
+    switch (granularity) {
+      case "text":
+        return GRANULARITY_TEXT;
+      case "blocks":
+        return GRANULARITY_BLOCKS;
+      case "lines":
+        return GRANULARITY_LINES;
+      case "elements":
+        return GRANULARITY_ELEMENTS;
+      default:
+        throw new IllegalArgumentException("Not a text granularity: " + granularity);
+    }
+  }
+
+  @Nullable
+  static RectF parseRegion(@Nullable Map<String, Object> region) {
+    if (region == null) {
+      return null;
+    }
+
+    final float left = ((Double) region.get("left")).floatValue();
+    final float top = ((Double) region.get("top")).floatValue();
+    return new RectF(
+        left,
+        top,
+        left + ((Double) region.get("width")).floatValue(),
+        top + ((Double) region.get("height")).floatValue());
+  }
+
+  /** Converts {@code text}, mapping its coordinates with {@code mapping}. */
+  Map<String, Object> toMap(T text, CoordinateMapping mapping) {
+    List<B> blocks = keptBlocks(text);
+    Map<String, Object> visionTextData = new HashMap<>();
+    if (hasText(GRANULARITY_TEXT)) {
+      visionTextData.put("text", keptText(text, blocks));
+    }
+
+    final boolean blockText = hasText(GRANULARITY_BLOCKS);
+    final boolean lineText = hasText(GRANULARITY_LINES);
+    List<Map<String, Object>> allBlockData = new ArrayList<>(blocks.size());
+    for (B block : blocks) {
+      Map<String, Object> blockData = containerData(blockContainer, block, blockText, mapping);
+
+      List<L> lines = keptLines(block);
+      List<Map<String, Object>> allLineData = new ArrayList<>(lines.size());
+      for (L line : lines) {
+        Map<String, Object> lineData = containerData(lineContainer, line, lineText, mapping);
+
+        List<E> elements = keptElements(line);
+        List<Map<String, Object>> allElementData = new ArrayList<>(elements.size());
+        for (E element : elements) {
+          allElementData.add(containerData(elementContainer, element, true, mapping));
+        }
+        lineData.put("elements", allElementData);
+        allLineData.add(lineData);
+      }
+      blockData.put("lines", allLineData);
+      allBlockData.add(blockData);
+    }
+
+    visionTextData.put("blocks", allBlockData);
+    return visionTextData;
+  }
+
+  byte[] encodeCompact(T text, CoordinateMapping mapping) {
+    CompactResultWriter writer = new CompactResultWriter(CompactResultWriter.KIND_TEXT, mapping);
+    List<B> blocks = keptBlocks(text);
+    writer.putString(hasText(GRANULARITY_TEXT) ? keptText(text, blocks) : null);
+
+    final boolean blockText = hasText(GRANULARITY_BLOCKS);
+    final boolean lineText = hasText(GRANULARITY_LINES);
+    writer.putInt(blocks.size());
+    for (B block : blocks) {
+      putContainer(writer, blockContainer, block, blockText);
+
+      List<L> lines = keptLines(block);
+      writer.putInt(lines.size());
+      for (L line : lines) {
+        putContainer(writer, lineContainer, line, lineText);
+
+        List<E> elements = keptElements(line);
+        writer.putInt(elements.size());
+        for (E element : elements) {
+          putContainer(writer, elementContainer, element, true);
+        }
+      }
+    }
+    return writer.toByteArray();
+  }
+
+  /** Whether text is sent at {@code level}, one of the granularities. */
+  private boolean hasText(int level) {
+    return textAtEveryLevel || level == granularity;
+  }
+
+  private boolean isFiltered() {
+    return minTextHeight > 0 || region != null;
+  }
+
+  /** Whether a container with {@code boundingBox} passes the size and region filters. */
+  private boolean keep(@Nullable Rect boundingBox) {
+    if (boundingBox == null) {
+      return true;
+    }
+    if (boundingBox.height() < minTextHeight) {
+      return false;
+    }
+    return region == null
+        || region.contains(boundingBox.exactCenterX(), boundingBox.exactCenterY());
+  }
+
+  private List<B> keptBlocks(T text) {
+    if (granularity < GRANULARITY_BLOCKS) {
+      return Collections.emptyList();
+    }
+    return filteredBlocks(text);
+  }
+
+  private List<B> filteredBlocks(T text) {
+    if (!isFiltered()) {
+      return tree.blocks(text);
+    }
+
+    final List<B> kept = new ArrayList<>();
+    for (B block : tree.blocks(text)) {
+      if (keep(blockContainer.boundingBox(block))) {
+        kept.add(block);
+      }
+    }
+    return kept;
+  }
+
+  private List<L> keptLines(B block) {
+    if (granularity < GRANULARITY_LINES) {
+      return Collections.emptyList();
+    }
+    if (!isFiltered()) {
+      return tree.lines(block);
+    }
+
+    final List<L> kept = new ArrayList<>();
+    for (L line : tree.lines(block)) {
+      if (keep(lineContainer.boundingBox(line))) {
+        kept.add(line);
+      }
+    }
+    return kept;
+  }
+
+  private List<E> keptElements(L line) {
+    if (granularity < GRANULARITY_ELEMENTS) {
+      return Collections.emptyList();
+    }
+    if (!isFiltered()) {
+      return tree.elements(line);
+    }
+
+    final List<E> kept = new ArrayList<>();
+    for (E element : tree.elements(line)) {
+      if (keep(elementContainer.boundingBox(element))) {
+        kept.add(element);
+      }
+    }
+    return kept;
+  }
+
+  /** The full text, or the text of the kept blocks when filtering. */
+  private String keptText(T text, List<B> blocks) {
+    if (!isFiltered()) {
+      return tree.text(text);
+    }
+
+    // ML Kit separates blocks with a newline as well.
+    final List<B> textBlocks = granularity < GRANULARITY_BLOCKS ? filteredBlocks(text) : blocks;
+    final List<String> texts = new ArrayList<>(textBlocks.size());
+    for (B block : textBlocks) {
+      texts.add(blockContainer.text(block));
+    }
+    return TextUtils.join("\n", texts);
+  }
+
+  private static <C> void putContainer(
+      CompactResultWriter writer, Container<C> reader, C container, boolean withText) {
+    writer.putRect(reader.boundingBox(container));
+    writer.putPoints(reader.cornerPoints(container));
+    writer.putString(reader.language(container));
+    writer.putString(withText ? reader.text(container) : null);
+  }
+
+  private static <C> Map<String, Object> containerData(
+      Container<C> reader, C container, boolean withText, CoordinateMapping mapping) {
+    Map<String, Object> addTo = new HashMap<>();
+
+    Rect boundingBox = reader.boundingBox(container);
+    if (boundingBox != null) {
+      mapping.putRect(boundingBox, addTo);
+    }
+
+    Point[] cornerPoints = reader.cornerPoints(container);
+    List<double[]> points = new ArrayList<>();
+    if (cornerPoints != null) {
+      for (Point point : cornerPoints) {
+        points.add(mapping.point(point.x, point.y));
+      }
+    }
+    addTo.put("points", points);
+
+    List<Map<String, Object>> allLanguageData = new ArrayList<>();
+    Map<String, Object> languageData = new HashMap<>();
+    languageData.put("languageCode", reader.language(container));
+    allLanguageData.add(languageData);
+    addTo.put("recognizedLanguages", allLanguageData);
+    if (withText) {
+      addTo.put("text", reader.text(container));
+    }
+    return addTo;
+  }
+}
@@ -0,0 +1,240 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.graphics.PointF;
+import android.graphics.Rect;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the attributes of tracked faces from a full detection pass, so that most frames only run
+ * through a cheap tracking client.
+ *
+ * <p>A full pass is needed when a tracking id without cached attributes shows up, or {@code
+ * fullPassInterval} frames after the last one. Its faces are matched to the tracked faces of the
+ * same frame by bounding box overlap, since the two clients assign their own tracking ids. Cached
+ * landmarks and contours follow the tracked bounding box as it moves and scales; classification is
+ * reported as last detected.
+ *
+ * @param <F> a detected face
+ */
+class TrackedFaceAttributes<F> {
+  private static final double MATCH_IOU = 0.3;
+
+  /** A tracked face with the attributes cached for its tracking id. */
+  static final class Merged<F> {
+    final F tracked;
+    @Nullable final Attributes<F> attributes;
+
+    Merged(F tracked, @Nullable Attributes<F> attributes) {
+      this.tracked = tracked;
+      this.attributes = attributes;
+    }
+  }
+
+  private static final class Attributes<F> {
+    // Null if the full pass didn't find the tracked face.
+    @Nullable final F face;
+    @Nullable final Rect boundingBox;
+
+    Attributes(@Nullable F face, @Nullable Rect boundingBox) {
+      this.face = face;
+      this.boundingBox = boundingBox;
+    }
+  }
+
+  private final FaceMarshaller.Reader<F> reader;
+  private final int fullPassInterval;
+  private final Map<Integer, Attributes<F>> attributes = new HashMap<>();
+  private int framesSinceFullPass = 0;
+
+  TrackedFaceAttributes(FaceMarshaller.Reader<F> reader, int fullPassInterval) {
+    this.reader = reader;
+    this.fullPassInterval = fullPassInterval;
+  }
+
+  /**
+   * Returns whether the frame the tracked faces were detected in needs a full pass. Counts the
+   * frame towards the interval.
+   */
+  synchronized boolean needsFullPass(List<F> trackedFaces) {
+    if (++framesSinceFullPass >= fullPassInterval) {
+      return true;
+    }
+    for (F face : trackedFaces) {
+      final Integer trackingId = reader.trackingId(face);
+      if (trackingId != null && !attributes.containsKey(trackingId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Caches the attributes of {@code fullFaces} for the tracked faces they match. Tracked faces the
+   * full pass didn't find are cached without attributes, so they don't trigger another full pass
+   * before the interval passed.
+   */
+  synchronized void update(List<F> trackedFaces, List<F> fullFaces) {
+    framesSinceFullPass = 0;
+    attributes.clear();
+    final Set<F> unmatched = new HashSet<>(fullFaces);
+    for (F tracked : trackedFaces) {
+      final Integer trackingId = reader.trackingId(tracked);
+      if (trackingId == null) {
+        continue;
+      }
+
+      final Rect trackedBox = reader.boundingBox(tracked);
+      F match = null;
+      double matchIou = MATCH_IOU;
+      for (F full : unmatched) {
+        final double iou = iou(trackedBox, reader.boundingBox(full));
+        if (iou >= matchIou) {
+          match = full;
+          matchIou = iou;
+        }
+      }
+      if (match != null) {
+        unmatched.remove(match);
+        attributes.put(trackingId, new Attributes<>(match, reader.boundingBox(match)));
+      } else {
+        attributes.put(trackingId, new Attributes<F>(null, null));
+      }
+    }
+  }
+
+  /** Pairs the tracked faces with their cached attributes and forgets faces no longer tracked. */
+  synchronized List<Merged<F>> merge(List<F> trackedFaces) {
+    final List<Merged<F>> merged = new ArrayList<>(trackedFaces.size());
+    final Set<Integer> trackingIds = new HashSet<>();
+    for (F face : trackedFaces) {
+      final Integer trackingId = reader.trackingId(face);
+      trackingIds.add(trackingId);
+      merged.add(new Merged<>(face, trackingId != null ? attributes.get(trackingId) : null));
+    }
+    attributes.keySet().retainAll(trackingIds);
+    return merged;
+  }
+
+  private static double iou(Rect a, Rect b) {
+    final int width = Math.min(a.right, b.right) - Math.max(a.left, b.left);
+    final int height = Math.min(a.bottom, b.bottom) - Math.max(a.top, b.top);
+    if (width <= 0 || height <= 0) {
+      return 0;
+    }
+    final double intersection = (double) width * height;
+    return intersection
+        / ((double) a.width() * a.height() + (double) b.width() * b.height() - intersection);
+  }
+
+  /** Returns a reader for merged faces, reading cached attributes through {@code reader}. */
+  static <F> FaceMarshaller.Reader<Merged<F>> mergedReader(final FaceMarshaller.Reader<F> reader) {
+    return new FaceMarshaller.Reader<Merged<F>>() {
+      @Override
+      public Rect boundingBox(Merged<F> face) {
+        return reader.boundingBox(face.tracked);
+      }
+
+      @Override
+      public float headEulerAngleY(Merged<F> face) {
+        return reader.headEulerAngleY(face.tracked);
+      }
+
+      @Override
+      public float headEulerAngleZ(Merged<F> face) {
+        return reader.headEulerAngleZ(face.tracked);
+      }
+
+      @Override
+      public Float smilingProbability(Merged<F> face) {
+        final F cached = cachedFace(face);
+        return cached != null ? reader.smilingProbability(cached) : null;
+      }
+
+      @Override
+      public Float leftEyeOpenProbability(Merged<F> face) {
+        final F cached = cachedFace(face);
+        return cached != null ? reader.leftEyeOpenProbability(cached) : null;
+      }
+
+      @Override
+      public Float rightEyeOpenProbability(Merged<F> face) {
+        final F cached = cachedFace(face);
+        return cached != null ? reader.rightEyeOpenProbability(cached) : null;
+      }
+
+      @Override
+      public Integer trackingId(Merged<F> face) {
+        return reader.trackingId(face.tracked);
+      }
+
+      @Override
+      public PointF landmark(Merged<F> face, int index) {
+        final F cached = cachedFace(face);
+        if (cached == null) {
+          return null;
+        }
+        final PointF point = reader.landmark(cached, index);
+        return point != null ? follow(face, point) : null;
+      }
+
+      @Override
+      public List<PointF> contour(Merged<F> face, int index) {
+        final F cached = cachedFace(face);
+        if (cached == null) {
+          return null;
+        }
+        final List<PointF> points = reader.contour(cached, index);
+        return points != null ? follow(face, points) : null;
+      }
+
+      @Override
+      public List<List<PointF>> allContours(Merged<F> face) {
+        final F cached = cachedFace(face);
+        if (cached == null) {
+          return new ArrayList<>();
+        }
+        final List<List<PointF>> contours = reader.allContours(cached);
+        final List<List<PointF>> followed = new ArrayList<>(contours.size());
+        for (List<PointF> points : contours) {
+          followed.add(follow(face, points));
+        }
+        return followed;
+      }
+
+      private List<PointF> follow(Merged<F> face, List<PointF> points) {
+        final List<PointF> followed = new ArrayList<>(points.size());
+        for (PointF point : points) {
+          followed.add(follow(face, point));
+        }
+        return followed;
+      }
+
+      /** Moves a cached point from the cached bounding box to the tracked one. */
+      private PointF follow(Merged<F> face, PointF point) {
+        final Rect from = face.attributes.boundingBox;
+        final Rect to = reader.boundingBox(face.tracked);
+        if (from.width() == 0 || from.height() == 0) {
+          return point;
+        }
+        return new PointF(
+            to.left + (point.x - from.left) * to.width() / from.width(),
+            to.top + (point.y - from.top) * to.height() / from.height());
+      }
+    };
+  }
+
+  @Nullable
+  private static <F> F cachedFace(Merged<F> face) {
+    return face.attributes != null ? face.attributes.face : null;
+  }
+}
@@ -0,0 +1,212 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import android.graphics.Rect;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/** Packs the planes of a YUV 4:2:0 frame into a single NV21 buffer. */
+class YuvConverter {
+  /**
+   * One color plane of a frame, addressed by row and pixel stride.
+   *
+   * <p>{@code data} is read with absolute indices, so its position and limit are ignored.
+   */
+  static final class Plane {
+    final ByteBuffer data;
+    final int offset;
+    final int rowStride;
+    final int pixelStride;
+
+    Plane(ByteBuffer data, int offset, int rowStride, int pixelStride) {
+      this.data = data;
+      this.offset = offset;
+      this.rowStride = rowStride;
+      this.pixelStride = pixelStride;
+    }
+
+    byte get(int x, int y) {
+      return data.get(offset + y * rowStride + x * pixelStride);
+    }
+  }
+
+  private YuvConverter() {}
+
+  static int nv21Size(int width, int height) {
+    return width * height + 2 * (width / 2) * (height / 2);
+  }
+
+  /**
+   * Returns the Y, U and V planes of a {@code YUV_420_888} frame sent as separate planes.
+   *
+   * @throws IllegalArgumentException if a plane is too small for a {@code width} x {@code height}
+   *     frame with its row and pixel stride.
+   */
+  static Plane[] fromPlanes(
+      List<ByteBuffer> planes, List<Map<String, Object>> planeData, int width, int height) {
+    if (planes.size() != 3 || planeData.size() != 3) {
+      throw new IllegalArgumentException(
+          String.format("Expected 3 planes for YUV_420_888, got: %s", planes.size()));
+    }
+
+    final Plane[] yuvPlanes = {
+      new Plane(planes.get(0), 0, rowStride(planeData.get(0), width), 1),
+      new Plane(
+          planes.get(1), 0, rowStride(planeData.get(1), width / 2), pixelStride(planeData.get(1))),
+      new Plane(
+          planes.get(2), 0, rowStride(planeData.get(2), width / 2), pixelStride(planeData.get(2))),
+    };
+    checkPlane(yuvPlanes[0], "Y", width, height);
+    checkPlane(yuvPlanes[1], "U", width / 2, height / 2);
+    checkPlane(yuvPlanes[2], "V", width / 2, height / 2);
+    return yuvPlanes;
+  }
+
+  /**
+   * Returns the Y, U and V planes of a packed NV21 buffer.
+   *
+   * @throws IllegalArgumentException if {@code bytes} is too small for a {@code width} x {@code
+   *     height} frame.
+   */
+  static Plane[] fromNv21(ByteBuffer bytes, int width, int height) {
+    checkPacked(bytes, "NV21", width, height);
+    final int chromaOffset = width * height;
+    return new Plane[] {
+      new Plane(bytes, 0, width, 1),
+      new Plane(bytes, chromaOffset + 1, width, 2),
+      new Plane(bytes, chromaOffset, width, 2),
+    };
+  }
+
+  /**
+   * Returns the Y, U and V planes of a packed YV12 buffer.
+   *
+   * @throws IllegalArgumentException if {@code bytes} is too small for a {@code width} x {@code
+   *     height} frame.
+   */
+  static Plane[] fromYv12(ByteBuffer bytes, int width, int height) {
+    checkPacked(bytes, "YV12", width, height);
+    final int vOffset = width * height;
+    final int uOffset = vOffset + (width / 2) * (height / 2);
+    return new Plane[] {
+      new Plane(bytes, 0, width, 1),
+      new Plane(bytes, uOffset, width / 2, 1),
+      new Plane(bytes, vOffset, width / 2, 1),
+    };
+  }
+
+  /**
+   * Writes {@code planes} into {@code out} as NV21, honoring each plane's row and pixel stride.
+   *
+   * <p>{@code out} must have at least {@link #nv21Size(int, int)} bytes remaining. Its position is
+   * left at the end of the written data.
+   */
+  static void toNv21(
+      List<ByteBuffer> planes,
+      List<Map<String, Object>> planeData,
+      int width,
+      int height,
+      ByteBuffer out) {
+    toNv21(
+        fromPlanes(planes, planeData, width, height),
+        new Rect(0, 0, width, height),
+        width,
+        height,
+        out);
+  }
+
+  /**
+   * Writes the {@code crop} region of {@code planes} into {@code out} as NV21, resampled to {@code
+   * outWidth} x {@code outHeight} by nearest neighbour.
+   *
+   * <p>{@code crop} must have even bounds. {@code out} must have at least {@link #nv21Size(int,
+   * int)} bytes remaining for the output size.
+   */
+  static void toNv21(Plane[] planes, Rect crop, int outWidth, int outHeight, ByteBuffer out) {
+    final Plane y = planes[0];
+    final Plane u = planes[1];
+    final Plane v = planes[2];
+    final int cropWidth = crop.width();
+    final int cropHeight = crop.height();
+    final boolean scaled = outWidth != cropWidth || outHeight != cropHeight;
+    // Rows are bulk copied through a view, leaving the plane's own position untouched.
+    final ByteBuffer rows = scaled ? null : y.data.duplicate();
+
+    for (int row = 0; row < outHeight; row++) {
+      final int srcY = crop.top + (scaled ? row * cropHeight / outHeight : row);
+      if (!scaled) {
+        final int start = y.offset + srcY * y.rowStride + crop.left;
+        rows.clear();
+        rows.position(start);
+        rows.limit(start + outWidth);
+        out.put(rows);
+        continue;
+      }
+      for (int col = 0; col < outWidth; col++) {
+        out.put(y.get(crop.left + col * cropWidth / outWidth, srcY));
+      }
+    }
+
+    final int chromaWidth = outWidth / 2;
+    final int chromaHeight = outHeight / 2;
+    for (int row = 0; row < chromaHeight; row++) {
+      final int srcY = (crop.top + 2 * row * cropHeight / outHeight) / 2;
+      for (int col = 0; col < chromaWidth; col++) {
+        final int srcX = (crop.left + 2 * col * cropWidth / outWidth) / 2;
+        out.put(v.get(srcX, srcY));
+        out.put(u.get(srcX, srcY));
+      }
+    }
+  }
+
+  private static void checkPlane(Plane plane, String name, int width, int height) {
+    if (plane.rowStride <= 0 || plane.pixelStride <= 0) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid strides for %s plane: %s bytes per row, %s bytes per pixel",
+              name, plane.rowStride, plane.pixelStride));
+    }
+    if ((width - 1) * plane.pixelStride >= plane.rowStride) {
+      throw new IllegalArgumentException(
+          String.format(
+              "%s plane rows of %s bytes are too short for %s pixels of %s bytes",
+              name, plane.rowStride, width, plane.pixelStride));
+    }
+    // The last row may end right after its last pixel, without row padding.
+    final long size =
+        plane.offset
+            + (long) (height - 1) * plane.rowStride
+            + (long) (width - 1) * plane.pixelStride
+            + 1;
+    if (width > 0 && height > 0 && plane.data.limit() < size) {
+      throw new IllegalArgumentException(
+          String.format(
+              "%s plane has %s bytes, expected at least %s for %sx%s",
+              name, plane.data.limit(), size, width, height));
+    }
+  }
+
+  private static void checkPacked(ByteBuffer bytes, String format, int width, int height) {
+    final int size = nv21Size(width, height);
+    if (bytes.limit() < size) {
+      throw new IllegalArgumentException(
+          String.format(
+              "%s image has %s bytes, expected at least %s for %sx%s",
+              format, bytes.limit(), size, width, height));
+    }
+  }
+
+  private static int rowStride(Map<String, Object> plane, int defaultStride) {
+    final Integer bytesPerRow = (Integer) plane.get("bytesPerRow");
+    return bytesPerRow == null ? defaultStride : bytesPerRow;
+  }
+
+  private static int pixelStride(Map<String, Object> plane) {
+    final Integer bytesPerPixel = (Integer) plane.get("bytesPerPixel");
+    return bytesPerPixel == null ? 1 : bytesPerPixel;
+  }
+}
@@ -0,0 +1,136 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.mlkit.vision.common.InputImage;
+import io.flutter.plugin.common.MethodChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class DetectorRegistryTest {
+  private static final class FakeDetector implements Detector {
+    boolean closed = false;
+
+    @Override
+    public void handleDetection(InputImage image, DetectionContext context) {}
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  private static final FrameScheduler.FrameProcessor NO_PROCESSING =
+      new FrameScheduler.FrameProcessor() {
+        @Override
+        public void process(
+            Map<String, Object> imageData,
+            DetectionRequest request,
+            MethodChannel.Result result) {}
+      };
+
+  private final DetectorRegistry registry = new DetectorRegistry();
+
+  private static DetectorRegistry.Entry newEntry(Detector detector) {
+    return new DetectorRegistry.Entry(
+        new LeasedDetector(detector),
+        new FrameScheduler(ProcessingOptions.parse(null), NO_PROCESSING, null, null),
+        null);
+  }
+
+  @Test
+  public void getReturnsRegisteredEntry() {
+    final DetectorRegistry.Entry entry = newEntry(new FakeDetector());
+    assertSame(entry, registry.putIfAbsent(1, entry));
+
+    assertSame(entry, registry.get(1));
+    assertNull(registry.get(2));
+  }
+
+  @Test
+  public void putIfAbsentKeepsFirstEntry() {
+    final DetectorRegistry.Entry first = newEntry(new FakeDetector());
+    final DetectorRegistry.Entry second = newEntry(new FakeDetector());
+    registry.putIfAbsent(1, first);
+
+    assertSame(first, registry.putIfAbsent(1, second));
+    assertSame(first, registry.get(1));
+  }
+
+  @Test
+  public void removeLeavesDetectorOpen() {
+    final FakeDetector detector = new FakeDetector();
+    final DetectorRegistry.Entry entry = newEntry(detector);
+    registry.putIfAbsent(1, entry);
+
+    assertSame(entry, registry.remove(1));
+    assertNull(registry.get(1));
+    assertNull(registry.remove(1));
+    // Closing is up to the caller, once detections in flight returned their lease.
+    assertFalse(detector.closed);
+  }
+
+  @Test
+  public void removeAllReturnsEveryEntry() {
+    final DetectorRegistry.Entry first = newEntry(new FakeDetector());
+    final DetectorRegistry.Entry second = newEntry(new FakeDetector());
+    registry.putIfAbsent(1, first);
+    registry.putIfAbsent(2, second);
+
+    final List<DetectorRegistry.Entry> removed = registry.removeAll();
+    assertEquals(2, removed.size());
+    assertTrue(removed.contains(first));
+    assertTrue(removed.contains(second));
+    assertNull(registry.get(1));
+    assertTrue(registry.removeAll().isEmpty());
+  }
+
+  @Test
+  public void concurrentRegistrationsAgreeOnOneEntry() throws Exception {
+    final int threads = 8;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final CountDownLatch start = new CountDownLatch(1);
+    try {
+      final List<Future<DetectorRegistry.Entry>> registered = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        registered.add(
+            executor.submit(
+                new Callable<DetectorRegistry.Entry>() {
+                  @Override
+                  public DetectorRegistry.Entry call() throws Exception {
+                    final DetectorRegistry.Entry entry = newEntry(new FakeDetector());
+                    start.await();
+                    return registry.putIfAbsent(1, entry);
+                  }
+                }));
+      }
+      start.countDown();
+
+      final List<DetectorRegistry.Entry> returned = new ArrayList<>();
+      for (Future<DetectorRegistry.Entry> entry : registered) {
+        returned.add(entry.get(1, TimeUnit.SECONDS));
+      }
+      for (DetectorRegistry.Entry entry : returned) {
+        assertSame(registry.get(1), entry);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,151 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.MethodChannel;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class FrameBufferPoolTest {
+  private static final class RecordingResult implements MethodChannel.Result {
+    final List<String> replies = new ArrayList<>();
+
+    @Override
+    public void success(@Nullable Object value) {
+      replies.add("success:" + value);
+    }
+
+    @Override
+    public void error(
+        String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+      replies.add("error:" + errorCode);
+    }
+
+    @Override
+    public void notImplemented() {
+      replies.add("notImplemented");
+    }
+  }
+
+  private final FrameBufferPool pool = new FrameBufferPool();
+
+  /** Whether {@code buffer} is the next idle buffer of its bucket, taking it out if so. */
+  private boolean isIdle(ByteBuffer buffer) {
+    return pool.acquire(buffer.capacity()) == buffer;
+  }
+
+  /** Whether {@code buffers} holds {@code buffer} itself; buffers compare equal by content. */
+  private static boolean containsSame(List<ByteBuffer> buffers, ByteBuffer buffer) {
+    for (ByteBuffer candidate : buffers) {
+      if (candidate == buffer) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void acquireReturnsDirectBufferOfRequestedSize() {
+    final ByteBuffer buffer = pool.acquire(1000);
+
+    assertTrue(buffer.isDirect());
+    assertEquals(0, buffer.position());
+    assertEquals(1000, buffer.limit());
+    assertEquals(64 * 1024, buffer.capacity());
+  }
+
+  @Test
+  public void releasedBufferIsReusedForSizesInItsBucket() {
+    final ByteBuffer buffer = pool.acquire(1000);
+    buffer.put(new byte[10]);
+    pool.release(buffer);
+
+    final ByteBuffer reused = pool.acquire(2000);
+    assertSame(buffer, reused);
+    assertEquals(0, reused.position());
+    assertEquals(2000, reused.limit());
+
+    pool.release(reused);
+    assertNotSame(buffer, pool.acquire(64 * 1024 + 1));
+  }
+
+  @Test
+  public void keepsAtMostFourIdleBuffersPerBucket() {
+    final List<ByteBuffer> buffers = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      buffers.add(pool.acquire(1000));
+    }
+    pool.releaseAll(buffers);
+
+    for (int i = 0; i < 4; i++) {
+      assertTrue(containsSame(buffers, pool.acquire(1000)));
+    }
+    assertFalse(containsSame(buffers, pool.acquire(1000)));
+  }
+
+  @Test
+  public void releaseOnFinishReleasesOnceAnswered() {
+    final ByteBuffer buffer = pool.acquire(1000);
+    final RecordingResult result = new RecordingResult();
+    final MethodChannel.Result wrapped =
+        pool.releaseOnFinish(result, Collections.singletonList(buffer));
+    assertFalse(isIdle(buffer));
+
+    wrapped.success("detections");
+    assertEquals("success:detections", result.replies.get(0));
+    assertTrue(isIdle(buffer));
+  }
+
+  @Test
+  public void releaseOnFinishReleasesOnError() {
+    final ByteBuffer buffer = pool.acquire(1000);
+    final RecordingResult result = new RecordingResult();
+
+    pool.releaseOnFinish(result, Collections.singletonList(buffer))
+        .error("MLVisionDetectorError", null, null);
+    assertEquals("error:MLVisionDetectorError", result.replies.get(0));
+    assertTrue(isIdle(buffer));
+  }
+
+  @Test
+  public void sharedFrameIsReleasedOnceEveryDetectorAnswered() {
+    final ByteBuffer buffer = pool.acquire(1000);
+    final RecordingResult first = new RecordingResult();
+    final RecordingResult second = new RecordingResult();
+    final List<MethodChannel.Result> wrapped =
+        pool.releaseOnFinish(
+            Arrays.<MethodChannel.Result>asList(first, second), Collections.singletonList(buffer));
+
+    // The first detector failing doesn't free the image the second one still reads.
+    wrapped.get(0).error("MLVisionDetectorError", null, null);
+    assertFalse(isIdle(buffer));
+
+    wrapped.get(1).success("detections");
+    assertEquals("success:detections", second.replies.get(0));
+    assertTrue(isIdle(buffer));
+  }
+
+  @Test
+  public void releaseOnFinishWithoutResultsReleasesRightAway() {
+    final ByteBuffer buffer = pool.acquire(1000);
+
+    assertTrue(
+        pool.releaseOnFinish(
+                Collections.<MethodChannel.Result>emptyList(), Collections.singletonList(buffer))
+            .isEmpty());
+    assertTrue(isIdle(buffer));
+  }
+}
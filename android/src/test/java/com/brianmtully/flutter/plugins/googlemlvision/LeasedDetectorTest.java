@@ -0,0 +1,114 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.Nullable;
+import com.google.mlkit.vision.common.InputImage;
+import io.flutter.plugin.common.MethodChannel;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LeasedDetectorTest {
+  /** Completes detections when told to, the way the ML Kit detectors do. */
+  private static final class FakeDetector implements Detector {
+    DetectionContext pending;
+    boolean closed = false;
+
+    @Override
+    public void handleDetection(InputImage image, DetectionContext context) {
+      pending = context;
+    }
+
+    void finishInference() {
+      if (!pending.inferenceFinished()) {
+        return;
+      }
+      pending.success("detections");
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  private static final class RecordingResult implements MethodChannel.Result {
+    final List<String> replies = new ArrayList<>();
+
+    @Override
+    public void success(@Nullable Object value) {
+      replies.add("success:" + value);
+    }
+
+    @Override
+    public void error(
+        String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+      replies.add("error:" + errorCode);
+    }
+
+    @Override
+    public void notImplemented() {
+      replies.add("notImplemented");
+    }
+  }
+
+  private FakeDetector fake;
+  private LeasedDetector detector;
+  private RecordingResult result;
+
+  @Before
+  public void setUp() {
+    fake = new FakeDetector();
+    detector = new LeasedDetector(fake);
+    result = new RecordingResult();
+  }
+
+  @Test
+  public void closeWaitsForDetectionInFlight() throws Exception {
+    final DetectionRequest request = new DetectionRequest(0, null);
+    detector.handleDetection(
+        null, new DetectionContext(result, request, null, CoordinateMapping.IDENTITY));
+
+    detector.close();
+    assertFalse(fake.closed);
+
+    fake.finishInference();
+    assertEquals(1, result.replies.size());
+    assertEquals("success:detections", result.replies.get(0));
+    assertTrue(fake.closed);
+  }
+
+  @Test
+  public void cancelledDetectionReleasesLease() throws Exception {
+    final DetectionRequest request = new DetectionRequest(0, null);
+    detector.handleDetection(
+        null, new DetectionContext(result, request, null, CoordinateMapping.IDENTITY));
+
+    request.cancel();
+    detector.close();
+    assertFalse(fake.closed);
+
+    fake.finishInference();
+    assertEquals(1, result.replies.size());
+    assertEquals("error:" + DetectionRequest.CANCELLED_ERROR_CODE, result.replies.get(0));
+    assertTrue(fake.closed);
+  }
+
+  @Test
+  public void detectionAfterCloseFails() throws Exception {
+    detector.close();
+    assertTrue(fake.closed);
+
+    detector.handleDetection(null, DetectionContext.of(result));
+    assertEquals(1, result.replies.size());
+    assertEquals("error:" + LeasedDetector.CLOSED_ERROR_CODE, result.replies.get(0));
+  }
+}
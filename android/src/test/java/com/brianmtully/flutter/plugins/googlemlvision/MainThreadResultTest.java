@@ -0,0 +1,160 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.brianmtully.flutter.plugins.googlemlvision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Handler;
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.MethodChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MainThreadResultTest {
+  /** Queues posted runnables until the test runs them, like a looper on the test thread. */
+  private static final class QueueingHandler extends Handler {
+    final List<Runnable> posted = new ArrayList<>();
+
+    QueueingHandler() {
+      super(null);
+    }
+
+    @Override
+    public synchronized boolean post(Runnable runnable) {
+      posted.add(runnable);
+      return true;
+    }
+
+    synchronized void runPosted() {
+      for (Runnable runnable : posted) {
+        runnable.run();
+      }
+      posted.clear();
+    }
+  }
+
+  private static final class RecordingResult implements MethodChannel.Result {
+    final List<String> replies = new ArrayList<>();
+    final List<Thread> threads = new ArrayList<>();
+
+    @Override
+    public void success(@Nullable Object value) {
+      record("success:" + value);
+    }
+
+    @Override
+    public void error(
+        String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+      record("error:" + errorCode);
+    }
+
+    @Override
+    public void notImplemented() {
+      record("notImplemented");
+    }
+
+    private void record(String reply) {
+      replies.add(reply);
+      threads.add(Thread.currentThread());
+    }
+  }
+
+  private QueueingHandler handler;
+  private RecordingResult result;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    handler = new QueueingHandler();
+    result = new RecordingResult();
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private MainThreadResult mainThreadResult(boolean queued) {
+    return new MainThreadResult(result, handler, Thread.currentThread(), queued);
+  }
+
+  @Test
+  public void replyFromExecutorIsPostedToMainThread() throws Exception {
+    final MainThreadResult reply = mainThreadResult(false);
+    // Detectors answer from the ML Kit listeners registered on the executor.
+    executor
+        .submit(
+            new Runnable() {
+              @Override
+              public void run() {
+                reply.success("detections");
+              }
+            })
+        .get(1, TimeUnit.SECONDS);
+
+    assertTrue(result.replies.isEmpty());
+    assertEquals(1, handler.posted.size());
+
+    handler.runPosted();
+    assertEquals("success:detections", result.replies.get(0));
+    assertSame(Thread.currentThread(), result.threads.get(0));
+  }
+
+  @Test
+  public void errorFromExecutorIsPostedToMainThread() throws Exception {
+    final MainThreadResult reply = mainThreadResult(false);
+    executor
+        .submit(
+            new Runnable() {
+              @Override
+              public void run() {
+                reply.error("MLVisionDetectorError", "failed", null);
+              }
+            })
+        .get(1, TimeUnit.SECONDS);
+
+    assertTrue(result.replies.isEmpty());
+    handler.runPosted();
+    assertEquals("error:MLVisionDetectorError", result.replies.get(0));
+    assertSame(Thread.currentThread(), result.threads.get(0));
+  }
+
+  @Test
+  public void replyOnMainThreadIsDeliveredDirectly() {
+    mainThreadResult(false).success("cached");
+
+    assertEquals("success:cached", result.replies.get(0));
+    assertTrue(handler.posted.isEmpty());
+  }
+
+  @Test
+  public void queuedReplyOnMainThreadKeepsOrderWithPostedReplies() throws Exception {
+    final MainThreadResult fromExecutor = mainThreadResult(false);
+    executor
+        .submit(
+            new Runnable() {
+              @Override
+              public void run() {
+                fromExecutor.success("first");
+              }
+            })
+        .get(1, TimeUnit.SECONDS);
+    mainThreadResult(true).success("second");
+
+    assertTrue(result.replies.isEmpty());
+    handler.runPosted();
+    assertEquals("success:first", result.replies.get(0));
+    assertEquals("success:second", result.replies.get(1));
+  }
+}
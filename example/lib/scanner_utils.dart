@@ -5,7 +5,6 @@
 // @dart=2.9
 
 import 'dart:async';
-import 'dart:typed_data';
 import 'dart:ui';
 
 import 'package:camera/camera.dart';
@@ -29,19 +28,13 @@ class ScannerUtils {
     @required int imageRotation,
   }) async {
     return detectInImage(
-      GoogleVisionImage.fromBytes(
-        _concatenatePlanes(image.planes),
+      GoogleVisionImage.fromPlanes(
+        image.planes.map((Plane plane) => plane.bytes).toList(),
         _buildMetaData(image, _rotationIntToImageRotation(imageRotation)),
       ),
     );
   }
 
-  static Uint8List _concatenatePlanes(List<Plane> planes) {
-    final WriteBuffer allBytes = WriteBuffer();
-    planes.forEach((Plane plane) => allBytes.putUint8List(plane.bytes));
-    return allBytes.done().buffer.asUint8List();
-  }
-
   static GoogleVisionImageMetadata _buildMetaData(
     CameraImage image,
     ImageRotation rotation,
@@ -54,6 +47,7 @@ class ScannerUtils {
         (Plane plane) {
           return GoogleVisionImagePlaneMetadata(
             bytesPerRow: plane.bytesPerRow,
+            bytesPerPixel: plane.bytesPerPixel,
             height: plane.height,
             width: plane.width,
           );
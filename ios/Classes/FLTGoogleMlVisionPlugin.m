@@ -51,6 +51,13 @@ static NSMutableDictionary<NSNumber *, id<Detector>> *detectors;
     NSNumber *handle = call.arguments[@"handle"];
     [detectors removeObjectForKey:handle];
     result(nil);
+  } else if ([@"BarcodeDetector#prepare" isEqualToString:call.method] ||
+             [@"FaceDetector#prepare" isEqualToString:call.method] ||
+             [@"ImageLabeler#prepare" isEqualToString:call.method] ||
+             [@"TextRecognizer#prepare" isEqualToString:call.method]) {
+    // Warm-up frames are not supported on iOS; the detector is only created.
+    [self getOrCreateDetector:call];
+    result(nil);
   } else {
     result(FlutterMethodNotImplemented);
   }
@@ -58,6 +65,12 @@ static NSMutableDictionary<NSNumber *, id<Detector>> *detectors;
 
 - (void)handleDetection:(FlutterMethodCall *)call result:(FlutterResult)result {
   MLKVisionImage *image = [self dataToVisionImage:call.arguments];
+  id<Detector> detector = [self getOrCreateDetector:call];
+
+  [detector handleDetection:image result:result];
+}
+
+- (id<Detector>)getOrCreateDetector:(FlutterMethodCall *)call {
   NSDictionary *options = call.arguments[@"options"];
 
   NSNumber *handle = call.arguments[@"handle"];
@@ -76,7 +89,7 @@ static NSMutableDictionary<NSNumber *, id<Detector>> *detectors;
     [FLTGoogleMlVisionPlugin addDetector:handle detector:detector];
   }
 
-  [detectors[handle] handleDetection:image result:result];
+  return detector;
 }
 
 - (MLKVisionImage *)dataToVisionImage:(NSDictionary *)imageData {
@@ -5,6 +5,7 @@
 library google_ml_vision;
 
 import 'dart:async';
+import 'dart:convert';
 import 'dart:io';
 import 'dart:typed_data';
 import 'dart:ui';
@@ -13,7 +14,10 @@ import 'package:flutter/foundation.dart';
 import 'package:flutter/services.dart';
 
 part 'src/barcode_detector.dart';
+part 'src/detection_pipeline.dart';
+part 'src/detection_session.dart';
 part 'src/face_detector.dart';
 part 'src/google_vision.dart';
 part 'src/image_labeler.dart';
+part 'src/object_detector.dart';
 part 'src/text_recognizer.dart';
@@ -188,30 +188,136 @@ class BarcodeDetector {
   /// The options for configuring this detector.
   final BarcodeDetectorOptions options;
   final int _handle;
+  final _DeltaCache<Barcode> _deltaCache = _DeltaCache<Barcode>();
   bool _hasBeenOpened = false;
   bool _isClosed = false;
 
   /// Detects barcodes in the input image.
-  Future<List<Barcode>> detectInImage(GoogleVisionImage visionImage) async {
+  ///
+  /// See [TextRecognizer.processImage] for [timeout].
+  Future<List<Barcode>> detectInImage(
+    GoogleVisionImage visionImage, {
+    Duration? timeout,
+  }) async {
     assert(!_isClosed);
     _hasBeenOpened = true;
 
-    final reply = await GoogleVision.channel.invokeListMethod<dynamic>(
+    final reply = await GoogleVision.channel.invokeMethod<dynamic>(
       'BarcodeDetector#detectInImage',
       <String, dynamic>{
         'handle': _handle,
-        'options': <String, dynamic>{
-          'barcodeFormats': options.barcodeFormats.value,
-        },
+        'options': options._serialize(),
+        'requestId': GoogleVision.nextRequestId++,
+        if (timeout != null) 'timeoutMs': timeout.inMilliseconds,
       }..addAll(visionImage._serialize()),
     );
 
+    return _decodeResult(reply);
+  }
+
+  List<Barcode> _decodeResult(dynamic reply) {
+    if (_DeltaCache.isDelta(reply)) {
+      return _deltaCache.apply(reply, (dynamic data) => Barcode._(data));
+    }
+    return _decodeReply(reply);
+  }
+
+  static List<Barcode> _decodeReply(dynamic reply) {
+    if (reply is Uint8List) {
+      final _CompactResultReader reader = _CompactResultReader(reply);
+      assert(reader.kind == _CompactResultReader.kindBarcodes);
+      return List<Barcode>.generate(
+        reader.readInt32(),
+        (_) => Barcode._(_readCompactBarcode(reader)),
+      );
+    }
+
     final List<Barcode> barcodes =
-        reply!.map((barcode) => Barcode._(barcode)).toList();
+        reply!.map<Barcode>((barcode) => Barcode._(barcode)).toList();
 
     return barcodes;
   }
 
+  /// Runs the detector on each image file in [paths].
+  ///
+  /// See [TextRecognizer.processBatch].
+  Stream<BatchResult<List<Barcode>>> processBatch(
+    List<String> paths, {
+    int? maxDimension,
+  }) {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    return _processBatch<List<Barcode>>(
+      'BarcodeDetector#processBatch',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': options._serialize(),
+      },
+      paths,
+      maxDimension,
+      _decodeReply,
+    );
+  }
+
+  /// Opens a [DetectionSession] that streams frames to this detector.
+  ///
+  /// See [TextRecognizer.openSession].
+  Future<DetectionSession<List<Barcode>>> openSession() async {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    await GoogleVision.channel.invokeMethod<void>(
+      'BarcodeDetector#openSession',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': options._serialize(),
+      },
+    );
+    return DetectionSession<List<Barcode>>._(_handle, _decodeResult);
+  }
+
+  /// Cancels the images sent to this detector that have not completed yet.
+  ///
+  /// See [TextRecognizer.cancel].
+  Future<void> cancel() {
+    if (!_hasBeenOpened || _isClosed) return Future<void>.value();
+
+    return GoogleVision.channel.invokeMethod<void>(
+      'BarcodeDetector#cancel',
+      <String, dynamic>{'handle': _handle},
+    );
+  }
+
+  /// Returns the metrics recorded since the detector processed its first
+  /// image, or null unless [FrameProcessingOptions.collectMetrics] is enabled.
+  Future<DetectorMetrics?> metrics() => DetectorMetrics._snapshot(_handle);
+
+  /// The changes made by this detector's [FrameProcessingOptions.governor].
+  Stream<GovernorDecision> get governorDecisions =>
+      GovernorDecision._forHandle(_handle);
+
+  /// Creates the native detector ahead of the first frame.
+  ///
+  /// Detectors are otherwise created lazily by the first call to
+  /// [detectInImage], which then pays for loading the model. When [warmUp] is
+  /// true, a tiny blank image is also run through the detector.
+  ///
+  /// Detectors opened with identical options share one native model.
+  Future<void> prepare({bool warmUp = true}) async {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    await GoogleVision.channel.invokeMethod<void>(
+      'BarcodeDetector#prepare',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': options._serialize(),
+        'warmUp': warmUp,
+      },
+    );
+  }
+
   /// Release resources used by this detector.
   Future<void> close() {
     if (!_hasBeenOpened) _isClosed = true;
@@ -225,6 +331,35 @@ class BarcodeDetector {
   }
 }
 
+/// Reads one barcode from a compact result into the standard map shape.
+///
+/// Barcodes are few per frame, so only the transfer is made compact here.
+Map<dynamic, dynamic> _readCompactBarcode(_CompactResultReader reader) {
+  final Map<dynamic, dynamic> data = <dynamic, dynamic>{};
+
+  final Rect? bounds = reader.readRect();
+  if (bounds != null) {
+    data['left'] = bounds.left;
+    data['top'] = bounds.top;
+    data['width'] = bounds.width;
+    data['height'] = bounds.height;
+  }
+  data['points'] = reader
+      .readPoints()
+      .map<List<double>>((Offset point) => <double>[point.dx, point.dy])
+      .toList();
+  data['rawValue'] = reader.readString();
+  data['displayValue'] = reader.readString();
+  data['format'] = reader.readInt32();
+  data['valueType'] = reader.readInt32();
+
+  final String? typeKey = reader.readString();
+  final dynamic typeValue = reader.readValue();
+  if (typeKey != null) data[typeKey] = typeValue;
+
+  return data;
+}
+
 /// Immutable options to configure [BarcodeDetector].
 ///
 /// Sets which barcode formats the detector will detect. Defaults to
@@ -236,9 +371,59 @@ class BarcodeDetector {
 ///     BarcodeDetectorOptions(barcodeFormats: BarcodeFormat.aztec | BarcodeFormat.ean8);
 /// ```
 class BarcodeDetectorOptions {
-  const BarcodeDetectorOptions({this.barcodeFormats = BarcodeFormat.all});
+  const BarcodeDetectorOptions({
+    this.barcodeFormats = BarcodeFormat.all,
+    this.adaptiveFormats,
+    this.processing,
+  });
 
   final BarcodeFormat barcodeFormats;
+
+  /// Narrows the searched formats to the [barcodeFormats] actually decoded,
+  /// or null to always search for all of them.
+  ///
+  /// Currently only supported on Android.
+  final AdaptiveBarcodeFormats? adaptiveFormats;
+
+  /// How frames are scheduled when they arrive faster than they are processed.
+  final FrameProcessingOptions? processing;
+
+  Map<String, dynamic> _serialize() => <String, dynamic>{
+        'barcodeFormats': barcodeFormats.value,
+        if (adaptiveFormats != null)
+          'adaptiveFormats': adaptiveFormats!._serialize(),
+        if (processing != null) 'processing': processing!._serialize(),
+      };
+}
+
+/// Narrows the formats a [BarcodeDetector] searches for to the formats it
+/// decodes, so scanning a stream of mostly one or two symbologies gets faster.
+///
+/// For the first [warmUpFrames] frames the detector searches for all
+/// configured formats and records the formats it decodes. It then only searches
+/// for those, or keeps searching for all formats if nothing was decoded. After
+/// [wideningInterval] narrowed frames it searches for all configured formats
+/// again for another warm-up window, so new formats are picked up.
+///
+/// Barcodes of other formats are missed while narrowed.
+class AdaptiveBarcodeFormats {
+  /// Constructor for [AdaptiveBarcodeFormats].
+  const AdaptiveBarcodeFormats({
+    this.warmUpFrames = 30,
+    this.wideningInterval = 300,
+  })  : assert(warmUpFrames > 0),
+        assert(wideningInterval > 0);
+
+  /// Frames searched with all configured formats before narrowing.
+  final int warmUpFrames;
+
+  /// Frames searched with the narrowed formats before widening again.
+  final int wideningInterval;
+
+  Map<String, dynamic> _serialize() => <String, dynamic>{
+        'warmUpFrames': warmUpFrames,
+        'wideningInterval': wideningInterval,
+      };
 }
 
 // TODO(bparrishMines): Normalize default string values. Some values return null on iOS while Android returns empty string.
@@ -0,0 +1,128 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+part of google_ml_vision;
+
+/// Runs several detectors on the same image with a single platform call.
+///
+/// The image is transferred and decoded once, and the detectors run
+/// concurrently on the platform side. A pipeline is created via
+/// `pipeline(List<Object> detectors)` in [GoogleVision]:
+///
+/// ```dart
+/// final DetectionPipeline pipeline = GoogleVision.instance.pipeline(
+///   <Object>[barcodeDetector, textRecognizer, faceDetector],
+/// );
+///
+/// final List<Object> results = await pipeline.process(image);
+/// final List<Barcode> barcodes = results[0] as List<Barcode>;
+/// ```
+///
+/// The detectors are called directly: their [FrameProcessingOptions], such as
+/// the drop policy, motion gate, delta results and metrics, don't apply to
+/// images processed through a pipeline.
+///
+/// Currently only supported on Android.
+class DetectionPipeline {
+  DetectionPipeline._(List<Object> detectors)
+      : detectors = List<Object>.unmodifiable(detectors) {
+    for (final Object detector in detectors) {
+      assert(
+        detector is BarcodeDetector ||
+            detector is FaceDetector ||
+            detector is ImageLabeler ||
+            detector is ObjectDetector ||
+            detector is TextRecognizer,
+        'Not a detector: $detector',
+      );
+    }
+  }
+
+  /// The detectors run on each image, in result order.
+  ///
+  /// Detectors stay owned by the caller and must still be closed separately.
+  final List<Object> detectors;
+
+  /// Runs every detector on [visionImage].
+  ///
+  /// Returns one result per detector, in the order of [detectors]: a
+  /// `List<Barcode>`, `List<Face>`, `List<ImageLabel>`, `List<DetectedObject>`
+  /// or [VisionText].
+  Future<List<Object>> process(GoogleVisionImage visionImage) async {
+    final List<Map<String, dynamic>> detectorData = detectors
+        .map<Map<String, dynamic>>((Object detector) => _open(detector))
+        .toList();
+
+    final List<dynamic>? reply =
+        await GoogleVision.channel.invokeListMethod<dynamic>(
+      'Pipeline#process',
+      <String, dynamic>{
+        'detectors': detectorData,
+      }..addAll(visionImage._serialize()),
+    );
+
+    return List<Object>.generate(
+      detectors.length,
+      (int i) => _decode(detectors[i], reply![i]),
+    );
+  }
+
+  static Map<String, dynamic> _open(Object detector) {
+    if (detector is BarcodeDetector) {
+      assert(!detector._isClosed);
+      detector._hasBeenOpened = true;
+      return <String, dynamic>{
+        'type': 'BarcodeDetector',
+        'handle': detector._handle,
+        'options': detector.options._serialize(),
+      };
+    } else if (detector is FaceDetector) {
+      assert(!detector._isClosed);
+      detector._hasBeenOpened = true;
+      return <String, dynamic>{
+        'type': 'FaceDetector',
+        'handle': detector._handle,
+        'options': detector.options._serialize(),
+      };
+    } else if (detector is ImageLabeler) {
+      assert(!detector._isClosed);
+      detector._hasBeenOpened = true;
+      return <String, dynamic>{
+        'type': 'ImageLabeler',
+        'handle': detector._handle,
+        'options': detector._options._serialize(),
+      };
+    } else if (detector is ObjectDetector) {
+      assert(!detector._isClosed);
+      detector._hasBeenOpened = true;
+      return <String, dynamic>{
+        'type': 'ObjectDetector',
+        'handle': detector._handle,
+        'options': detector.options._serialize(),
+      };
+    } else if (detector is TextRecognizer) {
+      assert(!detector._isClosed);
+      detector._hasBeenOpened = true;
+      return <String, dynamic>{
+        'type': 'TextRecognizer',
+        'handle': detector._handle,
+        'options': detector._options._serialize(),
+      };
+    }
+    throw ArgumentError.value(detector, 'detector', 'Not a detector');
+  }
+
+  static Object _decode(Object detector, dynamic reply) {
+    if (detector is BarcodeDetector) {
+      return BarcodeDetector._decodeReply(reply);
+    } else if (detector is FaceDetector) {
+      return FaceDetector._decodeReply(reply);
+    } else if (detector is ImageLabeler) {
+      return ImageLabeler._decodeReply(reply);
+    } else if (detector is ObjectDetector) {
+      return ObjectDetector._decodeReply(reply);
+    }
+    return TextRecognizer._decodeReply(reply);
+  }
+}
@@ -0,0 +1,189 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+part of google_ml_vision;
+
+/// Streams camera frames to a detector without waiting for each result.
+///
+/// Frames are sent as binary messages and results arrive asynchronously on
+/// [results], tagged with the sequence number and timestamp of their frame. A
+/// session is opened with `openSession()` on a detector:
+///
+/// ```dart
+/// final DetectionSession<List<Barcode>> session =
+///     await barcodeDetector.openSession();
+/// session.results.listen((SessionResult<List<Barcode>> result) {
+///   print('${result.sequence}: ${result.result}');
+/// });
+///
+/// session.addFrame(GoogleVisionImage.fromPlanes(planes, metadata));
+/// ```
+///
+/// Currently only supported on Android.
+class DetectionSession<T> {
+  DetectionSession._(this._handle, this._decode) {
+    GoogleVision._sessionEvents ??=
+        GoogleVision.sessionChannel.receiveBroadcastStream();
+    _subscription = GoogleVision._sessionEvents!.listen(
+      _onEvent,
+      onError: _results.addError,
+    );
+  }
+
+  final int _handle;
+  final T Function(dynamic reply) _decode;
+  final StreamController<SessionResult<T>> _results =
+      StreamController<SessionResult<T>>.broadcast();
+  late final StreamSubscription<dynamic> _subscription;
+  int _nextSequence = 0;
+  bool _isClosed = false;
+
+  /// The results of the frames added to this session, in completion order.
+  ///
+  /// Frames dropped by the detector's [FrameProcessingOptions.dropPolicy]
+  /// arrive with an [SessionResult.error] whose code is
+  /// [FrameProcessingOptions.droppedErrorCode].
+  Stream<SessionResult<T>> get results => _results.stream;
+
+  /// Sends [image] to the detector and returns its sequence number.
+  ///
+  /// [image] must be created with [GoogleVisionImage.fromBytes] or
+  /// [GoogleVisionImage.fromPlanes]. [timestamp] is passed back unchanged with
+  /// the result and defaults to the current time.
+  int addFrame(GoogleVisionImage image, {Duration? timestamp}) {
+    assert(!_isClosed);
+    assert(image._type == _ImageType.bytes);
+
+    final int sequence = _nextSequence++;
+    GoogleVision.frameChannel.send(_encodeFrame(
+      image,
+      sequence,
+      timestamp ??
+          Duration(microseconds: DateTime.now().microsecondsSinceEpoch),
+    ));
+    return sequence;
+  }
+
+  /// Stops the session. The detector itself stays open.
+  Future<void> close() async {
+    if (_isClosed) return;
+    _isClosed = true;
+
+    await GoogleVision.channel.invokeMethod<void>(
+      'Session#close',
+      <String, dynamic>{'handle': _handle},
+    );
+    await _subscription.cancel();
+    await _results.close();
+  }
+
+  void _onEvent(dynamic event) {
+    if (event['handle'] != _handle || _isClosed) return;
+
+    final int sequence = event['sequence'];
+    final Duration timestamp = Duration(microseconds: event['timestamp']);
+    if (event['errorCode'] != null) {
+      _results.add(SessionResult<T>._(
+        sequence,
+        timestamp,
+        null,
+        PlatformException(
+          code: event['errorCode'],
+          message: event['errorMessage'],
+        ),
+      ));
+    } else {
+      _results.add(SessionResult<T>._(
+        sequence,
+        timestamp,
+        _decode(event['result']),
+        null,
+      ));
+    }
+  }
+
+  /// Encodes a frame in the layout read by `DetectionSessions` on Android.
+  ByteData _encodeFrame(
+    GoogleVisionImage image,
+    int sequence,
+    Duration timestamp,
+  ) {
+    final GoogleVisionImageMetadata metadata = image._metadata!;
+    final List<Uint8List> planes = image._planes ?? <Uint8List>[image._bytes!];
+    final Rect? region = metadata.regionOfInterest;
+
+    int length = 4 + 8 + 8 + 8 + 8 + 4 + 4 + 8 + 1 + 4;
+    if (region != null) length += 4 * 8;
+    for (final Uint8List plane in planes) {
+      length += 12 + plane.length;
+    }
+
+    final Uint8List bytes = Uint8List(length);
+    final ByteData data = ByteData.sublistView(bytes);
+    int offset = 0;
+
+    void putInt32(int value) {
+      data.setInt32(offset, value, Endian.little);
+      offset += 4;
+    }
+
+    void putInt64(int value) {
+      data.setInt64(offset, value, Endian.little);
+      offset += 8;
+    }
+
+    void putFloat64(double value) {
+      data.setFloat64(offset, value, Endian.little);
+      offset += 8;
+    }
+
+    putInt32(_handle);
+    putInt64(sequence);
+    putInt64(timestamp.inMicroseconds);
+    putFloat64(metadata.size.width);
+    putFloat64(metadata.size.height);
+    putInt32(metadata._imageRotationToInt(metadata.rotation));
+    putInt32(metadata.rawFormat is int ? metadata.rawFormat as int : -1);
+    putFloat64(metadata.scale);
+    data.setUint8(offset++, region != null ? 1 : 0);
+    if (region != null) {
+      putFloat64(region.left);
+      putFloat64(region.top);
+      putFloat64(region.width);
+      putFloat64(region.height);
+    }
+
+    putInt32(planes.length);
+    for (int i = 0; i < planes.length; i++) {
+      final GoogleVisionImagePlaneMetadata? plane =
+          image._planes != null && metadata.planeData != null
+              ? metadata.planeData![i]
+              : null;
+      putInt32(plane?.bytesPerRow ?? metadata.size.width.toInt());
+      putInt32(plane?.bytesPerPixel ?? -1);
+      putInt32(planes[i].length);
+      bytes.setAll(offset, planes[i]);
+      offset += planes[i].length;
+    }
+
+    return data;
+  }
+}
+
+/// The result of one frame added to a [DetectionSession].
+class SessionResult<T> {
+  SessionResult._(this.sequence, this.timestamp, this.result, this.error);
+
+  /// The sequence number returned by [DetectionSession.addFrame].
+  final int sequence;
+
+  /// The timestamp the frame was added with.
+  final Duration timestamp;
+
+  /// What the detector found, or null if [error] is set.
+  final T? result;
+
+  /// Why the frame was not processed, e.g. because it was dropped.
+  final PlatformException? error;
+}
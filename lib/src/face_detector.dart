@@ -61,29 +61,50 @@ class FaceDetector {
   /// The options for the face detector.
   final FaceDetectorOptions options;
   final int _handle;
+  final _DeltaCache<Face> _deltaCache = _DeltaCache<Face>();
   bool _hasBeenOpened = false;
   bool _isClosed = false;
 
   /// Detects faces in the input image.
-  Future<List<Face>> processImage(GoogleVisionImage visionImage) async {
+  ///
+  /// See [TextRecognizer.processImage] for [timeout].
+  Future<List<Face>> processImage(
+    GoogleVisionImage visionImage, {
+    Duration? timeout,
+  }) async {
     assert(!_isClosed);
     _hasBeenOpened = true;
 
-    final reply = await GoogleVision.channel.invokeListMethod<dynamic>(
+    final reply = await GoogleVision.channel.invokeMethod<dynamic>(
       'FaceDetector#processImage',
       <String, dynamic>{
         'handle': _handle,
-        'options': <String, dynamic>{
-          'enableClassification': options.enableClassification,
-          'enableLandmarks': options.enableLandmarks,
-          'enableContours': options.enableContours,
-          'enableTracking': options.enableTracking,
-          'minFaceSize': options.minFaceSize,
-          'mode': _enumToString(options.mode),
-        },
+        'options': options._serialize(),
+        'requestId': GoogleVision.nextRequestId++,
+        if (timeout != null) 'timeoutMs': timeout.inMilliseconds,
       }..addAll(visionImage._serialize()),
     );
 
+    return _decodeResult(reply);
+  }
+
+  List<Face> _decodeResult(dynamic reply) {
+    if (_DeltaCache.isDelta(reply)) {
+      return _deltaCache.apply(reply, (dynamic data) => Face._(data));
+    }
+    return _decodeReply(reply);
+  }
+
+  static List<Face> _decodeReply(dynamic reply) {
+    if (reply is Uint8List) {
+      final _CompactResultReader reader = _CompactResultReader(reply);
+      assert(reader.kind == _CompactResultReader.kindFaces);
+      return List<Face>.generate(
+        reader.readInt32(),
+        (_) => Face._fromCompact(reader),
+      );
+    }
+
     final List<Face> faces = <Face>[];
     for (final dynamic data in reply!) {
       faces.add(Face._(data));
@@ -92,6 +113,86 @@ class FaceDetector {
     return faces;
   }
 
+  /// Runs the detector on each image file in [paths].
+  ///
+  /// See [TextRecognizer.processBatch].
+  Stream<BatchResult<List<Face>>> processBatch(
+    List<String> paths, {
+    int? maxDimension,
+  }) {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    return _processBatch<List<Face>>(
+      'FaceDetector#processBatch',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': options._serialize(),
+      },
+      paths,
+      maxDimension,
+      _decodeReply,
+    );
+  }
+
+  /// Opens a [DetectionSession] that streams frames to this detector.
+  ///
+  /// See [TextRecognizer.openSession].
+  Future<DetectionSession<List<Face>>> openSession() async {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    await GoogleVision.channel.invokeMethod<void>(
+      'FaceDetector#openSession',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': options._serialize(),
+      },
+    );
+    return DetectionSession<List<Face>>._(_handle, _decodeResult);
+  }
+
+  /// Cancels the images sent to this detector that have not completed yet.
+  ///
+  /// See [TextRecognizer.cancel].
+  Future<void> cancel() {
+    if (!_hasBeenOpened || _isClosed) return Future<void>.value();
+
+    return GoogleVision.channel.invokeMethod<void>(
+      'FaceDetector#cancel',
+      <String, dynamic>{'handle': _handle},
+    );
+  }
+
+  /// Returns the metrics recorded since the detector processed its first
+  /// image, or null unless [FrameProcessingOptions.collectMetrics] is enabled.
+  Future<DetectorMetrics?> metrics() => DetectorMetrics._snapshot(_handle);
+
+  /// The changes made by this detector's [FrameProcessingOptions.governor].
+  Stream<GovernorDecision> get governorDecisions =>
+      GovernorDecision._forHandle(_handle);
+
+  /// Creates the native detector ahead of the first frame.
+  ///
+  /// Detectors are otherwise created lazily by the first call to
+  /// [processImage], which then pays for loading the model. When [warmUp] is
+  /// true, a tiny blank image is also run through the detector.
+  ///
+  /// Detectors opened with identical options share one native model.
+  Future<void> prepare({bool warmUp = true}) async {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    await GoogleVision.channel.invokeMethod<void>(
+      'FaceDetector#prepare',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': options._serialize(),
+        'warmUp': warmUp,
+      },
+    );
+  }
+
   /// Release resources used by this detector.
   Future<void> close() {
     if (!_hasBeenOpened) _isClosed = true;
@@ -120,6 +221,9 @@ class FaceDetectorOptions {
     this.enableTracking = false,
     this.minFaceSize = 0.1,
     this.mode = FaceDetectorMode.fast,
+    this.fields,
+    this.hybrid,
+    this.processing,
   })  : assert(minFaceSize >= 0.0),
         assert(minFaceSize <= 1.0);
 
@@ -149,6 +253,106 @@ class FaceDetectorOptions {
 
   /// Option for controlling additional accuracy / speed trade-offs.
   final FaceDetectorMode mode;
+
+  /// Which detected fields are returned for each [Face], or null for all.
+  ///
+  /// Fields left out are not converted or sent by the platform, which matters
+  /// most for contours. Currently only supported on Android.
+  final FaceFieldMask? fields;
+
+  /// Runs the configured classification, landmarks and contours only for new
+  /// faces and every so often, or null to run them on every frame.
+  ///
+  /// Currently only supported on Android.
+  final HybridFaceDetection? hybrid;
+
+  /// How frames are scheduled when they arrive faster than they are processed.
+  final FrameProcessingOptions? processing;
+
+  Map<String, dynamic> _serialize() => <String, dynamic>{
+        'enableClassification': enableClassification,
+        'enableLandmarks': enableLandmarks,
+        'enableContours': enableContours,
+        'enableTracking': enableTracking,
+        'minFaceSize': minFaceSize,
+        'mode': _enumToString(mode),
+        if (fields != null) 'fields': fields!._serialize(),
+        if (hybrid != null) 'hybrid': hybrid!._serialize(),
+        if (processing != null) 'processing': processing!._serialize(),
+      };
+}
+
+/// Splits face detection into a cheap tracking pass on every frame and a full
+/// pass, see [FaceDetectorOptions.hybrid].
+///
+/// Every frame runs through a fast detector that only tracks faces. A frame
+/// also runs through the detector configured by [FaceDetectorOptions] when a
+/// face with a new [Face.trackingId] appears, or [fullPassInterval] frames
+/// after the last full pass. Each face is returned with the attributes of its
+/// last full pass: landmarks and contours follow its tracked bounding box,
+/// classification probabilities are returned as last detected.
+///
+/// Faces always have a [Face.trackingId], even without
+/// [FaceDetectorOptions.enableTracking].
+class HybridFaceDetection {
+  /// Constructor for [HybridFaceDetection].
+  const HybridFaceDetection({this.fullPassInterval = 30})
+      : assert(fullPassInterval > 0);
+
+  /// Frames after which the full pass runs again although no new face
+  /// appeared.
+  final int fullPassInterval;
+
+  Map<String, dynamic> _serialize() => <String, dynamic>{
+        'fullPassInterval': fullPassInterval,
+      };
+}
+
+/// Selects the fields returned for each [Face], see [FaceDetectorOptions.fields].
+///
+/// The bounding box and [Face.trackingId] are always returned. Fields that are
+/// left out read as null.
+class FaceFieldMask {
+  /// Constructor for [FaceFieldMask].
+  const FaceFieldMask({
+    this.landmarks,
+    this.contours,
+    this.classification = true,
+    this.headAngles = true,
+  });
+
+  /// Only returns the bounding box and tracking id of each face.
+  static const FaceFieldMask boundingBox = FaceFieldMask(
+    landmarks: <FaceLandmarkType>{},
+    contours: <FaceContourType>{},
+    classification: false,
+    headAngles: false,
+  );
+
+  /// The landmarks to return when [FaceDetectorOptions.enableLandmarks] is
+  /// set, or null for all.
+  final Set<FaceLandmarkType>? landmarks;
+
+  /// The contours to return when [FaceDetectorOptions.enableContours] is set,
+  /// or null for all.
+  ///
+  /// [FaceContourType.allPoints] repeats the points of every other contour, so
+  /// leave it out unless it is used.
+  final Set<FaceContourType>? contours;
+
+  /// Whether the smiling and eyes open probabilities are returned.
+  final bool classification;
+
+  /// Whether [Face.headEulerAngleY] and [Face.headEulerAngleZ] are returned.
+  final bool headAngles;
+
+  Map<String, dynamic> _serialize() => <String, dynamic>{
+        if (landmarks != null)
+          'landmarks': landmarks!.map(_enumToString).toList(),
+        if (contours != null) 'contours': contours!.map(_enumToString).toList(),
+        'classification': classification,
+        'headAngles': headAngles,
+      };
 }
 
 /// Represents a face detected by [FaceDetector].
@@ -169,7 +373,8 @@ class Face {
         _landmarks = Map<FaceLandmarkType, FaceLandmark?>.fromIterables(
             FaceLandmarkType.values,
             FaceLandmarkType.values.map((FaceLandmarkType type) {
-          final List<dynamic>? pos = data['landmarks'][_enumToString(type)];
+          final List<dynamic>? pos =
+              (data['landmarks'] ?? <String, dynamic>{})[_enumToString(type)];
           return (pos == null)
               ? null
               : FaceLandmark._(
@@ -193,6 +398,65 @@ class Face {
                 );
         }));
 
+  Face._fromValues({
+    required this.boundingBox,
+    required this.headEulerAngleY,
+    required this.headEulerAngleZ,
+    required this.leftEyeOpenProbability,
+    required this.rightEyeOpenProbability,
+    required this.smilingProbability,
+    required this.trackingId,
+    required Map<FaceLandmarkType, FaceLandmark?> landmarks,
+    required Map<FaceContourType, FaceContour?> contours,
+  })  : _landmarks = landmarks,
+        _contours = contours;
+
+  factory Face._fromCompact(_CompactResultReader reader) {
+    final Rect boundingBox = reader.readRect()!;
+    final double headEulerAngleY = reader.readFloat32();
+    final double headEulerAngleZ = reader.readFloat32();
+    final double? smilingProbability = reader.readNullableFloat32();
+    final double? leftEyeOpenProbability = reader.readNullableFloat32();
+    final double? rightEyeOpenProbability = reader.readNullableFloat32();
+    final bool hasTrackingId = reader.readBool();
+    final int trackingId = reader.readInt32();
+
+    final Map<FaceLandmarkType, FaceLandmark?> landmarks =
+        <FaceLandmarkType, FaceLandmark?>{};
+    for (final FaceLandmarkType type in FaceLandmarkType.values) {
+      final Offset? position = reader.readPoint();
+      landmarks[type] = position == null ? null : FaceLandmark._(type, position);
+    }
+
+    // allPoints is not sent and is rebuilt from the individual contours.
+    final Map<FaceContourType, FaceContour?> contours =
+        <FaceContourType, FaceContour?>{FaceContourType.allPoints: null};
+    final List<Offset> allPoints = <Offset>[];
+    for (final FaceContourType type in FaceContourType.values) {
+      if (type == FaceContourType.allPoints) continue;
+
+      final List<Offset>? points = reader.readNullablePoints();
+      if (points != null) allPoints.addAll(points);
+      contours[type] = points == null ? null : FaceContour._(type, points);
+    }
+    if (allPoints.isNotEmpty) {
+      contours[FaceContourType.allPoints] =
+          FaceContour._(FaceContourType.allPoints, allPoints);
+    }
+
+    return Face._fromValues(
+      boundingBox: boundingBox,
+      headEulerAngleY: headEulerAngleY,
+      headEulerAngleZ: headEulerAngleZ,
+      leftEyeOpenProbability: leftEyeOpenProbability,
+      rightEyeOpenProbability: rightEyeOpenProbability,
+      smilingProbability: smilingProbability,
+      trackingId: hasTrackingId ? trackingId : null,
+      landmarks: landmarks,
+      contours: contours,
+    );
+  }
+
   final Map<FaceLandmarkType, FaceLandmark?> _landmarks;
   final Map<FaceContourType, FaceContour?> _contours;
 
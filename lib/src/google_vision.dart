@@ -11,6 +11,240 @@ enum _ImageType { file, bytes }
 /// Rotation is counter-clockwise.
 enum ImageRotation { rotation0, rotation90, rotation180, rotation270 }
 
+/// Strategy used when frames arrive faster than a detector can process them.
+///
+/// Frames dropped under any policy other than [none] complete with a
+/// [PlatformException] whose code is [FrameProcessingOptions.droppedErrorCode].
+enum FrameDropPolicy {
+  /// Every frame is processed, no matter how many are already in flight.
+  none,
+
+  /// Only the newest waiting frame is kept; older waiting frames are dropped.
+  keepLatest,
+
+  /// Up to [FrameProcessingOptions.maxPendingFrames] frames wait; further
+  /// frames are dropped.
+  boundedQueue,
+
+  /// Frames arriving while another frame is being processed are dropped.
+  rejectWhenBusy,
+}
+
+/// Wire format used to return detection results from the platform.
+enum ResultEncoding {
+  /// Results are sent as nested maps and lists.
+  standard,
+
+  /// Results are packed into a single binary buffer.
+  ///
+  /// Reduces allocations and serialization cost for large results such as
+  /// faces with contours or dense text. The result objects are still built
+  /// as soon as the buffer arrives. Currently only supported on Android;
+  /// image labels are always sent as [standard].
+  compact,
+}
+
+/// Options controlling how a detector schedules the frames it receives and
+/// returns its results.
+///
+/// These are applied when the detector processes its first image and cannot be
+/// changed afterwards.
+class FrameProcessingOptions {
+  /// Constructor for [FrameProcessingOptions].
+  const FrameProcessingOptions({
+    this.dropPolicy = FrameDropPolicy.none,
+    this.maxPendingFrames = 1,
+    this.resultEncoding = ResultEncoding.standard,
+    this.deltaResults = false,
+    this.deltaMoveThreshold = 2.0,
+    this.collectMetrics = false,
+    this.traceSections = false,
+    this.governor,
+    this.motionGate,
+  })  : assert(maxPendingFrames >= 1),
+        assert(deltaMoveThreshold >= 0.0);
+
+  /// Error code of the [PlatformException] thrown for dropped frames.
+  static const String droppedErrorCode = 'frameDropped';
+
+  /// Error code of the [PlatformException] thrown for images whose request
+  /// was cancelled with the detector's `cancel()` method or by closing it.
+  static const String cancelledErrorCode = 'requestCancelled';
+
+  /// Error code of the [PlatformException] thrown for images that missed the
+  /// timeout they were sent with.
+  static const String deadlineExceededErrorCode = 'deadlineExceeded';
+
+  /// What to do with frames that arrive while the detector is busy.
+  final FrameDropPolicy dropPolicy;
+
+  /// Number of frames allowed to wait when using
+  /// [FrameDropPolicy.boundedQueue].
+  final int maxPendingFrames;
+
+  /// How detection results are encoded by the platform.
+  ///
+  /// Ignored when [deltaResults] is enabled.
+  final ResultEncoding resultEncoding;
+
+  /// Whether the platform only sends what changed since the previous frame.
+  ///
+  /// Detections are matched across frames by raw value for barcodes, by
+  /// tracking id for faces, by text for labels and by text and position for
+  /// text blocks. Results returned to Dart are still complete; unchanged
+  /// detections are reused from the previous frame. Currently only supported
+  /// on Android.
+  final bool deltaResults;
+
+  /// How far, in pixels, a detection's bounding box may shift before it is
+  /// sent again when using [deltaResults].
+  final double deltaMoveThreshold;
+
+  /// Whether the platform records latency and throughput metrics for the
+  /// detector, returned by its `metrics()` method.
+  ///
+  /// Currently only supported on Android.
+  final bool collectMetrics;
+
+  /// Whether the phases of each frame are marked as `android.os.Trace`
+  /// sections, visible in systrace and Perfetto.
+  ///
+  /// Only used when [collectMetrics] is enabled.
+  final bool traceSections;
+
+  /// Adapts frame skipping, frame resolution and detector mode to meet a
+  /// latency target, or null to always process frames as they are sent.
+  ///
+  /// Currently only supported on Android.
+  final GovernorOptions? governor;
+
+  /// Answers frames of a static scene with the result of the last processed
+  /// frame, or null to process every frame.
+  ///
+  /// Currently only supported on Android.
+  final MotionGateOptions? motionGate;
+
+  Map<String, dynamic> _serialize() => <String, dynamic>{
+        'dropPolicy': _enumToString(dropPolicy),
+        'maxPendingFrames': maxPendingFrames,
+        'resultEncoding': _enumToString(resultEncoding),
+        'deltaResults': deltaResults,
+        'deltaMoveThreshold': deltaMoveThreshold,
+        'collectMetrics': collectMetrics,
+        'traceSections': traceSections,
+        if (governor != null) 'governor': governor!._serialize(),
+        if (motionGate != null) 'motionGate': motionGate!._serialize(),
+      };
+}
+
+/// Options of the gate that skips detection on frames of a static scene, see
+/// [FrameProcessingOptions.motionGate].
+///
+/// Before a frame is decoded, a grid of samples of its luma plane is compared
+/// to the last processed frame. When the mean absolute difference of the
+/// samples, in luma levels from 0 to 255, is below [threshold], the frame is
+/// answered right away with the result of the last processed frame. Only
+/// frames created with [GoogleVisionImage.fromBytes] or
+/// [GoogleVisionImage.fromPlanes] are gated.
+class MotionGateOptions {
+  /// Constructor for [MotionGateOptions].
+  const MotionGateOptions({
+    this.threshold = 2.0,
+    this.maxSkippedFrames = 30,
+  })  : assert(threshold >= 0.0),
+        assert(maxSkippedFrames >= 0);
+
+  /// Mean luma difference below which a frame counts as unchanged.
+  final double threshold;
+
+  /// Most frames answered in a row with a cached result before a frame is
+  /// processed anyway, or 0 for no limit.
+  final int maxSkippedFrames;
+
+  Map<String, dynamic> _serialize() => <String, dynamic>{
+        'threshold': threshold,
+        'maxSkippedFrames': maxSkippedFrames,
+      };
+}
+
+/// Options of the governor that trades detection quality for latency, see
+/// [FrameProcessingOptions.governor].
+///
+/// The governor measures the time from a frame's arrival on the platform until
+/// its result is sent. While that stays above [targetLatency], it switches a
+/// [FaceDetector] in [FaceDetectorMode.accurate] to [FaceDetectorMode.fast],
+/// then downscales frames down to [minScale], then skips up to [maxFrameSkip]
+/// frames between processed frames. Once latency is well below the target the
+/// steps are undone in reverse order. Each change is reported as a
+/// [GovernorDecision] on the detector's `governorDecisions` stream.
+///
+/// Downscaling only applies to frames created with [GoogleVisionImage.fromBytes]
+/// or [GoogleVisionImage.fromPlanes]; results are still reported in the
+/// coordinates of the full frame. Skipped frames complete with a
+/// [PlatformException] whose code is [FrameProcessingOptions.droppedErrorCode].
+class GovernorOptions {
+  /// Constructor for [GovernorOptions].
+  const GovernorOptions({
+    required this.targetLatency,
+    this.maxFrameSkip = 2,
+    this.minScale = 0.5,
+    this.allowFastMode = true,
+  })  : assert(maxFrameSkip >= 0),
+        assert(minScale > 0.0 && minScale <= 1.0);
+
+  /// The latency each frame should stay under.
+  final Duration targetLatency;
+
+  /// Most frames skipped between two processed frames.
+  final int maxFrameSkip;
+
+  /// Smallest factor frames are downscaled by. Range (0.0, 1.0].
+  final double minScale;
+
+  /// Whether a face detector may switch to [FaceDetectorMode.fast].
+  ///
+  /// Tracking ids are not kept when the mode changes.
+  final bool allowFastMode;
+
+  Map<String, dynamic> _serialize() => <String, dynamic>{
+        'targetLatencyMs': targetLatency.inMicroseconds / 1000.0,
+        'maxFrameSkip': maxFrameSkip,
+        'minScale': minScale,
+        'allowFastMode': allowFastMode,
+      };
+}
+
+/// A change made by the governor of a detector, see [GovernorOptions].
+class GovernorDecision {
+  GovernorDecision._(dynamic data)
+      : latency = Duration(
+          microseconds: (data['latencyMs'] * 1000).round(),
+        ),
+        frameSkip = data['frameSkip'],
+        scale = data['scale'],
+        fastMode = data['fastMode'];
+
+  static Stream<GovernorDecision> _forHandle(int handle) {
+    GoogleVision._governorEvents ??=
+        GoogleVision.governorChannel.receiveBroadcastStream();
+    return GoogleVision._governorEvents!
+        .where((dynamic event) => event['handle'] == handle)
+        .map((dynamic event) => GovernorDecision._(event));
+  }
+
+  /// The smoothed frame latency that led to the change.
+  final Duration latency;
+
+  /// Number of frames now skipped between two processed frames.
+  final int frameSkip;
+
+  /// Factor frames are now downscaled by.
+  final double scale;
+
+  /// Whether the detector now runs in its fast mode.
+  final bool fastMode;
+}
+
 /// Detected language from text recognition in regular and document images.
 class RecognizedLanguage {
   RecognizedLanguage._(dynamic data) : languageCode = data['languageCode'];
@@ -35,9 +269,36 @@ class GoogleVision {
   static const MethodChannel channel =
       MethodChannel('plugins.flutter.brianmtully.com/google_ml_vision');
 
+  @visibleForTesting
+  static const EventChannel batchChannel =
+      EventChannel('plugins.flutter.brianmtully.com/google_ml_vision/batch');
+
+  @visibleForTesting
+  static const BasicMessageChannel<ByteData> frameChannel =
+      BasicMessageChannel<ByteData>(
+    'plugins.flutter.brianmtully.com/google_ml_vision/frames',
+    BinaryCodec(),
+  );
+
+  @visibleForTesting
+  static const EventChannel sessionChannel = EventChannel(
+      'plugins.flutter.brianmtully.com/google_ml_vision/sessions');
+
+  @visibleForTesting
+  static const EventChannel governorChannel = EventChannel(
+      'plugins.flutter.brianmtully.com/google_ml_vision/governor');
+
   @visibleForTesting
   static int nextHandle = 0;
 
+  @visibleForTesting
+  static int nextRequestId = 0;
+
+  static int _nextBatchId = 0;
+  static Stream<dynamic>? _batchEvents;
+  static Stream<dynamic>? _sessionEvents;
+  static Stream<dynamic>? _governorEvents;
+
   /// Singleton of [GoogleVision].
   ///
   /// Use this get an instance of a detector:
@@ -71,9 +332,27 @@ class GoogleVision {
     );
   }
 
+  /// Creates an instance of [ObjectDetector].
+  ObjectDetector objectDetector([ObjectDetectorOptions? options]) {
+    return ObjectDetector._(
+      options ?? const ObjectDetectorOptions(),
+      nextHandle++,
+    );
+  }
+
+  /// Creates a [DetectionPipeline] running [detectors] on the same image.
+  ///
+  /// Each detector must be a [BarcodeDetector], [FaceDetector],
+  /// [ImageLabeler], [ObjectDetector] or [TextRecognizer] created by this
+  /// instance.
+  DetectionPipeline pipeline(List<Object> detectors) {
+    return DetectionPipeline._(detectors);
+  }
+
   /// Creates an instance of [TextRecognizer].
-  TextRecognizer textRecognizer() {
+  TextRecognizer textRecognizer([TextRecognizerOptions? options]) {
     return TextRecognizer._(
+      options: options ?? const TextRecognizerOptions(),
       handle: nextHandle++,
     );
   }
@@ -87,25 +366,41 @@ class GoogleVisionImage {
     required _ImageType type,
     GoogleVisionImageMetadata? metadata,
     String? filePath,
+    int? maxDimension,
     Uint8List? bytes,
+    List<Uint8List>? planes,
   })  : _filePath = filePath,
+        _maxDimension = maxDimension,
         _metadata = metadata,
         _bytes = bytes,
+        _planes = planes,
         _type = type;
 
   /// Construct a [GoogleVisionImage] from a file.
-  factory GoogleVisionImage.fromFile(File imageFile) {
-    return GoogleVisionImage._(
-      type: _ImageType.file,
-      filePath: imageFile.path,
+  ///
+  /// When [maxDimension] is set, larger images are downsampled while decoding
+  /// so that their longer side is at most [maxDimension] pixels. Detection
+  /// results still use the coordinates of the full size image. Currently only
+  /// used on Android.
+  factory GoogleVisionImage.fromFile(File imageFile, {int? maxDimension}) {
+    return GoogleVisionImage.fromFilePath(
+      imageFile.path,
+      maxDimension: maxDimension,
     );
   }
 
   /// Construct a [GoogleVisionImage] from a file path.
-  factory GoogleVisionImage.fromFilePath(String imagePath) {
+  ///
+  /// See [GoogleVisionImage.fromFile] for [maxDimension].
+  factory GoogleVisionImage.fromFilePath(
+    String imagePath, {
+    int? maxDimension,
+  }) {
+    assert(maxDimension == null || maxDimension > 0);
     return GoogleVisionImage._(
       type: _ImageType.file,
       filePath: imagePath,
+      maxDimension: maxDimension,
     );
   }
 
@@ -128,15 +423,48 @@ class GoogleVisionImage {
     );
   }
 
+  /// Construct a [GoogleVisionImage] from the separate planes of a camera frame.
+  ///
+  /// On Android, expects `android.graphics.ImageFormat.YUV_420_888` planes
+  /// with [GoogleVisionImageMetadata.rawFormat] set accordingly. The planes are
+  /// sent as-is and packed natively using the row and pixel strides from
+  /// [GoogleVisionImageMetadata.planeData], so no conversion to NV21 is needed
+  /// in Dart.
+  ///
+  /// On iOS, the planes are concatenated and handled like [fromBytes].
+  factory GoogleVisionImage.fromPlanes(
+    List<Uint8List> planes,
+    GoogleVisionImageMetadata metadata,
+  ) {
+    if (defaultTargetPlatform == TargetPlatform.iOS) {
+      final WriteBuffer allBytes = WriteBuffer();
+      planes.forEach(allBytes.putUint8List);
+      return GoogleVisionImage.fromBytes(
+        allBytes.done().buffer.asUint8List(),
+        metadata,
+      );
+    }
+
+    return GoogleVisionImage._(
+      type: _ImageType.bytes,
+      planes: planes,
+      metadata: metadata,
+    );
+  }
+
   final Uint8List? _bytes;
+  final List<Uint8List>? _planes;
   final String? _filePath;
+  final int? _maxDimension;
   final GoogleVisionImageMetadata? _metadata;
   final _ImageType _type;
 
   Map<String, dynamic> _serialize() => <String, dynamic>{
         'type': _enumToString(_type),
         'bytes': _bytes,
+        if (_planes != null) 'planes': _planes,
         'path': _filePath,
+        if (_maxDimension != null) 'maxDimension': _maxDimension,
         'metadata': _type == _ImageType.bytes ? _metadata!._serialize() : null,
       };
 }
@@ -148,6 +476,7 @@ class GoogleVisionImage {
 class GoogleVisionImagePlaneMetadata {
   GoogleVisionImagePlaneMetadata({
     required this.bytesPerRow,
+    this.bytesPerPixel,
     this.height,
     this.width,
   })  : assert(defaultTargetPlatform != TargetPlatform.iOS || height != null),
@@ -156,6 +485,12 @@ class GoogleVisionImagePlaneMetadata {
   /// The row stride for this color plane, in bytes.
   final int bytesPerRow;
 
+  /// The distance between adjacent pixels in this color plane, in bytes.
+  ///
+  /// Used on Android to read interleaved chroma planes passed to
+  /// [GoogleVisionImage.fromPlanes]. Defaults to 1 when `null`.
+  final int? bytesPerPixel;
+
   /// Height of the pixel buffer on iOS.
   final int? height;
 
@@ -164,6 +499,7 @@ class GoogleVisionImagePlaneMetadata {
 
   Map<String, dynamic> _serialize() => <String, dynamic>{
         'bytesPerRow': bytesPerRow,
+        'bytesPerPixel': bytesPerPixel,
         'height': height,
         'width': width,
       };
@@ -182,7 +518,10 @@ class GoogleVisionImageMetadata {
     this.rawFormat,
     this.planeData,
     this.rotation = ImageRotation.rotation0,
-  })  : assert(
+    this.regionOfInterest,
+    this.scale = 1.0,
+  })  : assert(scale > 0.0 && scale <= 1.0),
+        assert(
           defaultTargetPlatform != TargetPlatform.iOS || rawFormat != null,
         ),
         assert(
@@ -197,7 +536,7 @@ class GoogleVisionImageMetadata {
   /// Not currently used on iOS.
   final ImageRotation rotation;
 
-  /// Raw version of the format from the iOS platform.
+  /// Raw version of the format from the platform.
   ///
   /// Since iOS can use any planar format, this format will be used to create
   /// the image buffer on iOS.
@@ -205,14 +544,31 @@ class GoogleVisionImageMetadata {
   /// On iOS, this is a `FourCharCode` constant from Pixel Format Identifiers.
   /// See https://developer.apple.com/documentation/corevideo/1563591-pixel_format_identifiers?language=objc
   ///
-  /// Not used on Android.
+  /// On Android, this is an `android.graphics.ImageFormat` constant. `YV12`
+  /// byte buffers are passed to ML Kit as such; any other single buffer is
+  /// treated as `NV21`.
   final Object? rawFormat;
 
-  /// The plane attributes to create the image buffer on iOS.
+  /// The plane attributes to create the image buffer.
   ///
-  /// Not used on Android.
+  /// On Android, only used by [GoogleVisionImage.fromPlanes].
   final List<GoogleVisionImagePlaneMetadata>? planeData;
 
+  /// The part of the image passed to the detector, or null for all of it.
+  ///
+  /// Given in pixels of the unrotated image, like [size]. Detection results
+  /// still use the coordinates of the whole image.
+  ///
+  /// Currently only used on Android.
+  final Rect? regionOfInterest;
+
+  /// Factor by which the image, or its [regionOfInterest], is downscaled
+  /// before detection.
+  ///
+  /// Smaller inputs are faster to process, at the cost of missing small
+  /// details. Must be in range (0.0, 1.0]. Currently only used on Android.
+  final double scale;
+
   int _imageRotationToInt(ImageRotation rotation) {
     switch (rotation) {
       case ImageRotation.rotation90:
@@ -235,6 +591,14 @@ class GoogleVisionImageMetadata {
         'planeData': planeData
             ?.map((GoogleVisionImagePlaneMetadata plane) => plane._serialize())
             .toList(),
+        if (regionOfInterest != null)
+          'regionOfInterest': <String, dynamic>{
+            'left': regionOfInterest!.left,
+            'top': regionOfInterest!.top,
+            'width': regionOfInterest!.width,
+            'height': regionOfInterest!.height,
+          },
+        if (scale != 1.0) 'scale': scale,
       };
 }
 
@@ -242,3 +606,358 @@ String _enumToString(dynamic enumValue) {
   final String enumString = enumValue.toString();
   return enumString.substring(enumString.indexOf('.') + 1);
 }
+
+/// Rebuilds complete results from the deltas sent with
+/// [FrameProcessingOptions.deltaResults].
+class _DeltaCache<T> {
+  final Map<int, T> _entries = <int, T>{};
+  List<T> _current = <T>[];
+
+  static bool isDelta(dynamic reply) => reply is Map && reply['delta'] == true;
+
+  /// Applies [delta] and returns the current entries.
+  ///
+  /// Returns the previous list itself when nothing changed.
+  List<T> apply(Map<dynamic, dynamic> delta, T Function(dynamic data) decode) {
+    if (delta['unchanged'] == true) return _current;
+
+    for (final dynamic id in delta['removed']) {
+      _entries.remove(id);
+    }
+    for (final dynamic data in delta['moved']) {
+      _entries[data['deltaId']] = decode(data);
+    }
+    for (final dynamic data in delta['added']) {
+      _entries[data['deltaId']] = decode(data);
+    }
+
+    return _current = List<T>.unmodifiable(_entries.values);
+  }
+}
+
+/// Latency and throughput of a detector, collected when
+/// [FrameProcessingOptions.collectMetrics] is enabled.
+class DetectorMetrics {
+  DetectorMetrics._(dynamic data)
+      : framesReceived = data['framesReceived'],
+        framesDropped = data['framesDropped'],
+        framesFailed = data['framesFailed'],
+        decode = MetricsHistogram._(data['decode']),
+        inference = MetricsHistogram._(data['inference']),
+        marshal = MetricsHistogram._(data['marshal']),
+        total = MetricsHistogram._(data['total']),
+        objectsPerResult = MetricsHistogram._(data['objectsPerResult']);
+
+  static Future<DetectorMetrics?> _snapshot(int handle) async {
+    final dynamic reply = await GoogleVision.channel.invokeMethod<dynamic>(
+      'Metrics#snapshot',
+      <String, dynamic>{'handle': handle},
+    );
+    return reply == null ? null : DetectorMetrics._(reply);
+  }
+
+  /// Number of frames sent to the detector.
+  final int framesReceived;
+
+  /// Number of frames dropped by [FrameProcessingOptions.dropPolicy].
+  final int framesDropped;
+
+  /// Number of frames that completed with an error.
+  final int framesFailed;
+
+  /// Milliseconds spent building the platform image from the frame.
+  final MetricsHistogram decode;
+
+  /// Milliseconds from handing the image to ML Kit until it reported back.
+  final MetricsHistogram inference;
+
+  /// Milliseconds spent converting the ML Kit result into a channel message.
+  final MetricsHistogram marshal;
+
+  /// Milliseconds from the frame's arrival until its result was sent,
+  /// including time spent waiting for the detector.
+  final MetricsHistogram total;
+
+  /// Number of objects allocated for each result message.
+  final MetricsHistogram objectsPerResult;
+}
+
+/// Distribution of a metric in [DetectorMetrics].
+class MetricsHistogram {
+  MetricsHistogram._(dynamic data)
+      : count = data['count'],
+        sum = data['sum'],
+        max = data['max'],
+        bounds = List<double>.unmodifiable(data['bounds']),
+        buckets = List<int>.unmodifiable(data['buckets']);
+
+  /// Number of recorded values.
+  final int count;
+
+  /// Sum of the recorded values.
+  final double sum;
+
+  /// Largest recorded value.
+  final double max;
+
+  /// Upper bounds of the [buckets], except for the last bucket which holds
+  /// every value above the last bound.
+  final List<double> bounds;
+
+  /// Number of recorded values per bucket.
+  final List<int> buckets;
+
+  /// Average of the recorded values, or 0 if none were recorded.
+  double get mean => count == 0 ? 0 : sum / count;
+}
+
+/// The result of one image of a batch started with `processBatch`.
+class BatchResult<T> {
+  BatchResult._(this.index, this.path, this.result, this.error);
+
+  /// Position of the image in the list passed to `processBatch`.
+  final int index;
+
+  /// The file path or URI of the image.
+  final String path;
+
+  /// What the detector found, or null if [error] is set.
+  final T? result;
+
+  /// Why the image could not be processed, e.g. because it could not be
+  /// decoded.
+  final PlatformException? error;
+}
+
+/// Starts a batch with [method] and streams its results.
+///
+/// Results arrive in completion order, not in the order of [paths]. Canceling
+/// the subscription cancels the images that have not been processed yet.
+Stream<BatchResult<T>> _processBatch<T>(
+  String method,
+  Map<String, dynamic> arguments,
+  List<String> paths,
+  int? maxDimension,
+  T Function(dynamic reply) decode,
+) {
+  final int batchId = GoogleVision._nextBatchId++;
+  late final StreamController<BatchResult<T>> controller;
+  StreamSubscription<dynamic>? subscription;
+  bool done = false;
+
+  void finish() {
+    done = true;
+    subscription?.cancel();
+    controller.close();
+  }
+
+  controller = StreamController<BatchResult<T>>(
+    onListen: () {
+      GoogleVision._batchEvents ??=
+          GoogleVision.batchChannel.receiveBroadcastStream();
+      subscription = GoogleVision._batchEvents!.listen((dynamic event) {
+        if (event['batchId'] != batchId) return;
+        if (event['done'] == true) {
+          finish();
+          return;
+        }
+
+        final int index = event['index'];
+        controller.add(event['errorCode'] != null
+            ? BatchResult<T>._(
+                index,
+                paths[index],
+                null,
+                PlatformException(
+                  code: event['errorCode'],
+                  message: event['errorMessage'],
+                ),
+              )
+            : BatchResult<T>._(
+                index, paths[index], decode(event['result']), null));
+      }, onError: controller.addError);
+
+      GoogleVision.channel.invokeMethod<void>(
+        method,
+        <String, dynamic>{
+          'batchId': batchId,
+          'paths': paths,
+          if (maxDimension != null) 'maxDimension': maxDimension,
+        }..addAll(arguments),
+      ).catchError((Object error) {
+        controller.addError(error);
+        finish();
+      });
+    },
+    onCancel: () {
+      if (done) return null;
+      done = true;
+      subscription?.cancel();
+      return GoogleVision.channel.invokeMethod<void>(
+        'Batch#cancel',
+        <String, dynamic>{'batchId': batchId},
+      );
+    },
+  );
+  return controller.stream;
+}
+
+/// Reads results sent with [ResultEncoding.compact].
+///
+/// Mirrors `CompactResultWriter` on Android. Callers read the whole buffer up
+/// front into result objects, nothing is decoded on access. Each entry of the
+/// string table is decoded once, the first time it is read, and shared by
+/// every value referring to it. Coordinates are mapped by the transform in the
+/// header, which moves results of a downscaled region back to the frame.
+class _CompactResultReader {
+  _CompactResultReader(Uint8List bytes) : _data = ByteData.sublistView(bytes) {
+    final int version = _data.getUint8(0);
+    if (version != _version) {
+      throw ArgumentError('Unsupported compact result version: $version');
+    }
+    kind = _data.getUint8(1);
+    _scaleX = _data.getFloat32(2, Endian.little);
+    _scaleY = _data.getFloat32(6, Endian.little);
+    _offsetX = _data.getFloat32(10, Endian.little);
+    _offsetY = _data.getFloat32(14, Endian.little);
+
+    final int stringCount = _data.getUint32(18, Endian.little);
+    _offset = 22;
+    _stringOffsets = List<int>.filled(stringCount, 0);
+    _strings = List<String?>.filled(stringCount, null);
+    for (int i = 0; i < stringCount; i++) {
+      _stringOffsets[i] = _offset;
+      _offset += 4 + _data.getUint32(_offset, Endian.little);
+    }
+  }
+
+  static const int _version = 2;
+
+  static const int kindBarcodes = 1;
+  static const int kindFaces = 2;
+  static const int kindText = 3;
+
+  static const int _tagNull = 0;
+  static const int _tagTrue = 1;
+  static const int _tagFalse = 2;
+  static const int _tagInt = 3;
+  static const int _tagDouble = 4;
+  static const int _tagString = 5;
+  static const int _tagList = 6;
+  static const int _tagMap = 7;
+
+  final ByteData _data;
+  late final int kind;
+  late final List<int> _stringOffsets;
+  late final List<String?> _strings;
+  late final double _scaleX;
+  late final double _scaleY;
+  late final double _offsetX;
+  late final double _offsetY;
+  int _offset = 0;
+
+  int readUint8() => _data.getUint8(_offset++);
+
+  bool readBool() => readUint8() != 0;
+
+  int readInt32() {
+    final int value = _data.getInt32(_offset, Endian.little);
+    _offset += 4;
+    return value;
+  }
+
+  double readFloat32() {
+    final double value = _data.getFloat32(_offset, Endian.little);
+    _offset += 4;
+    return value;
+  }
+
+  /// Reads a float that is NaN when the platform value was null.
+  double? readNullableFloat32() {
+    final double value = readFloat32();
+    return value.isNaN ? null : value;
+  }
+
+  double readFloat64() {
+    final double value = _data.getFloat64(_offset, Endian.little);
+    _offset += 8;
+    return value;
+  }
+
+  String? readString() {
+    final int index = readInt32();
+    if (index < 0) return null;
+
+    return _strings[index] ??= _decodeString(index);
+  }
+
+  String _decodeString(int index) {
+    final int offset = _stringOffsets[index];
+    final int length = _data.getUint32(offset, Endian.little);
+    return utf8.decode(
+      Uint8List.sublistView(_data, offset + 4, offset + 4 + length),
+    );
+  }
+
+  Rect? readRect() {
+    if (!readBool()) return null;
+
+    return Rect.fromLTWH(
+      readFloat32() * _scaleX + _offsetX,
+      readFloat32() * _scaleY + _offsetY,
+      readFloat32() * _scaleX,
+      readFloat32() * _scaleY,
+    );
+  }
+
+  Offset? readPoint() {
+    if (!readBool()) return null;
+
+    return _readOffset();
+  }
+
+  List<Offset> readPoints() => readNullablePoints() ?? <Offset>[];
+
+  /// Reads a list of points that is null when its count is negative.
+  List<Offset>? readNullablePoints() {
+    final int count = readInt32();
+    if (count < 0) return null;
+
+    return List<Offset>.generate(count, (_) => _readOffset());
+  }
+
+  Offset _readOffset() => Offset(
+        readFloat32() * _scaleX + _offsetX,
+        readFloat32() * _scaleY + _offsetY,
+      );
+
+  dynamic readValue() {
+    final int tag = readUint8();
+    switch (tag) {
+      case _tagNull:
+        return null;
+      case _tagTrue:
+        return true;
+      case _tagFalse:
+        return false;
+      case _tagInt:
+        return readInt32();
+      case _tagDouble:
+        return readFloat64();
+      case _tagString:
+        return readString();
+      case _tagList:
+        return List<dynamic>.generate(readInt32(), (_) => readValue());
+      case _tagMap:
+        final int count = readInt32();
+        final Map<dynamic, dynamic> map = <dynamic, dynamic>{};
+        for (int i = 0; i < count; i++) {
+          final String? key = readString();
+          map[key] = readValue();
+        }
+        return map;
+      default:
+        throw ArgumentError('Unknown compact value tag: $tag');
+    }
+  }
+}
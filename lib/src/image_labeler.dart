@@ -33,24 +33,41 @@ class ImageLabeler {
 
   final ImageLabelerOptions _options;
   final int _handle;
+  final _DeltaCache<ImageLabel> _deltaCache = _DeltaCache<ImageLabel>();
   bool _hasBeenOpened = false;
   bool _isClosed = false;
 
   /// Finds entities in the input image.
-  Future<List<ImageLabel>> processImage(GoogleVisionImage visionImage) async {
+  ///
+  /// See [TextRecognizer.processImage] for [timeout].
+  Future<List<ImageLabel>> processImage(
+    GoogleVisionImage visionImage, {
+    Duration? timeout,
+  }) async {
     assert(!_isClosed);
     _hasBeenOpened = true;
 
-    final reply = await GoogleVision.channel.invokeListMethod<dynamic>(
+    final reply = await GoogleVision.channel.invokeMethod<dynamic>(
       'ImageLabeler#processImage',
       <String, dynamic>{
         'handle': _handle,
-        'options': <String, dynamic>{
-          'confidenceThreshold': _options.confidenceThreshold,
-        },
+        'options': _options._serialize(),
+        'requestId': GoogleVision.nextRequestId++,
+        if (timeout != null) 'timeoutMs': timeout.inMilliseconds,
       }..addAll(visionImage._serialize()),
     );
 
+    return _decodeResult(reply);
+  }
+
+  List<ImageLabel> _decodeResult(dynamic reply) {
+    if (_DeltaCache.isDelta(reply)) {
+      return _deltaCache.apply(reply, (dynamic data) => ImageLabel._(data));
+    }
+    return _decodeReply(reply);
+  }
+
+  static List<ImageLabel> _decodeReply(dynamic reply) {
     final List<ImageLabel> labels = <ImageLabel>[];
     for (final dynamic data in reply!) {
       labels.add(ImageLabel._(data));
@@ -59,6 +76,86 @@ class ImageLabeler {
     return labels;
   }
 
+  /// Runs the detector on each image file in [paths].
+  ///
+  /// See [TextRecognizer.processBatch].
+  Stream<BatchResult<List<ImageLabel>>> processBatch(
+    List<String> paths, {
+    int? maxDimension,
+  }) {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    return _processBatch<List<ImageLabel>>(
+      'ImageLabeler#processBatch',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': _options._serialize(),
+      },
+      paths,
+      maxDimension,
+      _decodeReply,
+    );
+  }
+
+  /// Opens a [DetectionSession] that streams frames to this detector.
+  ///
+  /// See [TextRecognizer.openSession].
+  Future<DetectionSession<List<ImageLabel>>> openSession() async {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    await GoogleVision.channel.invokeMethod<void>(
+      'ImageLabeler#openSession',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': _options._serialize(),
+      },
+    );
+    return DetectionSession<List<ImageLabel>>._(_handle, _decodeResult);
+  }
+
+  /// Cancels the images sent to this detector that have not completed yet.
+  ///
+  /// See [TextRecognizer.cancel].
+  Future<void> cancel() {
+    if (!_hasBeenOpened || _isClosed) return Future<void>.value();
+
+    return GoogleVision.channel.invokeMethod<void>(
+      'ImageLabeler#cancel',
+      <String, dynamic>{'handle': _handle},
+    );
+  }
+
+  /// Returns the metrics recorded since the detector processed its first
+  /// image, or null unless [FrameProcessingOptions.collectMetrics] is enabled.
+  Future<DetectorMetrics?> metrics() => DetectorMetrics._snapshot(_handle);
+
+  /// The changes made by this detector's [FrameProcessingOptions.governor].
+  Stream<GovernorDecision> get governorDecisions =>
+      GovernorDecision._forHandle(_handle);
+
+  /// Creates the native detector ahead of the first frame.
+  ///
+  /// Detectors are otherwise created lazily by the first call to
+  /// [processImage], which then pays for loading the model. When [warmUp] is
+  /// true, a tiny blank image is also run through the detector.
+  ///
+  /// Detectors opened with identical options share one native model.
+  Future<void> prepare({bool warmUp = true}) async {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    await GoogleVision.channel.invokeMethod<void>(
+      'ImageLabeler#prepare',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': _options._serialize(),
+        'warmUp': warmUp,
+      },
+    );
+  }
+
   /// Release resources used by this labeler.
   Future<void> close() {
     if (!_hasBeenOpened) _isClosed = true;
@@ -83,14 +180,76 @@ class ImageLabelerOptions {
   /// Confidence threshold could be provided for the label detection.
   /// For example, if the confidence threshold is set to 0.7, only labels with
   /// confidence >= 0.7 would be returned. The default threshold is 0.5.
-  const ImageLabelerOptions({this.confidenceThreshold = 0.5})
-      : assert(confidenceThreshold >= 0.0),
-        assert(confidenceThreshold <= 1.0);
+  const ImageLabelerOptions({
+    this.confidenceThreshold = 0.5,
+    this.maxResults,
+    this.allowedLabels,
+    this.customModel,
+    this.processing,
+  })  : assert(confidenceThreshold >= 0.0),
+        assert(confidenceThreshold <= 1.0),
+        assert(maxResults == null || maxResults > 0);
 
   /// The minimum confidence threshold of labels to be detected.
   ///
   /// Required to be in range [0.0, 1.0].
   final double confidenceThreshold;
+
+  /// The most labels returned per image, keeping the most confident ones, or
+  /// null for no limit.
+  ///
+  /// Applied by the platform, after [allowedLabels]. Currently only supported
+  /// on Android.
+  final int? maxResults;
+
+  /// The [ImageLabel.text]s to return, or null for all labels.
+  ///
+  /// Other labels are dropped by the platform before being converted.
+  /// Currently only supported on Android.
+  final Set<String>? allowedLabels;
+
+  /// A TensorFlow Lite image classification model used instead of the base
+  /// model, or null for the base model.
+  ///
+  /// Loaded models stay in memory for a while after their last labeler is
+  /// closed, so reopening a labeler with the same model and options doesn't
+  /// load the model again. Currently only supported on Android.
+  final LocalLabelerModel? customModel;
+
+  /// How frames are scheduled when they arrive faster than they are processed.
+  final FrameProcessingOptions? processing;
+
+  Map<String, dynamic> _serialize() => <String, dynamic>{
+        'confidenceThreshold': confidenceThreshold,
+        if (maxResults != null) 'maxResults': maxResults,
+        if (allowedLabels != null) 'allowedLabels': allowedLabels!.toList(),
+        if (customModel != null) 'customModel': customModel!._serialize(),
+        if (processing != null) 'processing': processing!._serialize(),
+      };
+}
+
+/// A TensorFlow Lite model bundled with the app or stored on the device.
+///
+/// The model must be compatible with ML Kit custom image labeling and include
+/// label metadata, which becomes [ImageLabel.text].
+class LocalLabelerModel {
+  /// A model declared as a Flutter asset, e.g. `assets/model.tflite`.
+  const LocalLabelerModel.asset(String assetName)
+      : _asset = assetName,
+        _file = null;
+
+  /// A model at an absolute path on the device.
+  const LocalLabelerModel.file(String filePath)
+      : _asset = null,
+        _file = filePath;
+
+  final String? _asset;
+  final String? _file;
+
+  Map<String, dynamic> _serialize() => <String, dynamic>{
+        if (_asset != null) 'asset': _asset,
+        if (_file != null) 'file': _file,
+      };
 }
 
 /// Options for cloud image labeler.
@@ -0,0 +1,246 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+part of google_ml_vision;
+
+/// Option for controlling whether objects are tracked across frames.
+enum ObjectDetectorMode { stream, singleImage }
+
+/// Detects and tracks objects in an input image.
+///
+/// An object detector is created via
+/// `objectDetector([ObjectDetectorOptions options])` in [GoogleVision]:
+///
+/// ```dart
+/// final GoogleVisionImage image =
+///     GoogleVisionImage.fromFilePath('path/to/file');
+///
+/// final ObjectDetector objectDetector =
+///     GoogleVision.instance.objectDetector();
+///
+/// final List<DetectedObject> objects =
+///     await objectDetector.processImage(image);
+/// ```
+///
+/// Currently only supported on Android.
+class ObjectDetector {
+  ObjectDetector._(this.options, this._handle);
+
+  /// The options for the object detector.
+  final ObjectDetectorOptions options;
+  final int _handle;
+  final _DeltaCache<DetectedObject> _deltaCache =
+      _DeltaCache<DetectedObject>();
+  bool _hasBeenOpened = false;
+  bool _isClosed = false;
+
+  /// Detects objects in the input image.
+  ///
+  /// See [TextRecognizer.processImage] for [timeout].
+  Future<List<DetectedObject>> processImage(
+    GoogleVisionImage visionImage, {
+    Duration? timeout,
+  }) async {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    final reply = await GoogleVision.channel.invokeMethod<dynamic>(
+      'ObjectDetector#processImage',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': options._serialize(),
+        'requestId': GoogleVision.nextRequestId++,
+        if (timeout != null) 'timeoutMs': timeout.inMilliseconds,
+      }..addAll(visionImage._serialize()),
+    );
+
+    return _decodeResult(reply);
+  }
+
+  List<DetectedObject> _decodeResult(dynamic reply) {
+    if (_DeltaCache.isDelta(reply)) {
+      return _deltaCache.apply(
+          reply, (dynamic data) => DetectedObject._(data));
+    }
+    return _decodeReply(reply);
+  }
+
+  static List<DetectedObject> _decodeReply(dynamic reply) {
+    final List<DetectedObject> objects = <DetectedObject>[];
+    for (final dynamic data in reply!) {
+      objects.add(DetectedObject._(data));
+    }
+
+    return objects;
+  }
+
+  /// Runs the detector on each image file in [paths].
+  ///
+  /// See [TextRecognizer.processBatch].
+  Stream<BatchResult<List<DetectedObject>>> processBatch(
+    List<String> paths, {
+    int? maxDimension,
+  }) {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    return _processBatch<List<DetectedObject>>(
+      'ObjectDetector#processBatch',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': options._serialize(),
+      },
+      paths,
+      maxDimension,
+      _decodeReply,
+    );
+  }
+
+  /// Opens a [DetectionSession] that streams frames to this detector.
+  ///
+  /// See [TextRecognizer.openSession].
+  Future<DetectionSession<List<DetectedObject>>> openSession() async {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    await GoogleVision.channel.invokeMethod<void>(
+      'ObjectDetector#openSession',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': options._serialize(),
+      },
+    );
+    return DetectionSession<List<DetectedObject>>._(_handle, _decodeResult);
+  }
+
+  /// Cancels the images sent to this detector that have not completed yet.
+  ///
+  /// See [TextRecognizer.cancel].
+  Future<void> cancel() {
+    if (!_hasBeenOpened || _isClosed) return Future<void>.value();
+
+    return GoogleVision.channel.invokeMethod<void>(
+      'ObjectDetector#cancel',
+      <String, dynamic>{'handle': _handle},
+    );
+  }
+
+  /// Returns the metrics recorded since the detector processed its first
+  /// image, or null unless [FrameProcessingOptions.collectMetrics] is enabled.
+  Future<DetectorMetrics?> metrics() => DetectorMetrics._snapshot(_handle);
+
+  /// The changes made by this detector's [FrameProcessingOptions.governor].
+  Stream<GovernorDecision> get governorDecisions =>
+      GovernorDecision._forHandle(_handle);
+
+  /// Creates the native detector ahead of the first frame.
+  ///
+  /// See [FaceDetector.prepare].
+  Future<void> prepare({bool warmUp = true}) async {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    await GoogleVision.channel.invokeMethod<void>(
+      'ObjectDetector#prepare',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': options._serialize(),
+        'warmUp': warmUp,
+      },
+    );
+  }
+
+  /// Release resources used by this detector.
+  Future<void> close() {
+    if (!_hasBeenOpened) _isClosed = true;
+    if (_isClosed) return Future<void>.value();
+
+    _isClosed = true;
+    return GoogleVision.channel.invokeMethod<void>(
+      'ObjectDetector#close',
+      <String, dynamic>{'handle': _handle},
+    );
+  }
+}
+
+/// Options for an object detector.
+class ObjectDetectorOptions {
+  /// Constructor for [ObjectDetectorOptions].
+  const ObjectDetectorOptions({
+    this.mode = ObjectDetectorMode.stream,
+    this.enableMultipleObjects = false,
+    this.enableClassification = false,
+    this.processing,
+  });
+
+  /// Whether objects keep their [DetectedObject.trackingId] across frames.
+  ///
+  /// [ObjectDetectorMode.stream] has low latency and is meant for camera
+  /// frames. [ObjectDetectorMode.singleImage] waits for the most prominent
+  /// object to be classified and is meant for still images.
+  final ObjectDetectorMode mode;
+
+  /// Whether to detect up to five objects instead of the most prominent one.
+  final bool enableMultipleObjects;
+
+  /// Whether to classify objects into coarse categories.
+  final bool enableClassification;
+
+  /// How frames are scheduled when they arrive faster than they are processed.
+  final FrameProcessingOptions? processing;
+
+  Map<String, dynamic> _serialize() => <String, dynamic>{
+        'mode': _enumToString(mode),
+        'enableMultipleObjects': enableMultipleObjects,
+        'enableClassification': enableClassification,
+        if (processing != null) 'processing': processing!._serialize(),
+      };
+}
+
+/// Represents an object detected by [ObjectDetector].
+class DetectedObject {
+  DetectedObject._(dynamic data)
+      : boundingBox = Rect.fromLTWH(
+          data['left'],
+          data['top'],
+          data['width'],
+          data['height'],
+        ),
+        trackingId = data['trackingId'],
+        labels = List<ObjectLabel>.unmodifiable(
+          data['labels'].map<ObjectLabel>((dynamic label) {
+            return ObjectLabel._(label);
+          }),
+        );
+
+  /// The axis-aligned bounding rectangle of the detected object.
+  ///
+  /// The point (0, 0) is defined as the upper-left corner of the image.
+  final Rect boundingBox;
+
+  /// The tracking ID of the object.
+  ///
+  /// Only set in [ObjectDetectorMode.stream].
+  final int? trackingId;
+
+  /// The categories of the object, empty unless classification is enabled.
+  final List<ObjectLabel> labels;
+}
+
+/// A category of a [DetectedObject].
+class ObjectLabel {
+  ObjectLabel._(dynamic data)
+      : confidence = data['confidence']?.toDouble(),
+        index = data['index'],
+        text = data['text'];
+
+  /// The confidence of the category. Range [0.0, 1.0].
+  final double? confidence;
+
+  /// The index of the category in the classifier.
+  final int? index;
+
+  /// The name of the category.
+  final String? text;
+}
@@ -4,6 +4,21 @@
 
 part of google_ml_vision;
 
+/// The finest level of [TextContainer]s returned by a [TextRecognizer].
+enum TextGranularity {
+  /// Only [VisionText.text]; [VisionText.blocks] is empty.
+  text,
+
+  /// [TextBlock]s without their lines.
+  blocks,
+
+  /// [TextBlock]s and [TextLine]s without their elements.
+  lines,
+
+  /// The full hierarchy down to [TextElement]s.
+  elements,
+}
+
 /// Detector for performing optical character recognition(OCR) on an input image.
 ///
 /// A text recognizer is created via `textRecognizer()` in [GoogleVision]:
@@ -20,29 +35,160 @@ part of google_ml_vision;
 /// ```
 class TextRecognizer {
   TextRecognizer._({
+    required TextRecognizerOptions options,
     required int handle,
-  }) : _handle = handle;
+  })   : _options = options,
+        _handle = handle;
 
+  final TextRecognizerOptions _options;
   final int _handle;
+  final _DeltaCache<TextBlock> _deltaCache = _DeltaCache<TextBlock>();
+  String? _deltaText;
 
   bool _hasBeenOpened = false;
   bool _isClosed = false;
 
   /// Detects [VisionText] from a [GoogleVisionImage].
-  Future<VisionText> processImage(GoogleVisionImage visionImage) async {
+  ///
+  /// If [timeout] is set and no result is ready in time, the request fails
+  /// with a [PlatformException] whose code is
+  /// [FrameProcessingOptions.deadlineExceededErrorCode]. The platform skips
+  /// images that are already late and doesn't convert late results.
+  Future<VisionText> processImage(
+    GoogleVisionImage visionImage, {
+    Duration? timeout,
+  }) async {
     assert(!_isClosed);
 
     _hasBeenOpened = true;
 
-    final reply = await GoogleVision.channel.invokeMapMethod<String, dynamic>(
+    final reply = await GoogleVision.channel.invokeMethod<dynamic>(
       'TextRecognizer#processImage',
       <String, dynamic>{
         'handle': _handle,
-        'options': <String, dynamic>{},
+        'options': _options._serialize(),
+        'requestId': GoogleVision.nextRequestId++,
+        if (timeout != null) 'timeoutMs': timeout.inMilliseconds,
       }..addAll(visionImage._serialize()),
     );
 
-    return VisionText._(reply!);
+    return _decodeResult(reply);
+  }
+
+  VisionText _decodeResult(dynamic reply) {
+    if (_DeltaCache.isDelta(reply)) {
+      final List<TextBlock> blocks = _deltaCache.apply(
+        reply,
+        (dynamic data) => TextBlock._(data),
+      );
+      if (reply['unchanged'] != true) _deltaText = reply['text'];
+      return VisionText._fromBlocks(_deltaText, blocks);
+    }
+    return _decodeReply(reply);
+  }
+
+  static VisionText _decodeReply(dynamic reply) {
+    if (reply is Uint8List) {
+      final _CompactResultReader reader = _CompactResultReader(reply);
+      assert(reader.kind == _CompactResultReader.kindText);
+      return VisionText._fromCompact(reader);
+    }
+
+    return VisionText._(reply!.cast<String, dynamic>());
+  }
+
+  /// Runs the recognizer on each image file in [paths].
+  ///
+  /// [paths] may hold file paths or `content://` URIs. The images are decoded
+  /// and processed in parallel on the platform, up to one per CPU core, and
+  /// each result is streamed back as soon as it is available, in completion
+  /// order. When [maxDimension] is set, images are downsampled as with
+  /// [GoogleVisionImage.fromFile].
+  ///
+  /// Canceling the subscription stops processing the remaining images.
+  /// Currently only supported on Android.
+  Stream<BatchResult<VisionText>> processBatch(
+    List<String> paths, {
+    int? maxDimension,
+  }) {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    return _processBatch<VisionText>(
+      'TextRecognizer#processBatch',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': _options._serialize(),
+      },
+      paths,
+      maxDimension,
+      _decodeReply,
+    );
+  }
+
+  /// Opens a [DetectionSession] that streams frames to this recognizer.
+  ///
+  /// Frames are sent without waiting for the result of the previous one, and
+  /// results arrive on [DetectionSession.results]. The recognizer's
+  /// [FrameProcessingOptions] still apply. Currently only supported on
+  /// Android.
+  Future<DetectionSession<VisionText>> openSession() async {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    await GoogleVision.channel.invokeMethod<void>(
+      'TextRecognizer#openSession',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': _options._serialize(),
+      },
+    );
+    return DetectionSession<VisionText>._(_handle, _decodeResult);
+  }
+
+  /// Cancels the images sent to this recognizer that have not completed yet.
+  ///
+  /// Their futures, and the results of frames added to a [DetectionSession],
+  /// complete with a [PlatformException] whose code is
+  /// [FrameProcessingOptions.cancelledErrorCode]. Images already being
+  /// processed still run to completion on the platform, but their results are
+  /// discarded before being converted. Currently only supported on Android.
+  Future<void> cancel() {
+    if (!_hasBeenOpened || _isClosed) return Future<void>.value();
+
+    return GoogleVision.channel.invokeMethod<void>(
+      'TextRecognizer#cancel',
+      <String, dynamic>{'handle': _handle},
+    );
+  }
+
+  /// Returns the metrics recorded since the detector processed its first
+  /// image, or null unless [FrameProcessingOptions.collectMetrics] is enabled.
+  Future<DetectorMetrics?> metrics() => DetectorMetrics._snapshot(_handle);
+
+  /// The changes made by this detector's [FrameProcessingOptions.governor].
+  Stream<GovernorDecision> get governorDecisions =>
+      GovernorDecision._forHandle(_handle);
+
+  /// Creates the native detector ahead of the first frame.
+  ///
+  /// Detectors are otherwise created lazily by the first call to
+  /// [processImage], which then pays for loading the model. When [warmUp] is
+  /// true, a tiny blank image is also run through the detector.
+  ///
+  /// Detectors opened with identical options share one native model.
+  Future<void> prepare({bool warmUp = true}) async {
+    assert(!_isClosed);
+    _hasBeenOpened = true;
+
+    await GoogleVision.channel.invokeMethod<void>(
+      'TextRecognizer#prepare',
+      <String, dynamic>{
+        'handle': _handle,
+        'options': _options._serialize(),
+        'warmUp': warmUp,
+      },
+    );
   }
 
   /// Releases resources used by this recognizer.
@@ -58,12 +204,82 @@ class TextRecognizer {
   }
 }
 
+/// Immutable options for configuring [TextRecognizer].
+class TextRecognizerOptions {
+  /// Constructor for [TextRecognizerOptions].
+  const TextRecognizerOptions({
+    this.granularity = TextGranularity.elements,
+    this.minTextHeight = 0.0,
+    this.region,
+    this.processing,
+  }) : assert(minTextHeight >= 0.0);
+
+  /// The finest level of containers returned.
+  ///
+  /// Finer levels are not converted or sent by the platform, which saves
+  /// most of the work on dense documents. The platform only sends text at
+  /// this level; the [TextContainer.text] of coarser levels, and
+  /// [VisionText.text], are joined from their children, lines with a newline
+  /// and elements with a space. Currently only supported on Android.
+  final TextGranularity granularity;
+
+  /// Containers whose bounding box is less tall than this, in pixels, are
+  /// left out together with their children.
+  ///
+  /// Currently only supported on Android.
+  final double minTextHeight;
+
+  /// Containers whose bounding box is not centered in this region are left
+  /// out together with their children.
+  ///
+  /// Like [minTextHeight], the region is in the coordinates of the image
+  /// processed by the platform, i.e. relative to
+  /// [GoogleVisionImageMetadata.regionOfInterest] and after
+  /// [GoogleVisionImageMetadata.scale] when those are used. When any filter is
+  /// set, [VisionText.text] only holds the text of the blocks that are kept.
+  /// Currently only supported on Android.
+  final Rect? region;
+
+  /// How frames are scheduled when they arrive faster than they are processed.
+  final FrameProcessingOptions? processing;
+
+  Map<String, dynamic> _serialize() => <String, dynamic>{
+        if (granularity != TextGranularity.elements)
+          'granularity': _enumToString(granularity),
+        if (minTextHeight > 0.0) 'minTextHeight': minTextHeight,
+        if (region != null)
+          'region': <String, dynamic>{
+            'left': region!.left,
+            'top': region!.top,
+            'width': region!.width,
+            'height': region!.height,
+          },
+        if (processing != null) 'processing': processing!._serialize(),
+      };
+}
+
 /// Recognized text in an image.
 class VisionText {
   VisionText._(Map<String, dynamic> data)
-      : text = data['text'],
-        blocks = List<TextBlock>.unmodifiable(data['blocks']
-            .map<TextBlock>((dynamic block) => TextBlock._(block)));
+      : this._fromBlocks(
+          data['text'],
+          List<TextBlock>.unmodifiable(data['blocks']
+              .map<TextBlock>((dynamic block) => TextBlock._(block))),
+        );
+
+  VisionText._fromBlocks(String? text, this.blocks)
+      : text = text ?? _joinText(blocks, '\n');
+
+  VisionText._fromCompact(_CompactResultReader reader)
+      : this._fromBlocks(
+          reader.readString(),
+          List<TextBlock>.unmodifiable(List<TextBlock>.generate(
+              reader.readInt32(),
+              (_) => TextBlock._fromCompact(
+                    _CompactTextContainer(reader),
+                    reader,
+                  ))),
+        );
 
   /// String representation of the recognized text.
   final String? text;
@@ -74,7 +290,7 @@ class VisionText {
 
 /// Abstract class representing dimensions of recognized text in an image.
 abstract class TextContainer {
-  TextContainer._(Map<dynamic, dynamic> data)
+  TextContainer._(Map<dynamic, dynamic> data, this.text)
       : boundingBox = data['left'] != null
             ? Rect.fromLTWH(
                 data['left'],
@@ -91,8 +307,18 @@ abstract class TextContainer {
                 ))),
         recognizedLanguages = List<RecognizedLanguage>.unmodifiable(
             data['recognizedLanguages'].map<RecognizedLanguage>(
-                (dynamic language) => RecognizedLanguage._(language))),
-        text = data['text'];
+                (dynamic language) => RecognizedLanguage._(language)));
+
+  TextContainer._fromCompact(_CompactTextContainer container, this.text)
+      : boundingBox = container.boundingBox,
+        confidence = null,
+        cornerPoints = List<Offset>.unmodifiable(container.cornerPoints),
+        recognizedLanguages = List<RecognizedLanguage>.unmodifiable(
+            <RecognizedLanguage>[
+              RecognizedLanguage._(
+                <String, dynamic>{'languageCode': container.language},
+              ),
+            ]);
 
   /// Axis-aligned bounding rectangle of the detected text.
   ///
@@ -131,9 +357,30 @@ abstract class TextContainer {
 /// A block of text (think of it as a paragraph) as deemed by the OCR engine.
 class TextBlock extends TextContainer {
   TextBlock._(Map<dynamic, dynamic> block)
-      : lines = List<TextLine>.unmodifiable(
-            block['lines'].map<TextLine>((dynamic line) => TextLine._(line))),
-        super._(block);
+      : this._withLines(
+          block,
+          List<TextLine>.unmodifiable(block['lines']
+              .map<TextLine>((dynamic line) => TextLine._(line))),
+        );
+
+  TextBlock._withLines(Map<dynamic, dynamic> block, this.lines)
+      : super._(block, block['text'] ?? _joinText(lines, '\n'));
+
+  TextBlock._fromCompact(
+    _CompactTextContainer container,
+    _CompactResultReader reader,
+  ) : this._fromCompactLines(
+          container,
+          List<TextLine>.unmodifiable(List<TextLine>.generate(
+              reader.readInt32(),
+              (_) => TextLine._fromCompact(
+                    _CompactTextContainer(reader),
+                    reader,
+                  ))),
+        );
+
+  TextBlock._fromCompactLines(_CompactTextContainer container, this.lines)
+      : super._fromCompact(container, container.text ?? _joinText(lines, '\n'));
 
   /// The contents of the text block, broken down into individual lines.
   final List<TextLine> lines;
@@ -142,9 +389,29 @@ class TextBlock extends TextContainer {
 /// Represents a line of text.
 class TextLine extends TextContainer {
   TextLine._(Map<dynamic, dynamic> line)
-      : elements = List<TextElement>.unmodifiable(line['elements']
-            .map<TextElement>((dynamic element) => TextElement._(element))),
-        super._(line);
+      : this._withElements(
+          line,
+          List<TextElement>.unmodifiable(line['elements']
+              .map<TextElement>((dynamic element) => TextElement._(element))),
+        );
+
+  TextLine._withElements(Map<dynamic, dynamic> line, this.elements)
+      : super._(line, line['text'] ?? _joinText(elements, ' '));
+
+  TextLine._fromCompact(
+    _CompactTextContainer container,
+    _CompactResultReader reader,
+  ) : this._fromCompactElements(
+          container,
+          List<TextElement>.unmodifiable(List<TextElement>.generate(
+              reader.readInt32(),
+              (_) => TextElement._fromCompact(_CompactTextContainer(reader)))),
+        );
+
+  TextLine._fromCompactElements(
+    _CompactTextContainer container,
+    this.elements,
+  ) : super._fromCompact(container, container.text ?? _joinText(elements, ' '));
 
   /// The contents of this line, broken down into individual elements.
   final List<TextElement> elements;
@@ -158,5 +425,31 @@ class TextLine extends TextContainer {
 /// If a word is split between two lines by a hyphen, each part is encoded as a
 /// separate element.
 class TextElement extends TextContainer {
-  TextElement._(Map<dynamic, dynamic> element) : super._(element);
+  TextElement._(Map<dynamic, dynamic> element)
+      : super._(element, element['text']);
+
+  TextElement._fromCompact(_CompactTextContainer container)
+      : super._fromCompact(container, container.text);
+}
+
+/// Joins the text of [containers], for a parent whose text wasn't sent.
+String _joinText(List<TextContainer> containers, String separator) =>
+    containers
+        .map((TextContainer container) => container.text ?? '')
+        .join(separator);
+
+/// The fields shared by all [TextContainer]s, read from a compact result.
+///
+/// Read before the container's children, which follow it in the buffer.
+class _CompactTextContainer {
+  _CompactTextContainer(_CompactResultReader reader)
+      : boundingBox = reader.readRect(),
+        cornerPoints = reader.readPoints(),
+        language = reader.readString(),
+        text = reader.readString();
+
+  final Rect? boundingBox;
+  final List<Offset> cornerPoints;
+  final String? language;
+  final String? text;
 }
@@ -8,6 +8,7 @@ import 'dart:typed_data';
 import 'dart:ui';
 
 import 'package:google_ml_vision/google_ml_vision.dart';
+import 'package:flutter/foundation.dart';
 import 'package:flutter/services.dart';
 import 'package:flutter_test/flutter_test.dart';
 
@@ -28,14 +29,23 @@ void main() {
             return returnValue;
           case 'FaceDetector#processImage':
             return returnValue;
+          case 'ObjectDetector#processImage':
+            return returnValue;
+          case 'ImageLabeler#processImage':
+            return returnValue;
           case 'TextRecognizer#processImage':
             return returnValue;
+          case 'Pipeline#process':
+            return returnValue;
+          case 'Metrics#snapshot':
+            return returnValue;
           default:
             return null;
         }
       });
       log.clear();
       GoogleVision.nextHandle = 0;
+      GoogleVision.nextRequestId = 0;
     });
 
     group('$GoogleVisionImageMetadata', () {
@@ -69,6 +79,7 @@ void main() {
             'TextRecognizer#processImage',
             arguments: <String, dynamic>{
               'handle': 0,
+              'requestId': 0,
               'type': 'bytes',
               'path': null,
               'bytes': Uint8List(0),
@@ -80,6 +91,7 @@ void main() {
                 'planeData': <dynamic>[
                   <String, dynamic>{
                     'bytesPerRow': 1000,
+                    'bytesPerPixel': null,
                     'height': 480,
                     'width': 480,
                   },
@@ -92,6 +104,150 @@ void main() {
           ),
         ]);
       });
+
+      test('region of interest serialization', () async {
+        final GoogleVisionImageMetadata metadata = GoogleVisionImageMetadata(
+          rawFormat: 17,
+          size: const Size(1280, 720),
+          regionOfInterest: const Rect.fromLTWH(320, 160, 640, 400),
+          scale: 0.5,
+        );
+        final GoogleVisionImage image =
+            GoogleVisionImage.fromBytes(Uint8List(0), metadata);
+        await recognizer.processImage(image);
+
+        expect(log, <Matcher>[
+          isMethodCall(
+            'TextRecognizer#processImage',
+            arguments: <String, dynamic>{
+              'handle': 0,
+              'requestId': 0,
+              'type': 'bytes',
+              'path': null,
+              'bytes': Uint8List(0),
+              'metadata': <String, dynamic>{
+                'width': 1280.0,
+                'height': 720.0,
+                'rotation': 0,
+                'rawFormat': 17,
+                'planeData': null,
+                'regionOfInterest': <String, dynamic>{
+                  'left': 320.0,
+                  'top': 160.0,
+                  'width': 640.0,
+                  'height': 400.0,
+                },
+                'scale': 0.5,
+              },
+              'options': <String, dynamic>{},
+            },
+          ),
+        ]);
+      });
+
+      // A 4x2 YUV_420_888 frame with interleaved chroma.
+      final Uint8List yPlane =
+          Uint8List.fromList(<int>[1, 2, 3, 4, 5, 6, 7, 8]);
+      final Uint8List uPlane = Uint8List.fromList(<int>[10, 20, 11]);
+      final Uint8List vPlane = Uint8List.fromList(<int>[20, 11, 21]);
+
+      test('planes serialization', () async {
+        final GoogleVisionImageMetadata metadata = GoogleVisionImageMetadata(
+          rawFormat: 35,
+          size: const Size(4, 2),
+          planeData: <GoogleVisionImagePlaneMetadata>[
+            GoogleVisionImagePlaneMetadata(bytesPerRow: 4, bytesPerPixel: 1),
+            GoogleVisionImagePlaneMetadata(bytesPerRow: 4, bytesPerPixel: 2),
+            GoogleVisionImagePlaneMetadata(bytesPerRow: 4, bytesPerPixel: 2),
+          ],
+        );
+        final GoogleVisionImage image = GoogleVisionImage.fromPlanes(
+          <Uint8List>[yPlane, uPlane, vPlane],
+          metadata,
+        );
+        await recognizer.processImage(image);
+
+        expect(log, <Matcher>[
+          isMethodCall(
+            'TextRecognizer#processImage',
+            arguments: <String, dynamic>{
+              'handle': 0,
+              'requestId': 0,
+              'type': 'bytes',
+              'path': null,
+              'bytes': null,
+              'planes': <Uint8List>[yPlane, uPlane, vPlane],
+              'metadata': <String, dynamic>{
+                'width': 4.0,
+                'height': 2.0,
+                'rotation': 0,
+                'rawFormat': 35,
+                'planeData': <dynamic>[
+                  <String, dynamic>{
+                    'bytesPerRow': 4,
+                    'bytesPerPixel': 1,
+                    'height': null,
+                    'width': null,
+                  },
+                  <String, dynamic>{
+                    'bytesPerRow': 4,
+                    'bytesPerPixel': 2,
+                    'height': null,
+                    'width': null,
+                  },
+                  <String, dynamic>{
+                    'bytesPerRow': 4,
+                    'bytesPerPixel': 2,
+                    'height': null,
+                    'width': null,
+                  },
+                ],
+              },
+              'options': <String, dynamic>{},
+            },
+          ),
+        ]);
+      });
+
+      test('planes serialization on iOS', () async {
+        // Bi-planar '420v', with interleaved chroma in the second plane.
+        final Uint8List chromaPlane = Uint8List.fromList(<int>[10, 20, 11, 21]);
+        debugDefaultTargetPlatformOverride = TargetPlatform.iOS;
+        final GoogleVisionImage image;
+        try {
+          image = GoogleVisionImage.fromPlanes(
+            <Uint8List>[yPlane, chromaPlane],
+            GoogleVisionImageMetadata(
+              rawFormat: 875704438,
+              size: const Size(4, 2),
+              planeData: <GoogleVisionImagePlaneMetadata>[
+                GoogleVisionImagePlaneMetadata(
+                  bytesPerRow: 4,
+                  height: 2,
+                  width: 4,
+                ),
+                GoogleVisionImagePlaneMetadata(
+                  bytesPerRow: 4,
+                  height: 1,
+                  width: 2,
+                ),
+              ],
+            ),
+          );
+        } finally {
+          debugDefaultTargetPlatformOverride = null;
+        }
+        await recognizer.processImage(image);
+
+        // The planes are sent as one buffer, in order.
+        final Map<dynamic, dynamic> arguments = log.single.arguments;
+        expect(arguments.containsKey('planes'), isFalse);
+        expect(
+          arguments['bytes'],
+          <int>[1, 2, 3, 4, 5, 6, 7, 8, 10, 20, 11, 21],
+        );
+        expect(arguments['metadata']['planeData'], hasLength(2));
+      });
     });
 
     group('$BarcodeDetector', () {
@@ -130,6 +286,7 @@ void main() {
             'BarcodeDetector#detectInImage',
             arguments: <String, dynamic>{
               'handle': 0,
+              'requestId': 0,
               'type': 'file',
               'path': 'empty',
               'bytes': null,
@@ -404,6 +561,104 @@ void main() {
         expect(barcode.driverLicense!.issuingCountry, 'ic');
       });
 
+      test('openSession', () async {
+        MethodChannel(GoogleVision.sessionChannel.name)
+            .setMockMethodCallHandler((MethodCall call) async => null);
+        final List<ByteData> frames = <ByteData>[];
+        ServicesBinding.instance!.defaultBinaryMessenger
+            .setMockMessageHandler(
+          GoogleVision.frameChannel.name,
+          (ByteData? message) async {
+            frames.add(message!);
+            return null;
+          },
+        );
+
+        final DetectionSession<List<Barcode>> session =
+            await detector.openSession();
+        final Future<SessionResult<List<Barcode>>> firstResult =
+            session.results.first;
+
+        final int sequence = session.addFrame(
+          GoogleVisionImage.fromBytes(
+            Uint8List.fromList(<int>[1, 2, 3, 4]),
+            GoogleVisionImageMetadata(
+              rawFormat: 17,
+              size: const Size(2, 2),
+            ),
+          ),
+          timestamp: const Duration(milliseconds: 5),
+        );
+        await Future<void>.delayed(Duration.zero);
+
+        expect(sequence, 0);
+        expect(frames, hasLength(1));
+        expect(frames[0].getInt32(0, Endian.little), 0);
+        expect(frames[0].getInt64(4, Endian.little), 0);
+        expect(frames[0].getInt64(12, Endian.little), 5000);
+        expect(frames[0].lengthInBytes, 57 + 12 + 4);
+
+        ServicesBinding.instance!.defaultBinaryMessenger
+            .handlePlatformMessage(
+          GoogleVision.sessionChannel.name,
+          const StandardMethodCodec().encodeSuccessEnvelope(<String, dynamic>{
+            'handle': 0,
+            'sequence': 0,
+            'timestamp': 5000,
+            'result': returnBarcodes,
+          }),
+          (ByteData? data) {},
+        );
+
+        final SessionResult<List<Barcode>> result = await firstResult;
+        expect(result.sequence, 0);
+        expect(result.timestamp, const Duration(milliseconds: 5));
+        expect(result.result![0].rawValue, 'hello:raw');
+
+        await session.close();
+        expect(log, <Matcher>[
+          isMethodCall(
+            'BarcodeDetector#openSession',
+            arguments: <String, dynamic>{
+              'handle': 0,
+              'options': <String, dynamic>{'barcodeFormats': 0xFFFF},
+            },
+          ),
+          isMethodCall(
+            'Session#close',
+            arguments: <String, dynamic>{'handle': 0},
+          ),
+        ]);
+      });
+
+      test('detectInImage delta', () async {
+        returnBarcodes![0]['valueType'] = BarcodeValueType.text.index;
+        returnBarcodes![0]['deltaId'] = 3;
+        returnValue = <dynamic, dynamic>{
+          'delta': true,
+          'added': returnBarcodes,
+          'moved': <dynamic>[],
+          'removed': <dynamic>[],
+        };
+
+        final List<Barcode> first = await detector.detectInImage(image);
+        expect(first, hasLength(1));
+        expect(first[0].rawValue, 'hello:raw');
+
+        returnValue = <dynamic, dynamic>{'delta': true, 'unchanged': true};
+        final List<Barcode> second = await detector.detectInImage(image);
+        expect(second, same(first));
+
+        returnValue = <dynamic, dynamic>{
+          'delta': true,
+          'added': <dynamic>[],
+          'moved': <dynamic>[],
+          'removed': <dynamic>[3],
+        };
+        final List<Barcode> third = await detector.detectInImage(image);
+        expect(third, isEmpty);
+      });
+
       test('detectInImage no blocks', () async {
         returnValue = <dynamic>[];
 
@@ -497,6 +752,87 @@ void main() {
             0x0001 | 0x0010 | 0x0040,
           );
         });
+
+        test('processing with motionGate', () async {
+          final BarcodeDetector detector =
+              GoogleVision.instance.barcodeDetector(
+            const BarcodeDetectorOptions(
+              processing: FrameProcessingOptions(
+                motionGate: MotionGateOptions(
+                  threshold: 4.5,
+                  maxSkippedFrames: 0,
+                ),
+              ),
+            ),
+          );
+          await detector.detectInImage(image);
+
+          expect(
+            log[0].arguments['options']['processing']['motionGate'],
+            <String, dynamic>{
+              'threshold': 4.5,
+              'maxSkippedFrames': 0,
+            },
+          );
+        });
+
+        test('adaptiveFormats', () async {
+          final BarcodeDetector detector =
+              GoogleVision.instance.barcodeDetector(
+            const BarcodeDetectorOptions(
+              adaptiveFormats: AdaptiveBarcodeFormats(
+                warmUpFrames: 60,
+                wideningInterval: 600,
+              ),
+            ),
+          );
+          await detector.detectInImage(image);
+
+          expect(
+            log[0].arguments['options']['adaptiveFormats'],
+            <String, dynamic>{
+              'warmUpFrames': 60,
+              'wideningInterval': 600,
+            },
+          );
+        });
+
+        test('adaptiveFormats is not sent by default', () async {
+          final BarcodeDetector detector =
+              GoogleVision.instance.barcodeDetector();
+          await detector.detectInImage(image);
+
+          expect(
+            log[0].arguments['options'].containsKey('adaptiveFormats'),
+            isFalse,
+          );
+        });
+
+        test('processing', () async {
+          final BarcodeDetector detector =
+              GoogleVision.instance.barcodeDetector(
+            const BarcodeDetectorOptions(
+              processing: FrameProcessingOptions(
+                dropPolicy: FrameDropPolicy.boundedQueue,
+                maxPendingFrames: 2,
+              ),
+            ),
+          );
+          await detector.detectInImage(image);
+
+          expect(
+            log[0].arguments['options']['processing'],
+            <String, dynamic>{
+              'dropPolicy': 'boundedQueue',
+              'maxPendingFrames': 2,
+              'resultEncoding': 'standard',
+              'deltaResults': false,
+              'deltaMoveThreshold': 2.0,
+              'collectMetrics': false,
+              'traceSections': false,
+            },
+          );
+        });
       });
     });
 
@@ -614,6 +950,7 @@ void main() {
             'FaceDetector#processImage',
             arguments: <String, dynamic>{
               'handle': 0,
+              'requestId': 0,
               'type': 'file',
               'path': 'empty',
               'bytes': null,
@@ -765,6 +1102,492 @@ void main() {
         final List<Face> faces = await detector.processImage(image);
         expect(faces, isEmpty);
       });
+
+      test('processImage with hybrid detection', () async {
+        returnValue = <dynamic>[];
+
+        final FaceDetector detector = GoogleVision.instance.faceDetector(
+          const FaceDetectorOptions(
+            enableClassification: true,
+            enableContours: true,
+            hybrid: HybridFaceDetection(fullPassInterval: 15),
+          ),
+        );
+        await detector.processImage(GoogleVisionImage.fromFilePath('empty'));
+
+        expect(log[0].arguments['options']['hybrid'], <String, dynamic>{
+          'fullPassInterval': 15,
+        });
+      });
+
+      test('hybrid detection is not sent by default', () async {
+        returnValue = <dynamic>[];
+
+        final FaceDetector detector = GoogleVision.instance.faceDetector();
+        await detector.processImage(GoogleVisionImage.fromFilePath('empty'));
+
+        expect(log[0].arguments['options'].containsKey('hybrid'), isFalse);
+      });
+
+      test('processImage with field mask', () async {
+        returnValue = <dynamic>[
+          <dynamic, dynamic>{
+            'left': 0.0,
+            'top': 1.0,
+            'width': 2.0,
+            'height': 3.0,
+            'trackingId': 7,
+            'contours': <dynamic, dynamic>{
+              'face': <dynamic>[
+                <dynamic>[1.0, 2.0],
+              ],
+            },
+          },
+        ];
+
+        final FaceDetector detector = GoogleVision.instance.faceDetector(
+          const FaceDetectorOptions(
+            enableContours: true,
+            fields: FaceFieldMask(
+              landmarks: <FaceLandmarkType>{},
+              contours: <FaceContourType>{FaceContourType.face},
+              classification: false,
+              headAngles: false,
+            ),
+          ),
+        );
+        final List<Face> faces = await detector.processImage(
+          GoogleVisionImage.fromFilePath('empty'),
+        );
+
+        expect(log[0].arguments['options']['fields'], <String, dynamic>{
+          'landmarks': <String>[],
+          'contours': <String>['face'],
+          'classification': false,
+          'headAngles': false,
+        });
+
+        final Face face = faces.single;
+        expect(face.boundingBox, const Rect.fromLTWH(0.0, 1.0, 2.0, 3.0));
+        expect(face.trackingId, 7);
+        expect(face.headEulerAngleY, isNull);
+        expect(face.smilingProbability, isNull);
+        expect(face.getLandmark(FaceLandmarkType.leftEye), isNull);
+        expect(face.getContour(FaceContourType.allPoints), isNull);
+        expect(
+          face.getContour(FaceContourType.face)!.positionsList,
+          <Offset>[const Offset(1.0, 2.0)],
+        );
+      });
+
+      test('prepare', () async {
+        final FaceDetector detector = GoogleVision.instance.faceDetector(
+          const FaceDetectorOptions(enableTracking: true),
+        );
+
+        await detector.prepare();
+        await detector.close();
+
+        expect(log, <Matcher>[
+          isMethodCall(
+            'FaceDetector#prepare',
+            arguments: <String, dynamic>{
+              'handle': 0,
+              'options': <String, dynamic>{
+                'enableClassification': false,
+                'enableLandmarks': false,
+                'enableContours': false,
+                'enableTracking': true,
+                'minFaceSize': 0.1,
+                'mode': 'fast',
+              },
+              'warmUp': true,
+            },
+          ),
+          isMethodCall(
+            'FaceDetector#close',
+            arguments: <String, dynamic>{'handle': 0},
+          ),
+        ]);
+      });
+
+      test('governor', () async {
+        MethodChannel(GoogleVision.governorChannel.name)
+            .setMockMethodCallHandler((MethodCall call) async => null);
+
+        void emit(Map<String, dynamic> event) {
+          ServicesBinding.instance!.defaultBinaryMessenger
+              .handlePlatformMessage(
+            GoogleVision.governorChannel.name,
+            const StandardMethodCodec().encodeSuccessEnvelope(event),
+            (ByteData? data) {},
+          );
+        }
+
+        returnValue = <dynamic>[];
+        final FaceDetector detector = GoogleVision.instance.faceDetector(
+          const FaceDetectorOptions(
+            mode: FaceDetectorMode.accurate,
+            processing: FrameProcessingOptions(
+              governor: GovernorOptions(
+                targetLatency: Duration(milliseconds: 50),
+                maxFrameSkip: 3,
+              ),
+            ),
+          ),
+        );
+        final Future<GovernorDecision> decision =
+            detector.governorDecisions.first;
+        await Future<void>.delayed(Duration.zero);
+
+        await detector.processImage(GoogleVisionImage.fromFilePath('empty'));
+        expect(
+          log[0].arguments['options']['processing']['governor'],
+          <String, dynamic>{
+            'targetLatencyMs': 50.0,
+            'maxFrameSkip': 3,
+            'minScale': 0.5,
+            'allowFastMode': true,
+          },
+        );
+
+        emit(<String, dynamic>{
+          'handle': 1,
+          'latencyMs': 80.0,
+          'frameSkip': 0,
+          'scale': 1.0,
+          'fastMode': true,
+        });
+        emit(<String, dynamic>{
+          'handle': 0,
+          'latencyMs': 62.5,
+          'frameSkip': 0,
+          'scale': 0.75,
+          'fastMode': true,
+        });
+
+        final GovernorDecision first = await decision;
+        expect(first.latency, const Duration(microseconds: 62500));
+        expect(first.frameSkip, 0);
+        expect(first.scale, 0.75);
+        expect(first.fastMode, isTrue);
+      });
+
+      test('processImage with timeout and cancel', () async {
+        returnValue = <dynamic>[];
+        final FaceDetector detector = GoogleVision.instance.faceDetector();
+        final GoogleVisionImage image = GoogleVisionImage.fromFilePath('empty');
+
+        await detector.cancel();
+        await detector.processImage(image);
+        await detector.processImage(
+          image,
+          timeout: const Duration(milliseconds: 200),
+        );
+        await detector.cancel();
+
+        expect(log, hasLength(3));
+        expect(log[0].arguments['requestId'], 0);
+        expect(log[0].arguments.containsKey('timeoutMs'), isFalse);
+        expect(log[1].arguments['requestId'], 1);
+        expect(log[1].arguments['timeoutMs'], 200);
+        expect(
+          log[2],
+          isMethodCall(
+            'FaceDetector#cancel',
+            arguments: <String, dynamic>{'handle': 0},
+          ),
+        );
+      });
+    });
+
+    group('$ObjectDetector', () {
+      test('processImage', () async {
+        returnValue = <dynamic>[
+          <dynamic, dynamic>{
+            'left': 0.0,
+            'top': 1.0,
+            'width': 10.0,
+            'height': 20.0,
+            'trackingId': 7,
+            'labels': <dynamic>[
+              <dynamic, dynamic>{
+                'confidence': 0.75,
+                'index': 2,
+                'text': 'Food',
+              },
+            ],
+          },
+        ];
+
+        final ObjectDetector detector = GoogleVision.instance.objectDetector(
+          const ObjectDetectorOptions(
+            enableMultipleObjects: true,
+            enableClassification: true,
+          ),
+        );
+        final GoogleVisionImage image = GoogleVisionImage.fromFilePath(
+          'empty',
+        );
+
+        final List<DetectedObject> objects =
+            await detector.processImage(image);
+
+        expect(log, <Matcher>[
+          isMethodCall(
+            'ObjectDetector#processImage',
+            arguments: <String, dynamic>{
+              'handle': 0,
+              'requestId': 0,
+              'options': <String, dynamic>{
+                'mode': 'stream',
+                'enableMultipleObjects': true,
+                'enableClassification': true,
+              },
+              'type': 'file',
+              'path': 'empty',
+              'bytes': null,
+              'metadata': null,
+            },
+          ),
+        ]);
+
+        final DetectedObject object = objects[0];
+        expect(object.boundingBox, const Rect.fromLTWH(0.0, 1.0, 10.0, 20.0));
+        expect(object.trackingId, 7);
+        expect(object.labels[0].confidence, 0.75);
+        expect(object.labels[0].index, 2);
+        expect(object.labels[0].text, 'Food');
+      });
+
+      test('processImage no objects', () async {
+        returnValue = <dynamic>[];
+
+        final ObjectDetector detector = GoogleVision.instance.objectDetector(
+          const ObjectDetectorOptions(mode: ObjectDetectorMode.singleImage),
+        );
+        final GoogleVisionImage image = GoogleVisionImage.fromFilePath(
+          'empty',
+        );
+
+        final List<DetectedObject> objects =
+            await detector.processImage(image);
+        expect(objects, isEmpty);
+      });
+
+      test('processImage with max dimension', () async {
+        returnValue = <dynamic>[];
+
+        final ObjectDetector detector = GoogleVision.instance.objectDetector();
+        final GoogleVisionImage image = GoogleVisionImage.fromFilePath(
+          'empty',
+          maxDimension: 1024,
+        );
+
+        await detector.processImage(image);
+
+        expect(log, <Matcher>[
+          isMethodCall(
+            'ObjectDetector#processImage',
+            arguments: <String, dynamic>{
+              'handle': 0,
+              'requestId': 0,
+              'options': <String, dynamic>{
+                'mode': 'stream',
+                'enableMultipleObjects': false,
+                'enableClassification': false,
+              },
+              'type': 'file',
+              'path': 'empty',
+              'maxDimension': 1024,
+              'bytes': null,
+              'metadata': null,
+            },
+          ),
+        ]);
+      });
+
+      test('metrics', () async {
+        Map<dynamic, dynamic> histogram(int count, double sum, double max) {
+          return <dynamic, dynamic>{
+            'count': count,
+            'sum': sum,
+            'max': max,
+            'bounds': <dynamic>[1.0, 2.0],
+            'buckets': <dynamic>[count, 0, 0],
+          };
+        }
+
+        returnValue = <dynamic, dynamic>{
+          'framesReceived': 5,
+          'framesDropped': 2,
+          'framesFailed': 1,
+          'decode': histogram(2, 1.0, 0.75),
+          'inference': histogram(2, 3.0, 2.0),
+          'marshal': histogram(2, 0.5, 0.25),
+          'total': histogram(2, 5.0, 3.0),
+          'objectsPerResult': histogram(2, 6.0, 4.0),
+        };
+
+        final ObjectDetector detector = GoogleVision.instance.objectDetector();
+        final DetectorMetrics? metrics = await detector.metrics();
+
+        expect(log, <Matcher>[
+          isMethodCall(
+            'Metrics#snapshot',
+            arguments: <String, dynamic>{'handle': 0},
+          ),
+        ]);
+        expect(metrics!.framesReceived, 5);
+        expect(metrics.framesDropped, 2);
+        expect(metrics.framesFailed, 1);
+        expect(metrics.inference.count, 2);
+        expect(metrics.inference.mean, 1.5);
+        expect(metrics.total.max, 3.0);
+        expect(metrics.objectsPerResult.bounds, <double>[1.0, 2.0]);
+        expect(metrics.objectsPerResult.buckets, <int>[2, 0, 0]);
+      });
+
+      test('metrics disabled', () async {
+        returnValue = null;
+
+        final ObjectDetector detector = GoogleVision.instance.objectDetector();
+
+        expect(await detector.metrics(), isNull);
+      });
+    });
+
+    group('$ImageLabeler', () {
+      test('processImage with maxResults and allowedLabels', () async {
+        returnValue = <dynamic>[
+          <dynamic, dynamic>{
+            'confidence': 0.9,
+            'entityId': '0',
+            'text': 'Cat',
+          },
+        ];
+
+        final ImageLabeler labeler = GoogleVision.instance.imageLabeler(
+          const ImageLabelerOptions(
+            confidenceThreshold: 0.7,
+            maxResults: 3,
+            allowedLabels: <String>{'Cat'},
+          ),
+        );
+        final GoogleVisionImage image = GoogleVisionImage.fromFilePath(
+          'empty',
+        );
+
+        final List<ImageLabel> labels = await labeler.processImage(image);
+
+        expect(log, <Matcher>[
+          isMethodCall(
+            'ImageLabeler#processImage',
+            arguments: <String, dynamic>{
+              'handle': 0,
+              'requestId': 0,
+              'options': <String, dynamic>{
+                'confidenceThreshold': 0.7,
+                'maxResults': 3,
+                'allowedLabels': <String>['Cat'],
+              },
+              'type': 'file',
+              'path': 'empty',
+              'bytes': null,
+              'metadata': null,
+            },
+          ),
+        ]);
+
+        expect(labels, hasLength(1));
+        expect(labels[0].confidence, 0.9);
+        expect(labels[0].text, 'Cat');
+      });
+
+      test('processImage with custom model', () async {
+        returnValue = <dynamic>[];
+
+        final ImageLabeler labeler = GoogleVision.instance.imageLabeler(
+          const ImageLabelerOptions(
+            customModel: LocalLabelerModel.asset('assets/birds.tflite'),
+          ),
+        );
+        final GoogleVisionImage image = GoogleVisionImage.fromFilePath(
+          'empty',
+        );
+
+        await labeler.processImage(image);
+
+        expect(log, <Matcher>[
+          isMethodCall(
+            'ImageLabeler#processImage',
+            arguments: <String, dynamic>{
+              'handle': 0,
+              'requestId': 0,
+              'options': <String, dynamic>{
+                'confidenceThreshold': 0.5,
+                'customModel': <String, dynamic>{
+                  'asset': 'assets/birds.tflite',
+                },
+              },
+              'type': 'file',
+              'path': 'empty',
+              'bytes': null,
+              'metadata': null,
+            },
+          ),
+        ]);
+      });
+    });
+
+    group('$DetectionPipeline', () {
+      test('process', () async {
+        returnValue = <dynamic>[
+          <dynamic>[],
+          <dynamic, dynamic>{
+            'text': 'hello',
+            'blocks': <dynamic>[],
+          },
+        ];
+
+        final BarcodeDetector barcodeDetector =
+            GoogleVision.instance.barcodeDetector();
+        final TextRecognizer textRecognizer =
+            GoogleVision.instance.textRecognizer();
+        final DetectionPipeline pipeline = GoogleVision.instance.pipeline(
+          <Object>[barcodeDetector, textRecognizer],
+        );
+
+        final List<Object> results = await pipeline.process(
+          GoogleVisionImage.fromFilePath('empty'),
+        );
+
+        expect(log, <Matcher>[
+          isMethodCall(
+            'Pipeline#process',
+            arguments: <String, dynamic>{
+              'detectors': <dynamic>[
+                <String, dynamic>{
+                  'type': 'BarcodeDetector',
+                  'handle': 0,
+                  'options': <String, dynamic>{'barcodeFormats': 0xFFFF},
+                },
+                <String, dynamic>{
+                  'type': 'TextRecognizer',
+                  'handle': 1,
+                  'options': <String, dynamic>{},
+                },
+              ],
+              'type': 'file',
+              'path': 'empty',
+              'bytes': null,
+              'metadata': null,
+            },
+          ),
+        ]);
+        expect(results[0], isEmpty);
+        expect((results[1] as VisionText).text, 'hello');
+      });
     });
 
     group('$TextRecognizer', () {
@@ -1009,6 +1832,7 @@ void main() {
             'TextRecognizer#processImage',
             arguments: <String, dynamic>{
               'handle': 0,
+              'requestId': 0,
               'type': 'file',
               'path': 'empty',
               'bytes': null,
@@ -1021,6 +1845,191 @@ void main() {
         ]);
       });
 
+      test('processImage compact', () async {
+        final ByteData data = ByteData(128);
+        int offset = 0;
+        void putUint8(int value) => data.setUint8(offset++, value);
+        void putInt32(int value) {
+          data.setInt32(offset, value, Endian.little);
+          offset += 4;
+        }
+
+        void putFloat32(double value) {
+          data.setFloat32(offset, value, Endian.little);
+          offset += 4;
+        }
+
+        putUint8(2); // version
+        putUint8(3); // text
+        putFloat32(2); // scale x
+        putFloat32(2); // scale y
+        putFloat32(10); // offset x
+        putFloat32(20); // offset y
+        putInt32(1); // string count
+        putInt32(2);
+        putUint8(0x68); // h
+        putUint8(0x69); // i
+        putInt32(-1); // text, joined from the blocks
+        putInt32(1); // block count
+        putUint8(1); // has bounding box
+        putFloat32(1);
+        putFloat32(2);
+        putFloat32(3);
+        putFloat32(4);
+        putInt32(1); // point count
+        putFloat32(5);
+        putFloat32(6);
+        putInt32(-1); // language
+        putInt32(0); // block text
+        putInt32(0); // line count
+        returnValue = data.buffer.asUint8List(0, offset);
+
+        final VisionText text = await recognizer.processImage(image);
+
+        expect(text.text, 'hi');
+        expect(text.blocks, hasLength(1));
+        expect(text.blocks[0].text, 'hi');
+        // ignore: prefer_const_constructors
+        expect(text.blocks[0].boundingBox, Rect.fromLTWH(12, 24, 6, 8));
+        expect(text.blocks[0].cornerPoints, const <Offset>[Offset(20, 32)]);
+        expect(text.blocks[0].recognizedLanguages[0].languageCode, null);
+        expect(text.blocks[0].lines, isEmpty);
+      });
+
+      test('processBatch', () async {
+        MethodChannel(GoogleVision.batchChannel.name)
+            .setMockMethodCallHandler((MethodCall call) async => null);
+
+        void emit(Map<String, dynamic> event) {
+          ServicesBinding.instance!.defaultBinaryMessenger
+              .handlePlatformMessage(
+            GoogleVision.batchChannel.name,
+            const StandardMethodCodec().encodeSuccessEnvelope(event),
+            (ByteData? data) {},
+          );
+        }
+
+        final Future<List<BatchResult<VisionText>>> results = recognizer
+            .processBatch(<String>['a.jpg', 'b.jpg'], maxDimension: 2048)
+            .toList();
+        await Future<void>.delayed(Duration.zero);
+
+        final int batchId = log.single.arguments['batchId'];
+        expect(log, <Matcher>[
+          isMethodCall(
+            'TextRecognizer#processBatch',
+            arguments: <String, dynamic>{
+              'batchId': batchId,
+              'paths': <String>['a.jpg', 'b.jpg'],
+              'maxDimension': 2048,
+              'handle': 0,
+              'options': <String, dynamic>{},
+            },
+          ),
+        ]);
+
+        emit(<String, dynamic>{
+          'batchId': batchId,
+          'index': 1,
+          'result': <dynamic, dynamic>{
+            'text': 'receipt',
+            'blocks': <dynamic>[],
+          },
+        });
+        emit(<String, dynamic>{
+          'batchId': batchId,
+          'index': 0,
+          'errorCode': 'MLVisionDetectorIOError',
+          'errorMessage': 'Unable to decode image file: a.jpg',
+        });
+        emit(<String, dynamic>{'batchId': batchId, 'done': true});
+
+        final List<BatchResult<VisionText>> batch = await results;
+        expect(batch, hasLength(2));
+        expect(batch[0].index, 1);
+        expect(batch[0].path, 'b.jpg');
+        expect(batch[0].result!.text, 'receipt');
+        expect(batch[1].index, 0);
+        expect(batch[1].result, isNull);
+        expect(batch[1].error!.code, 'MLVisionDetectorIOError');
+      });
+
+      test('processImage with granularity and filters', () async {
+        // Text is only sent for the blocks.
+        returnValue = <dynamic, dynamic>{
+          'blocks': <dynamic>[
+            <dynamic, dynamic>{
+              'text': 'Total',
+              'left': 10.0,
+              'top': 20.0,
+              'width': 40.0,
+              'height': 12.0,
+              'points': <dynamic>[],
+              'recognizedLanguages': <dynamic>[],
+              'lines': <dynamic>[],
+            },
+          ],
+        };
+
+        final TextRecognizer filtered = GoogleVision.instance.textRecognizer(
+          const TextRecognizerOptions(
+            granularity: TextGranularity.blocks,
+            minTextHeight: 8.0,
+            region: Rect.fromLTWH(0.0, 0.0, 100.0, 50.0),
+          ),
+        );
+        final VisionText text = await filtered.processImage(image);
+
+        expect(log[0].arguments['options'], <String, dynamic>{
+          'granularity': 'blocks',
+          'minTextHeight': 8.0,
+          'region': <String, dynamic>{
+            'left': 0.0,
+            'top': 0.0,
+            'width': 100.0,
+            'height': 50.0,
+          },
+        });
+        expect(text.text, 'Total');
+        expect(text.blocks.single.text, 'Total');
+        expect(text.blocks.single.lines, isEmpty);
+      });
+
+      test('processImage joins text of coarser levels', () async {
+        Map<dynamic, dynamic> container(String? text, String children,
+                List<dynamic> childData) =>
+            <dynamic, dynamic>{
+              if (text != null) 'text': text,
+              'points': <dynamic>[],
+              'recognizedLanguages': <dynamic>[],
+              children: childData,
+            };
+        returnValue = <dynamic, dynamic>{
+          'blocks': <dynamic>[
+            container(null, 'lines', <dynamic>[
+              container(null, 'elements', <dynamic>[
+                container('Total', 'elements', <dynamic>[]),
+                container('12.00', 'elements', <dynamic>[]),
+              ]),
+              container(null, 'elements', <dynamic>[
+                container('Paid', 'elements', <dynamic>[]),
+              ]),
+            ]),
+            container(null, 'lines', <dynamic>[
+              container(null, 'elements', <dynamic>[
+                container('Thanks', 'elements', <dynamic>[]),
+              ]),
+            ]),
+          ],
+        };
+
+        final VisionText text = await recognizer.processImage(image);
+
+        expect(text.blocks[0].lines[0].text, 'Total 12.00');
+        expect(text.blocks[0].text, 'Total 12.00\nPaid');
+        expect(text.text, 'Total 12.00\nPaid\nThanks');
+      });
+
       test('processImage no bounding box', () async {
         returnValue = <dynamic, dynamic>{
           'blocks': <dynamic>[